@@ -0,0 +1,74 @@
+package iot;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Console rendering cost with stdout discarded, so only string building is measured. */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DashboardBenchmark {
+    @Param({"100"})
+    int alerts;
+
+    Device device;
+    List<Alert> alertList;
+    PrintStream stdout;
+
+    @Setup
+    public void setUp(){
+        MonitoringService service = Fleet.service();
+        Sensor[] fleet = Fleet.build(service, Fleet.SENSORS_PER_DEVICE);
+        device = service.getDevice(fleet[0].getDeviceId());
+        Fleet.prime(service, fleet, System.currentTimeMillis(), 1);
+        // alternate in and out of bounds; each re-entry into breach raises a new alert
+        for(long t = System.currentTimeMillis()+1; service.getAlerts().size()<alerts; t+=2){
+            Fleet.prime(service, fleet, t, Integer.MAX_VALUE);
+            Fleet.prime(service, fleet, t+1, 1);
+        }
+        alertList = service.getAlerts().subList(0, alerts);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown(){ System.setOut(stdout); }
+
+    @Benchmark
+    public void deviceSummary(){ DashboardPrinter.printDeviceSummary(device); }
+
+    @Benchmark
+    public void liveAlerts(){ DashboardPrinter.printAlerts(alertList); }
+
+    /** A 50k-device fleet where every 100th sensor is in breach, for full dashboard screens. */
+    @State(Scope.Benchmark)
+    public static class LargeFleet {
+        MonitoringService service;
+        LocalDateTime staleBefore;
+
+        @Setup
+        public void setUp(){
+            service = Fleet.service();
+            Sensor[] fleet = Fleet.build(service, 50_000 * Fleet.SENSORS_PER_DEVICE);
+            Fleet.prime(service, fleet, System.currentTimeMillis(), 100);
+            staleBefore = LocalDateTime.now().minusMinutes(15);
+        }
+    }
+
+    @Benchmark
+    public String dashboardScreen(LargeFleet f){
+        return f.service.read(svc -> DashboardPrinter.renderDashboard(svc.getDashboard(), null, 10, 20, 5, f.staleBefore));
+    }
+
+    @Benchmark
+    public String dashboardScreenFiltered(LargeFleet f){
+        return f.service.read(svc -> DashboardPrinter.renderDashboard(svc.getDashboard(), AlertSeverity.HIGH, 10, 20, 5, f.staleBefore));
+    }
+}
@@ -0,0 +1,41 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Entity id creation and formatting, with {@link UUID#randomUUID()} as the old baseline. */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityIdBenchmark {
+    final IdGenerator snowflake = new SnowflakeIdGenerator();
+    final IdGenerator sequential = new SequentialIdGenerator();
+    final LocalDateTime now = LocalDateTime.now();
+    long key;
+
+    @Setup
+    public void setUp(){ key = snowflake.nextId(); }
+
+    @Benchmark
+    public long snowflakeNextId(){ return snowflake.nextId(); }
+
+    @Benchmark
+    public long sequentialNextId(){ return sequential.nextId(); }
+
+    @Benchmark
+    public String format(){ return snowflake.format(key); }
+
+    @Benchmark
+    public Reading newReading(){ return new Reading("dev", "sen", now, 42.0); }
+
+    @Benchmark
+    public String newReadingWithId(){ return new Reading("dev", "sen", now, 42.0).getId(); }
+
+    @Benchmark
+    public String uuidBaseline(){ return UUID.randomUUID().toString(); }
+}
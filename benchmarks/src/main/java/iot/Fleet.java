@@ -0,0 +1,42 @@
+package iot;
+
+/**
+ * Builds benchmark fleets: devices of {@link #SENSORS_PER_DEVICE} TEMPERATURE sensors,
+ * each device with a 0..80 threshold.
+ */
+final class Fleet {
+    static final int SENSORS_PER_DEVICE = 10;
+
+    private Fleet(){}
+
+    /** Small history segments keep million-sensor fleets inside a few GB of heap. */
+    static MonitoringService service(){ return service(true); }
+
+    static MonitoringService service(boolean metrics){
+        return new MonitoringService(new TimeSeriesStore(8, 1), metrics ? new Metrics() : Metrics.DISABLED);
+    }
+
+    static Sensor[] build(MonitoringService service, int sensors){
+        Sensor[] out = new Sensor[sensors];
+        Device d = null;
+        for(int i=0;i<sensors;i++){
+            if(i % SENSORS_PER_DEVICE == 0){
+                d = service.addDevice(new Device("Boiler-"+i, "Plant-A"));
+                service.addThreshold(new Threshold(d.getId(), "TEMPERATURE", 0.0, 80.0, AlertSeverity.HIGH));
+            }
+            out[i] = service.addSensor(d, new Sensor("TEMPERATURE", "°C"));
+        }
+        return out;
+    }
+
+    /** Gives every sensor a last reading; every {@code breachEvery}-th one is out of bounds. */
+    static void prime(MonitoringService service, Sensor[] sensors, long epochMillis, int breachEvery){
+        long[] ms = new long[sensors.length];
+        double[] values = new double[sensors.length];
+        for(int i=0;i<sensors.length;i++){
+            ms[i] = epochMillis;
+            values[i] = i % breachEvery == 0 ? 95.0 : 40.0;
+        }
+        service.ingestBatch(sensors, ms, values, sensors.length);
+    }
+}
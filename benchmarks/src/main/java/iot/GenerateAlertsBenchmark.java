@@ -0,0 +1,43 @@
+package iot;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link MonitoringService#generateAlerts()} across fleet sizes. {@code idle} is the common
+ * case (nothing changed since the last scan); {@code fullRescan} re-evaluates every sensor,
+ * which is what each scan cost before scans became incremental.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class GenerateAlertsBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    int sensors;
+
+    MonitoringService service;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        service = Fleet.service();
+        Sensor[] fleet = Fleet.build(service, sensors);
+        Fleet.prime(service, fleet, System.currentTimeMillis(), 100);
+        service.generateAlerts();
+    }
+
+    @Benchmark
+    public List<Alert> idle(){ return service.generateAlerts(); }
+
+    @State(Scope.Benchmark)
+    public static class Rescan {
+        @Setup(Level.Invocation)
+        public void markAll(GenerateAlertsBenchmark b){ b.service.markAllDirty(); }
+    }
+
+    @Benchmark
+    public List<Alert> fullRescan(Rescan r){ return service.generateAlerts(); }
+}
@@ -0,0 +1,80 @@
+package iot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading ingestion: the synchronous single-reading path, the batched path the pipeline
+ * consumer uses, and end-to-end publish through {@link IngestionPipeline} as the console's
+ * "Ingest Reading" does (minus the flush). Run with {@code -p metrics=true,false} to compare
+ * against {@link Metrics#DISABLED} for the instrumentation overhead.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+    static final int BATCH = 256;
+
+    @Param({"1000"})
+    int sensors;
+
+    @Param({"true", "false"})
+    boolean metrics;
+
+    MonitoringService service;
+    Sensor[] fleet;
+    IngestionPipeline pipeline;
+
+    // readings must be non-decreasing in time per sensor; advance a synthetic clock
+    long clock = System.currentTimeMillis();
+    int next;
+    final Sensor[] batchSensors = new Sensor[BATCH];
+    final long[] batchMillis = new long[BATCH];
+    final double[] batchValues = new double[BATCH];
+
+    @Setup
+    public void setUp(){
+        service = Fleet.service(metrics);
+        fleet = Fleet.build(service, sensors);
+        pipeline = new IngestionPipeline(service, 1 << 16, BATCH, Duration.ofMillis(1));
+    }
+
+    @TearDown
+    public void tearDown(){ pipeline.close(); }
+
+    private Sensor nextSensor(){
+        Sensor s = fleet[next];
+        if(++next==fleet.length){ next = 0; clock++; }
+        return s;
+    }
+
+    private static double value(long clock){ return 20 + (clock & 63); } // breaches 80 now and then
+
+    @Benchmark
+    public Reading ingest(){
+        Sensor s = nextSensor();
+        return service.ingest(s, LocalDateTime.now(), value(clock));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void ingestBatch(){
+        for(int i=0;i<BATCH;i++){
+            batchSensors[i] = nextSensor();
+            batchMillis[i] = clock;
+            batchValues[i] = value(clock);
+        }
+        service.ingestBatch(batchSensors, batchMillis, batchValues, BATCH);
+    }
+
+    @Benchmark
+    public void pipelinePublish(){
+        Sensor s = nextSensor();
+        pipeline.publish(s, clock, value(clock));
+    }
+}
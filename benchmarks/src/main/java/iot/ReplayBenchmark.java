@@ -0,0 +1,58 @@
+package iot;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Dry-run replay of a recorded readings file (one million readings over 1000 sensors,
+ * about 1% out of bounds) in each format; divide by the reading count for per-reading cost.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+    static final int READINGS = 1_000_000;
+
+    @Param({"csv", "binary"})
+    public String format;
+
+    MonitoringService live;
+    Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        live = Fleet.service(false);
+        Sensor[] sensors = Fleet.build(live, 1000);
+        file = Files.createTempFile("replay", "."+format);
+        Random rnd = new Random(42);
+        long t0 = 1_700_000_000_000L;
+        if(format.equals("csv")){
+            try(BufferedWriter w = Files.newBufferedWriter(file)){
+                for(int i=0;i<READINGS;i++){
+                    Sensor s = sensors[i % sensors.length];
+                    w.write(s.getDeviceId()+","+s.getId()+","+(t0+i)+","+Math.round(rnd.nextDouble()*8100)/100.0+"\n");
+                }
+            }
+        } else {
+            try(BulkReplay.BinaryWriter w = new BulkReplay.BinaryWriter(file)){
+                for(int i=0;i<READINGS;i++) w.write(sensors[i % sensors.length].getId(), t0+i, Math.round(rnd.nextDouble()*8100)/100.0);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException { Files.deleteIfExists(file); }
+
+    @Benchmark
+    public BulkReplay.Result dryRun() throws IOException {
+        return BulkReplay.dryRun(live, live.getThresholds()).replay(file);
+    }
+}
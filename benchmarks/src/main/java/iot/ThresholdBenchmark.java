@@ -0,0 +1,46 @@
+package iot;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Per-reading rule cost: bound checks and the (device, sensor type) index lookup. */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThresholdBenchmark {
+    final Threshold bounded = new Threshold("dev", "TEMPERATURE", 0.0, 80.0, AlertSeverity.HIGH);
+    final Threshold upperOnly = new Threshold("dev", "TEMPERATURE", null, 80.0, AlertSeverity.HIGH);
+    final double[] values = new double[1024];
+    final ThresholdIndex index = new ThresholdIndex();
+    final Sensor sensor = new Sensor("TEMPERATURE", "°C");
+    int i;
+
+    @Setup
+    public void setUp(){
+        java.util.Random rnd = new java.util.Random(42);
+        for(int k=0;k<values.length;k++) values[k] = rnd.nextDouble() * 100;
+        for(int d=0; d<1000; d++){
+            index.add(new Threshold("dev-"+d, "TEMPERATURE", 0.0, 80.0, AlertSeverity.HIGH));
+            index.add(new Threshold("dev-"+d, "HUMIDITY", 10.0, 90.0, AlertSeverity.LOW));
+        }
+        sensor.attach("dev-500");
+    }
+
+    private double nextValue(){ return values[i++ & (values.length-1)]; }
+
+    @Benchmark
+    public boolean isBreachedBounded(){ return bounded.isBreached(nextValue()); }
+
+    @Benchmark
+    public boolean isBreachedUpperOnly(){ return upperOnly.isBreached(nextValue()); }
+
+    @Benchmark
+    public void lookupAndCheck(Blackhole bh){
+        double v = nextValue();
+        for(Threshold t : index.lookup(sensor.getDeviceId(), sensor)) bh.consume(t.isBreached(v));
+    }
+}
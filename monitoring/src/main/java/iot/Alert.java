@@ -0,0 +1,101 @@
+package iot;
+
+import java.time.LocalDateTime;
+
+public class Alert extends Entity {
+    private final String deviceId;
+    private final String sensorId;
+    private final String sensorType;
+    private final AlertType type;
+    private final Reading reading;   // the breaching reading; for OFFLINE the last one, null if never seen
+    private final LocalDateTime createdAt;
+    private final AlertSeverity severity;
+    private AlertStatus status = AlertStatus.NEW;
+    private String acknowledgedBy; // operator id/name
+    private LocalDateTime acknowledgedAt;
+    private String linkedTicketId; // maintenance ticket id if created
+    private String incidentId;     // incident it was coalesced into, if any
+    private String ruleId;         // rule that raised it, for RULE alerts
+
+    public Alert(Reading reading, String sensorType, AlertSeverity severity){
+        this(nextKey(), reading, sensorType, severity, LocalDateTime.now());
+    }
+
+    Alert(long key, Reading reading, String sensorType, AlertSeverity severity, LocalDateTime createdAt){
+        this(key, AlertType.THRESHOLD, reading.getDeviceId(), reading.getSensorId(), sensorType, reading, severity, createdAt);
+    }
+
+    /** An alert for a sensor that missed its heartbeat; {@code lastReading} may be null. */
+    static Alert offline(Sensor s, Reading lastReading, AlertSeverity severity, LocalDateTime createdAt){
+        return new Alert(nextKey(), AlertType.OFFLINE, s.getDeviceId(), s.getId(), s.getType(), lastReading, severity, createdAt);
+    }
+
+    /** An alert for a rule that became true on a device; {@code trigger} is the sensor whose latest reading made it so. */
+    static Alert rule(Rule r, Sensor trigger, LocalDateTime createdAt){
+        Alert a = new Alert(nextKey(), AlertType.RULE, trigger.getDeviceId(), trigger.getId(), trigger.getType(),
+                            trigger.getLastReading(), r.getSeverity(), createdAt);
+        a.ruleId = r.getId();
+        return a;
+    }
+
+    Alert(long key, AlertType type, String deviceId, String sensorId, String sensorType, Reading reading,
+          AlertSeverity severity, LocalDateTime createdAt){
+        super(key);
+        this.type = type;
+        this.reading = reading;
+        this.deviceId = deviceId;
+        this.sensorId = sensorId;
+        this.sensorType = sensorType;
+        this.createdAt = createdAt;
+        this.severity = severity==null ? AlertSeverity.MEDIUM : severity;
+    }
+
+    public String getDeviceId(){ return deviceId; }
+    public String getSensorId(){ return sensorId; }
+    public String getSensorType(){ return sensorType; }
+    public AlertType getType(){ return type; }
+    /**
+     * The breaching reading (for {@link AlertType#RULE}, the one that made the rule true); for
+     * {@link AlertType#OFFLINE} the last reading before the outage, or null if none.
+     */
+    public Reading getReading(){ return reading; }
+    public LocalDateTime getCreatedAt(){ return createdAt; }
+    public AlertSeverity getSeverity(){ return severity; }
+    public AlertStatus getStatus(){ return status; }
+    public String getAcknowledgedBy(){ return acknowledgedBy; }
+    public LocalDateTime getAcknowledgedAt(){ return acknowledgedAt; }
+    public String getLinkedTicketId(){ return linkedTicketId; }
+    public String getIncidentId(){ return incidentId; }
+    /** The {@link Rule} that raised a {@link AlertType#RULE} alert, else null. */
+    public String getRuleId(){ return ruleId; }
+
+    public void acknowledge(String by){
+        acknowledge(by, LocalDateTime.now());
+    }
+
+    void acknowledge(String by, LocalDateTime at){
+        if(status!=AlertStatus.NEW) throw new IllegalStateException("Only NEW alerts can be acknowledged");
+        this.status = AlertStatus.ACKNOWLEDGED;
+        this.acknowledgedBy = by;
+        this.acknowledgedAt = at;
+    }
+
+    public void linkTicket(String ticketId){
+        this.linkedTicketId = ticketId;
+    }
+
+    void linkIncident(String incidentId){ this.incidentId = incidentId; }
+    void linkRule(String ruleId){ this.ruleId = ruleId; }
+
+    public void resolve(){
+        if(status==AlertStatus.RESOLVED) return;
+        this.status = AlertStatus.RESOLVED;
+    }
+
+    @Override public String toString(){
+        if(type==AlertType.OFFLINE){
+            return getId()+" | "+deviceId+"/"+sensorId+" | "+severity+" | "+status+" | OFFLINE, last seen "+(reading==null ? "never" : reading.getTimestamp());
+        }
+        return getId()+" | "+deviceId+"/"+sensorId+" | "+severity+" | "+status+(type==AlertType.RULE ? " | RULE "+ruleId : "")+" | val="+reading.getValue();
+    }
+}
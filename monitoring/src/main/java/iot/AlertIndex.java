@@ -0,0 +1,68 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Secondary indexes over alerts by status, severity and device, all in creation order.
+ * A query walks whichever index narrows it most and filters on the remaining criteria.
+ * Status changes must go through {@link #statusChanged}; guarded by the service lock.
+ */
+final class AlertIndex {
+    private final TimeIndex<AlertStatus, Alert> byStatus = new TimeIndex<>(Alert::getCreatedAt);
+    private final TimeIndex<AlertSeverity, Alert> bySeverity = new TimeIndex<>(Alert::getCreatedAt);
+    private final TimeIndex<String, Alert> byDevice = new TimeIndex<>(Alert::getCreatedAt);
+
+    void add(Alert a){
+        byStatus.add(a.getStatus(), a);
+        bySeverity.add(a.getSeverity(), a);
+        byDevice.add(a.getDeviceId(), a);
+    }
+
+    void statusChanged(Alert a, AlertStatus before){ byStatus.move(before, a.getStatus(), a); }
+
+    int count(AlertStatus status){ return byStatus.size(status); }
+
+    TimeIndex.Pos pos(Alert a){ return byStatus.pos(a); }
+
+    /**
+     * An incident's member alerts with the given statuses, oldest first: walks the device
+     * index of each of its devices from the incident's opening, so it costs the alerts of
+     * those devices since then. Once the incident outgrew its device sample, the status
+     * index is walked instead.
+     */
+    List<Alert> members(Incident i, Set<AlertStatus> statuses){
+        Predicate<Alert> member = a -> i.getId().equals(a.getIncidentId()) && statuses.contains(a.getStatus());
+        List<Alert> out = new ArrayList<>();
+        if(i.getOtherDeviceAlerts()>0){
+            out.addAll(byStatus.page(statuses, null, i.getOpenedAt(), null, member, Integer.MAX_VALUE).getItems());
+        } else {
+            for(String deviceId : i.getSampleDeviceIds()){
+                out.addAll(byDevice.page(Set.of(deviceId), null, i.getOpenedAt(), null, member, Integer.MAX_VALUE).getItems());
+            }
+        }
+        out.sort(Comparator.comparing(byStatus::pos));
+        return out;
+    }
+
+    /** Null criteria match everything; see {@link MonitoringService#queryAlerts}. */
+    Page<Alert> query(Set<AlertStatus> statuses, AlertSeverity severity, String deviceId,
+                      LocalDateTime from, LocalDateTime to, TimeIndex.Pos before, int limit){
+        int byStatusCost = byStatus.size(statuses);
+        int bySeverityCost = severity==null ? Integer.MAX_VALUE : bySeverity.size(severity);
+        int byDeviceCost = deviceId==null ? Integer.MAX_VALUE : byDevice.size(deviceId);
+        if(byDeviceCost<=bySeverityCost && byDeviceCost<=byStatusCost){
+            return byDevice.page(Set.of(deviceId), before, from, to,
+                    a -> matches(a.getStatus(), statuses) && (severity==null || a.getSeverity()==severity), limit);
+        }
+        if(bySeverityCost<=byStatusCost){
+            return bySeverity.page(Set.of(severity), before, from, to,
+                    a -> matches(a.getStatus(), statuses), limit);
+        }
+        return byStatus.page(statuses, before, from, to,
+                a -> (severity==null || a.getSeverity()==severity) && (deviceId==null || deviceId.equals(a.getDeviceId())), limit);
+    }
+
+    private static <E> boolean matches(E value, Collection<E> allowed){ return allowed==null || allowed.contains(value); }
+}
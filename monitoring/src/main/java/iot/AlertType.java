@@ -0,0 +1,4 @@
+package iot;
+
+/** What raised an alert: a threshold breach, a sensor missing its heartbeat deadline, or a {@link Rule} becoming true. */
+public enum AlertType { THRESHOLD, OFFLINE, RULE }
@@ -0,0 +1,405 @@
+package iot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Replays recorded reading files through threshold evaluation, e.g. to re-validate new
+ * thresholds against days of history. Two formats are read, told apart by the first bytes:
+ * <ul>
+ *   <li>CSV in the {@link LineProtocolDecoder} line protocol, one reading per line;</li>
+ *   <li>compact binary written by {@link BinaryWriter}: fixed 20-byte records
+ *       (sensor index, epochMillis, value) followed by the sensor id dictionary.</li>
+ * </ul>
+ * The file is memory-mapped in chunks (line- or record-aligned) that are parsed in parallel
+ * on a fork-join pool straight from the mapping; parsed chunks are then ingested in file
+ * order, so each sensor sees its readings in sequence and hysteresis and windows behave as
+ * they did live. At most {@code 2 * parallelism} parsed chunks are held at a time.
+ * <p>
+ * A replay into a live service records readings (and journals them when persistence is
+ * attached); evaluation is then serial under the service lock. It is meant for backlogs
+ * newer than what the service has seen, e.g. a gateway's buffer after an outage: a reading
+ * older than its sensor's latest is skipped and counted as {@link Result#getStale() stale},
+ * so live values, heartbeats and history never go back. Historical files need a
+ * {@link #dryRun dry run}, which replays into a sandbox holding copies of the fleet and
+ * the given thresholds, split into one shard per thread by device (as in
+ * {@link ShardedEngine}) so evaluation runs in parallel too; the live service is not
+ * touched and the raised alerts are returned in the {@link Result}.
+ */
+public class BulkReplay {
+    static final int MAGIC = 0x494F5442; // "IOTB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;  // magic, version, dictionary offset
+    static final int RECORD_BYTES = 20;  // int sensor index, long epochMillis, double value
+    private static final int DEFAULT_CHUNK_BYTES = 8<<20;
+    private static final int INGEST_SLICE = 4096; // readings per lock acquisition
+    private static final int SENSOR_CACHE = 4096;
+
+    private final MonitoringService[] targets; // several only for a sharded dry-run sandbox
+    private final Map<String, Sensor> sensors; // sandbox sensors; null to look up in the live target
+    private final boolean dryRun;
+    private final int parallelism;
+    private final int chunkBytes;
+
+    /** Replays into {@code target} on all available cores. */
+    public BulkReplay(MonitoringService target){
+        this(target, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param parallelism parser threads
+     * @param chunkBytes bytes mapped and parsed per task (rounded up to whole lines/records)
+     */
+    public BulkReplay(MonitoringService target, int parallelism, int chunkBytes){
+        this(new MonitoringService[]{target}, null, false, parallelism, chunkBytes);
+        if(target==null) throw new IllegalArgumentException("target required");
+    }
+
+    private BulkReplay(MonitoringService[] targets, Map<String, Sensor> sensors, boolean dryRun, int parallelism, int chunkBytes){
+        if(parallelism<1) throw new IllegalArgumentException("parallelism must be >= 1");
+        if(chunkBytes<RECORD_BYTES) throw new IllegalArgumentException("chunkBytes must be >= "+RECORD_BYTES);
+        this.targets = targets;
+        this.sensors = sensors;
+        this.dryRun = dryRun;
+        this.parallelism = parallelism;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * A replay that evaluates {@code thresholds} (e.g. candidates, or {@code live.getThresholds()})
+     * against copies of the live devices and sensors, leaving {@code live} untouched.
+     */
+    public static BulkReplay dryRun(MonitoringService live, Collection<Threshold> thresholds){
+        return dryRun(live, thresholds, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    public static BulkReplay dryRun(MonitoringService live, Collection<Threshold> thresholds, int parallelism, int chunkBytes){
+        if(live==null) throw new IllegalArgumentException("live service required");
+        if(parallelism<1) throw new IllegalArgumentException("parallelism must be >= 1");
+        // copies of the fleet (same ids, no readings) with a minimal history and no metrics
+        MonitoringService[] shards = new MonitoringService[parallelism];
+        for(int i=0;i<shards.length;i++) shards[i] = new MonitoringService(new TimeSeriesStore(1024, 1, List.of()), Metrics.DISABLED);
+        Map<Device, List<Sensor>> fleet = live.read(svc -> {
+            Map<Device, List<Sensor>> m = new LinkedHashMap<>();
+            for(Device d : svc.getDevices()) m.put(d, new ArrayList<>(d.getSensors()));
+            return m;
+        });
+        Map<String, Sensor> sensors = new HashMap<>();
+        for(Map.Entry<Device, List<Sensor>> e : fleet.entrySet()){
+            Device d = e.getKey();
+            MonitoringService shard = shards[shardOf(d.getId(), shards.length)];
+            Device copy = shard.addDevice(new Device(d.getKey(), d.getName(), d.getLocation()));
+            for(Sensor s : e.getValue()) sensors.put(s.getId(), shard.addSensor(copy, new Sensor(s.getKey(), s.getType(), s.getUnit())));
+        }
+        for(Threshold t : thresholds){ // immutable, so they can be shared with the live service
+            shards[shardOf(t.getDeviceId(), shards.length)].addThreshold(t);
+        }
+        return new BulkReplay(shards, sensors, true, parallelism, chunkBytes);
+    }
+
+    private static int shardOf(String deviceId, int shards){
+        int h = deviceId.hashCode();
+        return Math.floorMod(h ^ (h>>>16), shards);
+    }
+
+    private Sensor sensor(String sensorId){ return sensors!=null ? sensors.get(sensorId) : targets[0].getSensor(sensorId); }
+
+    public boolean isDryRun(){ return dryRun; }
+
+    /** Replays one file; blocks until every reading has been evaluated. */
+    public Result replay(Path file) throws IOException {
+        long start = System.nanoTime();
+        List<Alert> raised = new ArrayList<>();
+        Thread replayer = Thread.currentThread();
+        Consumer<Alert> collector = a -> { if(Thread.currentThread()==replayer) raised.add(a); }; // not other live ingest
+        if(!dryRun) targets[0].onAlert(collector);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Result r = new Result(dryRun);
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = ch.size();
+            boolean binary = size>=HEADER_BYTES && readInt(ch, 0)==MAGIC;
+            List<long[]> chunks;
+            Sensor[] dictionary = null;
+            if(binary){
+                if(readInt(ch, 4)!=VERSION) throw new IOException("Unsupported replay file version "+readInt(ch, 4));
+                long dictAt = readLong(ch, 8);
+                if(dictAt<HEADER_BYTES || dictAt>size || (dictAt-HEADER_BYTES)%RECORD_BYTES!=0) throw new IOException("Corrupt replay file "+file);
+                dictionary = readDictionary(ch, dictAt);
+                chunks = recordChunks(dictAt);
+            } else {
+                chunks = lineChunks(ch, size);
+            }
+            Sensor[] dict = dictionary;
+            ArrayDeque<ForkJoinTask<Batch>> inFlight = new ArrayDeque<>();
+            for(long[] c : chunks){
+                if(inFlight.size()>=2*parallelism) apply(pool, inFlight.removeFirst().join(), r);
+                inFlight.addLast(pool.submit(() -> {
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, c[0], c[1]-c[0]);
+                    return dict!=null ? parseRecords(buf, dict) : parseLines(buf);
+                }));
+            }
+            while(!inFlight.isEmpty()) apply(pool, inFlight.removeFirst().join(), r);
+            r.bytes = size;
+        } finally {
+            pool.shutdownNow();
+            if(!dryRun) targets[0].removeAlertListener(collector);
+        }
+        if(dryRun){ // the sandbox holds nothing but this replay's alerts
+            for(MonitoringService shard : targets) raised.addAll(shard.getAlerts());
+            raised.sort(Comparator.comparing(Alert::getCreatedAt)); // stable: per-shard order is kept
+        }
+        r.alerts = Collections.unmodifiableList(raised);
+        r.elapsedNanos = System.nanoTime()-start;
+        return r;
+    }
+
+    /** Ingests one parsed chunk, each shard's part on its own task; returns once all are done. */
+    private void apply(ForkJoinPool pool, Batch b, Result r){
+        if(targets.length==1){
+            r.stale += b.parts[0].ingest(targets[0], !dryRun);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(targets.length);
+            for(int i=0;i<targets.length;i++){
+                Column part = b.parts[i];
+                MonitoringService shard = targets[i];
+                if(part.n>0) tasks.add(pool.submit(() -> part.ingest(shard, false)));
+            }
+            for(ForkJoinTask<?> t : tasks) t.join();
+        }
+        r.readings += b.n;
+        r.malformed += b.malformed;
+        r.unknownSensors += b.unknownSensors;
+    }
+
+    /* ===== Chunking ===== */
+
+    /** [start, end) ranges of about chunkBytes, each ending just after a line break (or at EOF). */
+    private List<long[]> lineChunks(FileChannel ch, long size) throws IOException {
+        List<long[]> out = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while(start<size){
+            long end = Math.min(size, start+chunkBytes);
+            while(end<size){
+                probe.clear();
+                int got = ch.read(probe, end);
+                if(got<=0){ end = size; break; }
+                int nl = -1;
+                for(int i=0;i<got && nl<0;i++) if(probe.get(i)=='\n') nl = i;
+                if(nl>=0){ end += nl+1; break; }
+                end += got;
+            }
+            if(end-start>Integer.MAX_VALUE) throw new IOException("Line longer than 2 GB at offset "+start);
+            out.add(new long[]{start, end});
+            start = end;
+        }
+        return out;
+    }
+
+    private List<long[]> recordChunks(long end){
+        List<long[]> out = new ArrayList<>();
+        long step = Math.max(1, chunkBytes/RECORD_BYTES)*(long)RECORD_BYTES;
+        for(long p=HEADER_BYTES; p<end; p+=step) out.add(new long[]{p, Math.min(end, p+step)});
+        return out;
+    }
+
+    /* ===== Parsing (runs on pool threads) ===== */
+
+    private Batch parseLines(MappedByteBuffer buf){
+        Batch b = new Batch(buf.capacity()/24);
+        LineProtocolDecoder d = new LineProtocolDecoder(b, SENSOR_CACHE);
+        d.decodeAll(buf);
+        b.malformed = d.getMalformed();
+        b.unknownSensors = d.getUnknownSensors();
+        return b;
+    }
+
+    private Batch parseRecords(MappedByteBuffer buf, Sensor[] dictionary){
+        int records = buf.capacity()/RECORD_BYTES;
+        Batch b = new Batch(records);
+        for(int i=0, p=0; i<records; i++, p+=RECORD_BYTES){
+            int idx = buf.getInt(p);
+            Sensor s = idx>=0 && idx<dictionary.length ? dictionary[idx] : null;
+            if(s==null){ b.unknownSensors++; continue; }
+            b.publish(s, buf.getLong(p+4), buf.getDouble(p+12));
+        }
+        return b;
+    }
+
+    /** Sensors by dictionary index; null where the id is not registered with the target. */
+    private Sensor[] readDictionary(FileChannel ch, long at) throws IOException {
+        ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, at, ch.size()-at);
+        Sensor[] out = new Sensor[buf.getInt()];
+        for(int i=0;i<out.length;i++){
+            byte[] id = new byte[buf.getShort() & 0xFFFF];
+            buf.get(id);
+            out[i] = sensor(new String(id, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static int readInt(FileChannel ch, long at) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        while(b.hasRemaining()) if(ch.read(b, at+b.position())<0) throw new IOException("Truncated replay file");
+        return b.getInt(0);
+    }
+
+    private static long readLong(FileChannel ch, long at) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        while(b.hasRemaining()) if(ch.read(b, at+b.position())<0) throw new IOException("Truncated replay file");
+        return b.getLong(0);
+    }
+
+    /** One chunk's readings, split by target shard; also the sink its decoder publishes into. */
+    private final class Batch implements ReadingSink {
+        final Column[] parts = new Column[targets.length];
+        int n;
+        long malformed, unknownSensors;
+
+        Batch(int expected){
+            for(int i=0;i<parts.length;i++) parts[i] = new Column(expected/parts.length);
+        }
+
+        @Override public Sensor findSensor(String sensorId){ return sensor(sensorId); }
+
+        @Override public void publish(Sensor s, long epochMillis, double value){
+            parts[parts.length==1 ? 0 : shardOf(s.getDeviceId(), parts.length)].add(s, epochMillis, value);
+            n++;
+        }
+
+        @Override public boolean tryPublish(Sensor s, long epochMillis, double value){
+            publish(s, epochMillis, value);
+            return true;
+        }
+    }
+
+    /** Readings for one shard in file order. */
+    private static final class Column {
+        Sensor[] sensors;
+        long[] times;
+        double[] values;
+        int n;
+
+        Column(int expected){
+            int cap = Math.max(16, expected);
+            sensors = new Sensor[cap];
+            times = new long[cap];
+            values = new double[cap];
+        }
+
+        void add(Sensor s, long epochMillis, double value){
+            if(n==times.length){
+                int cap = n*2;
+                sensors = Arrays.copyOf(sensors, cap);
+                times = Arrays.copyOf(times, cap);
+                values = Arrays.copyOf(values, cap);
+            }
+            sensors[n] = s;
+            times[n] = epochMillis;
+            values[n++] = value;
+        }
+
+        /** @param newerOnly skip readings older than their sensor's latest; returns how many were */
+        int ingest(MonitoringService target, boolean newerOnly){
+            int skipped = 0;
+            for(int i=0;i<n;i+=INGEST_SLICE){
+                if(newerOnly) skipped += target.ingestNewer(sensors, times, values, i, Math.min(n, i+INGEST_SLICE));
+                else target.ingestBatch(sensors, times, values, i, Math.min(n, i+INGEST_SLICE));
+            }
+            return skipped;
+        }
+    }
+
+    /** Outcome of one {@link #replay}. */
+    public static final class Result {
+        private final boolean dryRun;
+        private long readings, malformed, unknownSensors, stale, bytes, elapsedNanos;
+        private List<Alert> alerts = List.of();
+
+        private Result(boolean dryRun){ this.dryRun = dryRun; }
+
+        public boolean isDryRun(){ return dryRun; }
+        public long getReadings(){ return readings; }
+        public long getMalformed(){ return malformed; }
+        public long getUnknownSensors(){ return unknownSensors; }
+        /** Readings a live replay skipped as older than their sensor's latest; always 0 for a dry run. */
+        public long getStale(){ return stale; }
+        public long getBytes(){ return bytes; }
+        public Duration getElapsed(){ return Duration.ofNanos(elapsedNanos); }
+        /** Alerts raised by the replayed readings, in the order they were raised. */
+        public List<Alert> getAlerts(){ return alerts; }
+
+        public double getReadingsPerSecond(){ return elapsedNanos==0 ? 0 : readings*1e9/elapsedNanos; }
+
+        @Override public String toString(){
+            return (dryRun ? "Dry run: " : "Replay: ")+readings+" readings ("+(bytes>>20)+" MB) in "+elapsedNanos/1_000_000+" ms"+
+                   String.format(" (%.0f/s), ", getReadingsPerSecond())+alerts.size()+" alerts, "+
+                   malformed+" malformed, "+unknownSensors+" unknown sensors"+(dryRun ? "" : ", "+stale+" stale");
+        }
+    }
+
+    /**
+     * Writes the compact binary replay format. Sensor ids are numbered as first seen and
+     * stored once, after the records; the header points at that dictionary.
+     */
+    public static final class BinaryWriter implements AutoCloseable {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1<<17); // fits the longest id
+        private final Map<String, Integer> index = new LinkedHashMap<>();
+        private long position = HEADER_BYTES;
+        private boolean closed;
+
+        public BinaryWriter(Path file) throws IOException {
+            this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        public void write(String sensorId, long epochMillis, double value) throws IOException {
+            if(closed) throw new IllegalStateException("Writer closed");
+            Integer idx = index.get(sensorId);
+            if(idx==null){
+                if(sensorId.getBytes(StandardCharsets.UTF_8).length>0xFFFF) throw new IllegalArgumentException("sensor id too long");
+                index.put(sensorId, idx = index.size());
+            }
+            if(buf.remaining()<RECORD_BYTES) drain();
+            buf.putInt(idx).putLong(epochMillis).putDouble(value);
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while(buf.hasRemaining()) position += ch.write(buf, position);
+            buf.clear();
+        }
+
+        @Override public void close() throws IOException {
+            if(closed) return;
+            closed = true;
+            try {
+                drain();
+                long dictAt = position;
+                buf.putInt(index.size());
+                for(String id : index.keySet()){
+                    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                    if(buf.remaining()<2+bytes.length) drain();
+                    buf.putShort((short)bytes.length).put(bytes);
+                }
+                drain();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(dictAt);
+                header.flip();
+                long at = 0;
+                while(header.hasRemaining()) at += ch.write(header, at);
+            } finally {
+                ch.close();
+            }
+        }
+    }
+}
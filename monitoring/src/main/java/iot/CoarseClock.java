@@ -0,0 +1,34 @@
+package iot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wall-clock milliseconds refreshed by a daemon thread every {@value #TICK_MILLIS} ms, so
+ * hot paths stamping readings read one volatile field instead of the system clock.
+ * Values can lag the real clock by up to a tick and never go backwards.
+ */
+final class CoarseClock {
+    static final long TICK_MILLIS = 1;
+
+    private static volatile long millis = System.currentTimeMillis();
+
+    static {
+        Thread t = new Thread(CoarseClock::tick, "coarse-clock");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private CoarseClock(){}
+
+    /** Current epoch milliseconds, to within a tick. */
+    static long millis(){ return millis; }
+
+    private static void tick(){
+        while(true){
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS));
+            long now = System.currentTimeMillis();
+            if(now>millis) millis = now;
+        }
+    }
+}
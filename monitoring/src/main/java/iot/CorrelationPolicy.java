@@ -0,0 +1,52 @@
+package iot;
+
+import java.time.Duration;
+
+/**
+ * How alerts are coalesced into {@link Incident}s.
+ * Alerts of the same device (or of devices at the same location) join the open incident
+ * for that scope while each follows the previous one within {@code window}; a longer gap,
+ * or resolving the incident, starts a new one. A sensor re-entering breach at the same
+ * severity within {@code duplicateInterval} of its still-unresolved alert raises nothing
+ * new: the breach is attached to that alert and counted as suppressed on its incident.
+ * Times are reading times, so replays of recorded files correlate as they did live.
+ */
+public final class CorrelationPolicy {
+    /** What alerts are grouped by. */
+    public enum Scope { DEVICE, LOCATION }
+
+    /** Every alert stands alone: no incidents and no rate limiting. */
+    public static final CorrelationPolicy NONE = new CorrelationPolicy(null, 0, 0);
+
+    /** Per device; a 10 minute quiet gap ends an incident; one alert per sensor and severity every 5 minutes. */
+    public static final CorrelationPolicy DEFAULT = byDevice(Duration.ofMinutes(10), Duration.ofMinutes(5));
+
+    private final Scope scope;
+    private final long windowMillis;
+    private final long duplicateMillis;
+
+    private CorrelationPolicy(Scope scope, long windowMillis, long duplicateMillis){
+        if(scope!=null && windowMillis<1) throw new IllegalArgumentException("window must be positive");
+        if(duplicateMillis<0) throw new IllegalArgumentException("duplicateInterval must be >= 0");
+        this.scope = scope; this.windowMillis = windowMillis; this.duplicateMillis = duplicateMillis;
+    }
+
+    public static CorrelationPolicy byDevice(Duration window, Duration duplicateInterval){
+        return new CorrelationPolicy(Scope.DEVICE, window.toMillis(), duplicateInterval.toMillis());
+    }
+
+    public static CorrelationPolicy byLocation(Duration window, Duration duplicateInterval){
+        return new CorrelationPolicy(Scope.LOCATION, window.toMillis(), duplicateInterval.toMillis());
+    }
+
+    public boolean isEnabled(){ return scope!=null; }
+    /** Null for {@link #NONE}. */
+    public Scope getScope(){ return scope; }
+    public long getWindowMillis(){ return windowMillis; }
+    public long getDuplicateMillis(){ return duplicateMillis; }
+
+    @Override public String toString(){
+        if(scope==null) return "no correlation";
+        return "by "+scope.name().toLowerCase()+", window "+Duration.ofMillis(windowMillis)+", duplicates "+Duration.ofMillis(duplicateMillis);
+    }
+}
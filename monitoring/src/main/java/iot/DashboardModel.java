@@ -0,0 +1,139 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Materialized per-device view for dashboards, updated by {@link MonitoringService} as
+ * devices register and alerts open or resolve, so rendering never walks the fleet.
+ * Devices are kept both in registration order and ranked worst first (by open alert
+ * counts, compared from CRITICAL down). Readings don't touch the model: last-seen and
+ * staleness are read from the sensors of the rows actually shown.
+ * Guarded by the service lock; read it through {@link MonitoringService#read}.
+ */
+public final class DashboardModel {
+
+    /** Dashboard state of one device. */
+    public static final class DeviceRow {
+        private final Device device;
+        private final int[] open = new int[AlertSeverity.values().length];
+
+        DeviceRow(Device device){ this.device = device; }
+
+        public Device getDevice(){ return device; }
+        public int getOpenAlerts(AlertSeverity severity){ return open[severity.ordinal()]; }
+
+        public int getOpenAlertTotal(){
+            int n = 0;
+            for(int c : open) n += c;
+            return n;
+        }
+
+        /** Most severe open alert, or null if none is open. */
+        public AlertSeverity getWorstSeverity(){
+            for(int i=open.length-1;i>=0;i--) if(open[i]>0) return AlertSeverity.values()[i];
+            return null;
+        }
+
+        /** Sensors with no reading at or after {@code since} (including those never seen). */
+        public int getStaleSensors(LocalDateTime since){
+            long sinceMillis = since.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            int n = 0;
+            for(Sensor s : device.getSensors()){
+                if(!s.hasReading() || s.getLastMillis()<sinceMillis) n++;
+            }
+            return n;
+        }
+
+        /** Latest reading time across the device's sensors, or null if none reported. */
+        public LocalDateTime getLastSeen(){
+            Sensor last = null;
+            for(Sensor s : device.getSensors()){
+                if(s.hasReading() && (last==null || s.getLastMillis()>last.getLastMillis())) last = s;
+            }
+            return last==null ? null : last.getLastSeen();
+        }
+    }
+
+    // worst first: open counts compared from CRITICAL down, then registration order
+    private static final Comparator<DeviceRow> WORST_FIRST = (a, b) -> {
+        for(int i=a.open.length-1;i>=0;i--){
+            int c = Integer.compare(b.open[i], a.open[i]);
+            if(c!=0) return c;
+        }
+        return Long.compare(a.device.getKey(), b.device.getKey());
+    };
+
+    private final Map<String, DeviceRow> rows = new HashMap<>();
+    private final List<DeviceRow> byRegistration = new ArrayList<>();
+    private final NavigableSet<DeviceRow> ranked = new TreeSet<>(WORST_FIRST);
+    private final int[] openAlerts = new int[AlertSeverity.values().length];
+    private final int[] devicesByWorst = new int[AlertSeverity.values().length];
+    private int sensorCount;
+
+    void deviceAdded(Device d){
+        if(rows.containsKey(d.getId())) return;
+        DeviceRow r = new DeviceRow(d);
+        rows.put(d.getId(), r);
+        byRegistration.add(r);
+        ranked.add(r);
+    }
+
+    void sensorAdded(){ sensorCount++; }
+
+    void alertOpened(Alert a){ adjust(a, 1); }
+    void alertClosed(Alert a){ adjust(a, -1); }
+
+    private void adjust(Alert a, int delta){
+        DeviceRow r = rows.get(a.getDeviceId());
+        int sev = a.getSeverity().ordinal();
+        openAlerts[sev] += delta;
+        if(r==null) return;
+        ranked.remove(r);
+        AlertSeverity before = r.getWorstSeverity();
+        r.open[sev] += delta;
+        AlertSeverity after = r.getWorstSeverity();
+        if(before!=null) devicesByWorst[before.ordinal()]--;
+        if(after!=null) devicesByWorst[after.ordinal()]++;
+        ranked.add(r);
+    }
+
+    public DeviceRow getRow(String deviceId){ return rows.get(deviceId); }
+    public int getDeviceCount(){ return byRegistration.size(); }
+    public int getSensorCount(){ return sensorCount; }
+    public int getOpenAlerts(AlertSeverity severity){ return openAlerts[severity.ordinal()]; }
+
+    /** Devices whose worst open alert is at least {@code minSeverity}; all devices if null. */
+    public int countDevices(AlertSeverity minSeverity){
+        if(minSeverity==null) return byRegistration.size();
+        int n = 0;
+        for(int i=minSeverity.ordinal();i<devicesByWorst.length;i++) n += devicesByWorst[i];
+        return n;
+    }
+
+    /** Up to {@code n} devices with open alerts, worst first. */
+    public List<DeviceRow> worst(int n){ return page(AlertSeverity.LOW, 0, n); }
+
+    /**
+     * One page of devices: in registration order when {@code minSeverity} is null, otherwise
+     * worst first, limited to devices with an open alert of at least that severity.
+     */
+    public List<DeviceRow> page(AlertSeverity minSeverity, int offset, int limit){
+        if(offset<0 || limit<0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        if(minSeverity==null){
+            int from = Math.min(offset, byRegistration.size());
+            return new ArrayList<>(byRegistration.subList(from, Math.min(from+limit, byRegistration.size())));
+        }
+        // matching devices are a prefix of the ranking
+        List<DeviceRow> out = new ArrayList<>(Math.min(limit, 64));
+        int skipped = 0;
+        for(DeviceRow r : ranked){
+            AlertSeverity worst = r.getWorstSeverity();
+            if(worst==null || worst.compareTo(minSeverity)<0 || out.size()==limit) break;
+            if(skipped++<offset) continue;
+            out.add(r);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,95 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Console rendering. Each method builds its whole output in one buffer and prints it
+ * with a single call, so large views don't pay per-line console overhead.
+ */
+public class DashboardPrinter {
+    public static void printDeviceSummary(Device d){
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("DEVICE: ").append(d.getName()).append(" (").append(d.getId()).append(") @").append(d.getLocation()).append('\n');
+        sb.append(" Sensors: ").append(d.getSensors().size()).append('\n');
+        for(Sensor s : d.getSensors()){
+            Reading r = s.getLastReading();
+            sb.append("  - ").append(s.getId()).append(" | ").append(s.getType()).append(" last:");
+            if(r==null) sb.append("n/a");
+            else sb.append(r.getValue()).append('@').append(r.getTimestamp());
+            sb.append('\n');
+        }
+        System.out.print(sb);
+    }
+
+    public static void printAlerts(Collection<Alert> alerts){
+        StringBuilder sb = new StringBuilder(64 + alerts.size()*96);
+        sb.append("\n---- LIVE ALERTS ----\n");
+        for(Alert a : alerts) sb.append(a).append('\n');
+        System.out.print(sb);
+    }
+
+    /**
+     * Renders one dashboard screen from the materialized model: fleet totals, the
+     * {@code topN} worst devices and one page of devices. Work is bounded by what is shown.
+     * Must run under the service lock (see {@link MonitoringService#read}).
+     * @param minSeverity only devices with an open alert at least this severe (worst first); null for all
+     * @param page zero-based page index
+     * @param staleBefore sensors without a reading since then count as stale
+     */
+    public static String renderDashboard(DashboardModel m, AlertSeverity minSeverity, int page, int pageSize,
+                                         int topN, LocalDateTime staleBefore){
+        StringBuilder sb = new StringBuilder(256 + (topN+pageSize)*128);
+        sb.append("\n==== DASHBOARD ====\n");
+        sb.append("Devices: ").append(m.getDeviceCount()).append("  Sensors: ").append(m.getSensorCount()).append("  Open alerts:");
+        AlertSeverity[] sevs = AlertSeverity.values();
+        for(int i=sevs.length-1;i>=0;i--) sb.append(' ').append(sevs[i]).append('=').append(m.getOpenAlerts(sevs[i]));
+        sb.append('\n');
+
+        List<DashboardModel.DeviceRow> worst = m.worst(topN);
+        if(!worst.isEmpty()){
+            sb.append("\n---- WORST DEVICES ----\n");
+            for(DashboardModel.DeviceRow r : worst) appendRow(sb, r, staleBefore);
+        }
+
+        int total = m.countDevices(minSeverity);
+        int pages = Math.max(1, (total+pageSize-1)/pageSize);
+        sb.append("\n---- DEVICES");
+        if(minSeverity!=null) sb.append(" (open alerts >= ").append(minSeverity).append(')');
+        sb.append(" page ").append(page+1).append('/').append(pages).append(" of ").append(total).append(" ----\n");
+        for(DashboardModel.DeviceRow r : m.page(minSeverity, page*pageSize, pageSize)) appendRow(sb, r, staleBefore);
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, DashboardModel.DeviceRow r, LocalDateTime staleBefore){
+        Device d = r.getDevice();
+        AlertSeverity worst = r.getWorstSeverity();
+        LocalDateTime last = r.getLastSeen();
+        sb.append(' ').append(d.getId()).append(" | ").append(d.getName()).append(" @").append(d.getLocation())
+          .append(" | ").append(worst==null ? "OK" : worst.toString())
+          .append(" | open=").append(r.getOpenAlertTotal())
+          .append(" | sensors=").append(d.getSensors().size()).append(" stale=").append(r.getStaleSensors(staleBefore))
+          .append(" | last=").append(last==null ? "n/a" : last.toString()).append('\n');
+    }
+
+    /** Prints counters, gauges and latency percentiles; ns histograms in us, ms histograms in s. */
+    public static void printMetrics(Metrics m){
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("\n---- METRICS ----\n");
+        for(Map.Entry<String, Long> c : m.getCounters().entrySet()){
+            sb.append(String.format(" %-40s %12d%n", c.getKey(), c.getValue()));
+        }
+        sb.append(String.format("%n %-34s %10s %10s %10s %10s %10s %10s%n", "latency", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for(Metrics.Entry e : m.entries()){
+            if(e.histogram==null) continue;
+            LatencyHistogram.Snapshot s = e.histogram.snapshot();
+            double scale = 1e-3; // ns -> us, ms -> s
+            String unit = e.unit==Metrics.Unit.NANOS ? " (us)" : " (s)";
+            sb.append(String.format(" %-34s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", e.flatName()+unit, s.getCount(),
+                    s.getMean()*scale, s.percentile(0.5)*scale, s.percentile(0.99)*scale, s.percentile(0.999)*scale, s.getMax()*scale));
+        }
+        System.out.print(sb);
+    }
+}
@@ -2,13 +2,23 @@ package iot;
 
 import java.util.*;
 
+/**
+ * A monitored machine. Its location is fixed at registration: location-scoped rules are
+ * bound and incidents correlated by it, and the journal records it only once.
+ */
 public class Device extends Entity {
     private String name;
-    private String location;
+    private final String location;
     private final Map<String, Sensor> sensors = new LinkedHashMap<>();
 
     public Device(String name, String location) {
-        setName(name); setLocation(location);
+        this(nextKey(), name, location);
+    }
+
+    Device(long key, String name, String location) {
+        super(key);
+        setName(name);
+        this.location = location==null ? "" : location.trim();
     }
 
     public String getName(){ return name; }
@@ -18,14 +28,12 @@ public class Device extends Entity {
     }
 
     public String getLocation(){ return location; }
-    public void setLocation(String location){
-        this.location = location==null ? "" : location.trim();
-    }
 
     public Collection<Sensor> getSensors(){ return Collections.unmodifiableCollection(sensors.values()); }
 
     public void addSensor(Sensor s){
         if(s==null) throw new IllegalArgumentException("Sensor null");
+        s.attach(getId());
         sensors.put(s.getId(), s);
     }
 
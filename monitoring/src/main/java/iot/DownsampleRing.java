@@ -0,0 +1,87 @@
+package iot;
+
+import java.util.Arrays;
+
+/**
+ * Bounded, time-ordered run of downsampled buckets for one sensor and tier, in primitive
+ * columns that grow on demand up to the tier's bucket count. When full, the oldest bucket
+ * is evicted into the next (coarser) tier, if any.
+ */
+final class DownsampleRing {
+    private final long resolution;
+    private final int capacity;
+    private final DownsampleRing next;
+    private long[] start = new long[0], count = new long[0];
+    private double[] min = new double[0], max = new double[0], sum = new double[0];
+    private int head, size; // head: index of the oldest bucket
+
+    DownsampleRing(DownsampleTier tier, DownsampleRing next){
+        this.resolution = tier.getResolutionMillis();
+        this.capacity = tier.getBuckets();
+        this.next = next;
+    }
+
+    long resolution(){ return resolution; }
+    int size(){ return size; }
+
+    /** Start of the bucket holding {@code t}; saturates at Long.MIN_VALUE for open ranges. */
+    long align(long t){ return t < Long.MIN_VALUE+resolution ? Long.MIN_VALUE : t - Math.floorMod(t, resolution); }
+
+    /** Folds a sample or a finer bucket starting at {@code t} into its bucket. */
+    void add(long t, long n, double lo, double hi, double total){
+        long b = align(t);
+        if(size>0){
+            int last = slot(size-1);
+            if(b<=start[last]){ // same bucket (or a straggler from a finer tier's boundary)
+                count[last] += n;
+                if(lo<min[last]) min[last] = lo;
+                if(hi>max[last]) max[last] = hi;
+                sum[last] += total;
+                return;
+            }
+        }
+        if(size==capacity){
+            int old = head;
+            if(next!=null) next.add(start[old], count[old], min[old], max[old], sum[old]);
+            head = (head+1) % capacity;
+            size--;
+        } else if(size==start.length){
+            grow();
+        }
+        int s = slot(size++);
+        start[s] = b; count[s] = n; min[s] = lo; max[s] = hi; sum[s] = total;
+    }
+
+    /** Visits buckets overlapping [from, to] in time order. */
+    void visit(long from, long to, TimeSeriesStore.AggregateVisitor visitor){
+        long lo = align(from);
+        for(int i=0;i<size;i++){
+            int s = slot(i);
+            if(start[s]<lo) continue;
+            if(start[s]>to) break;
+            visitor.accept(start[s], count[s], min[s], max[s], sum[s]);
+        }
+    }
+
+    private int slot(int i){ int s = head+i; return s<start.length ? s : s-start.length; }
+
+    private void grow(){
+        int cap = (int)Math.min(capacity, Math.max(16, start.length*2L));
+        int len = start.length; // ring is full here: size == len
+        start = unroll(start, len, cap); count = unroll(count, len, cap);
+        min = unroll(min, len, cap); max = unroll(max, len, cap); sum = unroll(sum, len, cap);
+        head = 0;
+    }
+
+    private long[] unroll(long[] a, int len, int cap){
+        long[] b = Arrays.copyOf(a, cap);
+        for(int i=0;i<len;i++) b[i] = a[(head+i) % len];
+        return b;
+    }
+
+    private double[] unroll(double[] a, int len, int cap){
+        double[] b = Arrays.copyOf(a, cap);
+        for(int i=0;i<len;i++) b[i] = a[(head+i) % len];
+        return b;
+    }
+}
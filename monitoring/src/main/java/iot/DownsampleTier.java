@@ -0,0 +1,35 @@
+package iot;
+
+import java.time.Duration;
+
+/**
+ * One level of downsampled history: samples rolled up into aligned buckets of
+ * {@code resolution} (count, min, max, sum), kept for {@code retention}.
+ */
+public final class DownsampleTier {
+    private final long resolutionMillis;
+    private final int buckets;
+
+    private DownsampleTier(long resolutionMillis, int buckets){
+        if(resolutionMillis<1) throw new IllegalArgumentException("resolution must be positive");
+        if(buckets<1) throw new IllegalArgumentException("retention must cover at least one bucket");
+        this.resolutionMillis = resolutionMillis; this.buckets = buckets;
+    }
+
+    public static DownsampleTier of(Duration resolution, Duration retention){
+        long res = resolution.toMillis();
+        return new DownsampleTier(res, (int)Math.min(Integer.MAX_VALUE, res<1 ? 0 : retention.toMillis()/res));
+    }
+
+    public long getResolutionMillis(){ return resolutionMillis; }
+    public int getBuckets(){ return buckets; }
+
+    @Override public boolean equals(Object o){
+        if(!(o instanceof DownsampleTier)) return false;
+        DownsampleTier t = (DownsampleTier)o;
+        return resolutionMillis==t.resolutionMillis && buckets==t.buckets;
+    }
+    @Override public int hashCode(){ return Long.hashCode(resolutionMillis)*31 + buckets; }
+
+    @Override public String toString(){ return Duration.ofMillis(resolutionMillis)+" x "+buckets; }
+}
@@ -0,0 +1,36 @@
+package iot;
+
+/**
+ * Base entity providing a compact 64-bit id from the configured {@link IdGenerator}.
+ * The string id is derived lazily, so entities that are never printed or looked up
+ * (e.g. most readings) never build one.
+ */
+public abstract class Entity {
+    private static volatile IdGenerator idGenerator = new SnowflakeIdGenerator();
+
+    private final long key;
+    private String id; // lazily formatted; racy init is benign since Strings are immutable
+
+    protected Entity(){ this(nextKey()); }
+
+    /** Restores an entity under a previously assigned id (recovery). */
+    Entity(long key){ this.key = key; }
+
+    static long nextKey(){ return idGenerator.nextId(); }
+
+    /** Replaces the id strategy for entities created from now on. */
+    public static void setIdGenerator(IdGenerator generator){
+        if(generator==null) throw new IllegalArgumentException("generator required");
+        idGenerator = generator;
+    }
+
+    public static IdGenerator getIdGenerator(){ return idGenerator; }
+
+    public long getKey(){ return key; }
+
+    public String getId() {
+        String s = id;
+        if(s==null) id = s = idGenerator.format(key);
+        return s;
+    }
+}
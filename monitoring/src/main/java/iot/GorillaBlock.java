@@ -0,0 +1,175 @@
+package iot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Immutable block of samples compressed as in Facebook's Gorilla TSDB: timestamps as
+ * delta-of-delta with variable-width codes, values as the XOR with the previous value,
+ * storing only its meaningful bits. Regular intervals and repeated or slowly changing
+ * values cost a few bits per sample. Decoding streams through a {@link Cursor}.
+ */
+final class GorillaBlock {
+    // per-thread scratch bit stream, reused across blocks: sealing only allocates the exact-size result
+    private static final ThreadLocal<Writer> SCRATCH = ThreadLocal.withInitial(() -> new Writer(1024));
+
+    private final long[] words;
+    private final int count;
+    private final long firstTime, lastTime;
+
+    private GorillaBlock(long[] words, int count, long firstTime, long lastTime){
+        this.words = words; this.count = count; this.firstTime = firstTime; this.lastTime = lastTime;
+    }
+
+    int getCount(){ return count; }
+    long getFirstTime(){ return firstTime; }
+    long getLastTime(){ return lastTime; }
+
+    /** Approximate heap footprint: the bit stream plus object and array headers. */
+    int sizeBytes(){ return words.length*8 + 48; }
+
+    /** Encodes samples [0, n) of non-decreasing {@code times}. */
+    static GorillaBlock encode(long[] times, double[] values, int n){
+        if(n<1) throw new IllegalArgumentException("empty block");
+        Writer w = SCRATCH.get();
+        w.reset();
+        long prevTime = times[0], prevDelta = 0;
+        long prevBits = Double.doubleToRawLongBits(values[0]);
+        int prevLead = -1, prevTrail = 0;
+        w.write(prevBits, 64);
+        for(int i=1;i<n;i++){
+            long delta = times[i]-prevTime;
+            long dod = delta-prevDelta;
+            if(dod==0) w.write(0, 1);
+            else if(dod>=-64 && dod<64){ w.write(0b10, 2); w.write(dod, 7); }
+            else if(dod>=-256 && dod<256){ w.write(0b110, 3); w.write(dod, 9); }
+            else if(dod>=-2048 && dod<2048){ w.write(0b1110, 4); w.write(dod, 12); }
+            else if(dod>=Integer.MIN_VALUE && dod<=Integer.MAX_VALUE){ w.write(0b11110, 5); w.write(dod, 32); }
+            else { w.write(0b11111, 5); w.write(dod, 64); }
+            prevTime = times[i];
+            prevDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long x = bits ^ prevBits;
+            if(x==0){
+                w.write(0, 1);
+            } else {
+                int lead = Math.min(Long.numberOfLeadingZeros(x), 31);
+                int trail = Long.numberOfTrailingZeros(x);
+                if(prevLead>=0 && lead>=prevLead && trail>=prevTrail){
+                    // meaningful bits fit the previous window
+                    w.write(0b10, 2);
+                    w.write(x >>> prevTrail, 64-prevLead-prevTrail);
+                } else {
+                    int significant = 64-lead-trail;
+                    w.write(0b11, 2);
+                    w.write(lead, 5);
+                    w.write(significant-1, 6);
+                    w.write(x >>> trail, significant);
+                    prevLead = lead;
+                    prevTrail = trail;
+                }
+            }
+            prevBits = bits;
+        }
+        return new GorillaBlock(w.finish(), n, times[0], times[n-1]);
+    }
+
+    /** Writes the block as it is encoded (snapshots); {@link #read} restores it without re-encoding. */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(count); out.writeLong(firstTime); out.writeLong(lastTime);
+        out.writeInt(words.length);
+        for(long w : words) out.writeLong(w);
+    }
+
+    static GorillaBlock read(DataInput in) throws IOException {
+        int count = in.readInt();
+        long first = in.readLong(), last = in.readLong();
+        int n = in.readInt();
+        // a sample never takes more than 69 timestamp + 77 value bits
+        if(count<1 || last<first || n<1 || n > 3L*count+1) throw new IOException("Corrupt history block");
+        long[] words = new long[n];
+        for(int i=0;i<n;i++) words[i] = in.readLong();
+        return new GorillaBlock(words, count, first, last);
+    }
+
+    Cursor cursor(){ return new Cursor(); }
+
+    /** Forward-only decoder: call {@link #next()} before each {@link #time()}/{@link #value()}. */
+    final class Cursor {
+        private int index, pos;
+        private long time, delta, valueBits;
+        private int lead, trail;
+
+        boolean next(){
+            if(index==count) return false;
+            if(index==0){
+                time = firstTime;
+                valueBits = read(64);
+            } else {
+                long dod;
+                if(read(1)==0) dod = 0;
+                else if(read(1)==0) dod = signed(read(7), 7);
+                else if(read(1)==0) dod = signed(read(9), 9);
+                else if(read(1)==0) dod = signed(read(12), 12);
+                else if(read(1)==0) dod = signed(read(32), 32);
+                else dod = read(64);
+                delta += dod;
+                time += delta;
+                if(read(1)!=0){
+                    if(read(1)!=0){
+                        lead = (int)read(5);
+                        int significant = (int)read(6)+1;
+                        trail = 64-lead-significant;
+                    }
+                    valueBits ^= read(64-lead-trail) << trail;
+                }
+            }
+            index++;
+            return true;
+        }
+
+        long time(){ return time; }
+        double value(){ return Double.longBitsToDouble(valueBits); }
+
+        private long read(int n){
+            int idx = pos >>> 6, free = 64 - (pos & 63);
+            long r = n<=free ? words[idx] >>> (free-n)
+                             : (words[idx] << (n-free)) | (words[idx+1] >>> (64-(n-free)));
+            pos += n;
+            return n==64 ? r : r & ((1L<<n)-1);
+        }
+    }
+
+    private static long signed(long v, int n){ return (v << (64-n)) >> (64-n); }
+
+    /** Append-only MSB-first bit stream. */
+    private static final class Writer {
+        private long[] words;
+        private int bits;
+
+        Writer(int samples){ words = new long[Math.max(4, samples/4)]; } // ~16 bits per sample to start
+
+        void write(long v, int n){
+            int idx = bits >>> 6, free = 64 - (bits & 63);
+            if(idx+1>=words.length) words = Arrays.copyOf(words, words.length*2);
+            if(n<64) v &= (1L<<n)-1;
+            if(n<=free){
+                words[idx] |= v << (free-n);
+            } else {
+                words[idx] |= v >>> (n-free);
+                words[idx+1] |= v << (64-(n-free));
+            }
+            bits += n;
+        }
+
+        long[] finish(){ return Arrays.copyOf(words, (bits+63) >>> 6); }
+
+        void reset(){
+            Arrays.fill(words, 0, (bits+63) >>> 6, 0);
+            bits = 0;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package iot;
+
+/**
+ * A sensor's expected reporting interval and its deadline timer. A reading only moves
+ * {@code deadline}; the timer is rescheduled lazily when it fires early, so a busy sensor
+ * costs one field write per reading. Guarded by the service lock.
+ */
+final class Heartbeat extends TimerWheel.Timer {
+    final Sensor sensor;
+    final long intervalMillis;
+    final AlertSeverity severity;
+    long deadline;   // wall-clock millis by which the next reading is due
+    Alert offline;   // open offline alert; null while the sensor reports on time
+
+    Heartbeat(Sensor sensor, long intervalMillis, AlertSeverity severity){
+        this.sensor = sensor;
+        this.intervalMillis = intervalMillis;
+        this.severity = severity;
+    }
+}
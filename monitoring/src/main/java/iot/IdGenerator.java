@@ -0,0 +1,19 @@
+package iot;
+
+/**
+ * Strategy for assigning {@link Entity} ids.
+ * Ids are compact 64-bit values; the string form is only built when an entity's
+ * {@link Entity#getId()} is first asked for (printing, map keys).
+ */
+public interface IdGenerator {
+    long nextId();
+
+    /** String form of an id; base-36 by default to keep console input short. */
+    default String format(long id){ return Long.toString(id, 36); }
+
+    /** Parses a string produced by {@link #format(long)}. */
+    default long parse(String id){ return Long.parseLong(id, 36); }
+
+    /** Called for ids restored from storage so later ids don't collide with them. */
+    default void reserve(long usedId){}
+}
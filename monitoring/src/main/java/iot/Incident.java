@@ -0,0 +1,110 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Alerts of one device or location coalesced over time (see {@link CorrelationPolicy}),
+ * acknowledged and ticketed as one unit. Memory is bounded whatever the storm size: member
+ * alerts are kept as counts plus the ids of the first {@value #SAMPLE_ALERTS}, and devices as
+ * the first {@value #SAMPLE_DEVICES} plus a count of member alerts from any others; members
+ * are found through the alert indexes when the incident is acknowledged or resolved.
+ */
+public class Incident extends Entity {
+    static final int SAMPLE_ALERTS = 8;
+    static final int SAMPLE_DEVICES = 8;
+
+    private final CorrelationPolicy.Scope scope;
+    private final String scopeKey;             // device id or location
+    private final LocalDateTime openedAt;
+    private final List<String> sampleDeviceIds = new ArrayList<>(SAMPLE_DEVICES);
+    private int otherDeviceAlerts;             // members from devices beyond the sample
+    private final List<String> sampleAlertIds = new ArrayList<>(SAMPLE_ALERTS);
+    private final int[] alerts = new int[AlertSeverity.values().length];
+    private int openAlerts;                    // members not yet resolved
+    private long suppressed;                   // duplicate breaches folded into existing alerts
+    private long lastAlertMillis = Long.MIN_VALUE; // reading time of the latest member
+    private AlertStatus status = AlertStatus.NEW;
+    private String acknowledgedBy;
+    private LocalDateTime acknowledgedAt;
+    private String linkedTicketId;
+
+    /** @param openedAt creation time of the first member alert */
+    Incident(CorrelationPolicy.Scope scope, String scopeKey, LocalDateTime openedAt){
+        this(nextKey(), scope, scopeKey, openedAt);
+    }
+
+    Incident(long key, CorrelationPolicy.Scope scope, String scopeKey, LocalDateTime openedAt){
+        super(key);
+        if(scope==null) throw new IllegalArgumentException("scope required");
+        if(scopeKey==null) throw new IllegalArgumentException("scopeKey required");
+        this.scope = scope;
+        this.scopeKey = scopeKey;
+        this.openedAt = openedAt;
+    }
+
+    public CorrelationPolicy.Scope getScope(){ return scope; }
+    /** The device id or location the incident groups by. */
+    public String getScopeKey(){ return scopeKey; }
+    public LocalDateTime getOpenedAt(){ return openedAt; }
+    /** Ids of the first devices with member alerts, in joining order. */
+    public List<String> getSampleDeviceIds(){ return Collections.unmodifiableList(sampleDeviceIds); }
+    /** Member alerts raised by devices not in {@link #getSampleDeviceIds()}; 0 when the sample is complete. */
+    public int getOtherDeviceAlerts(){ return otherDeviceAlerts; }
+    /** Ids of the first member alerts, oldest first. */
+    public List<String> getSampleAlertIds(){ return Collections.unmodifiableList(sampleAlertIds); }
+    public String getFirstAlertId(){ return sampleAlertIds.isEmpty() ? null : sampleAlertIds.get(0); }
+    public int getAlertCount(AlertSeverity severity){ return alerts[severity.ordinal()]; }
+    public int getOpenAlerts(){ return openAlerts; }
+    public long getSuppressed(){ return suppressed; }
+    public long getLastAlertMillis(){ return lastAlertMillis; }
+    public AlertStatus getStatus(){ return status; }
+    public String getAcknowledgedBy(){ return acknowledgedBy; }
+    public LocalDateTime getAcknowledgedAt(){ return acknowledgedAt; }
+    public String getLinkedTicketId(){ return linkedTicketId; }
+
+    public int getAlertCount(){
+        int n = 0;
+        for(int c : alerts) n += c;
+        return n;
+    }
+
+    /** Most severe member alert, or null before the first joins. */
+    public AlertSeverity getWorstSeverity(){
+        for(int i=alerts.length-1;i>=0;i--) if(alerts[i]>0) return AlertSeverity.values()[i];
+        return null;
+    }
+
+    void join(Alert a, long readingMillis){
+        alerts[a.getSeverity().ordinal()]++;
+        if(a.getStatus()!=AlertStatus.RESOLVED) openAlerts++;
+        if(sampleAlertIds.size()<SAMPLE_ALERTS) sampleAlertIds.add(a.getId());
+        if(!sampleDeviceIds.contains(a.getDeviceId())){
+            if(sampleDeviceIds.size()<SAMPLE_DEVICES) sampleDeviceIds.add(a.getDeviceId());
+            else otherDeviceAlerts++;
+        }
+        if(readingMillis>lastAlertMillis) lastAlertMillis = readingMillis;
+        a.linkIncident(getId());
+    }
+
+    void suppress(){ suppressed++; }
+    void restoreSuppressed(long n){ suppressed = n; }
+    void memberResolved(){ if(openAlerts>0) openAlerts--; }
+
+    void acknowledge(String by, LocalDateTime at){
+        if(status!=AlertStatus.NEW) throw new IllegalStateException("Only NEW incidents can be acknowledged");
+        this.status = AlertStatus.ACKNOWLEDGED;
+        this.acknowledgedBy = by;
+        this.acknowledgedAt = at;
+    }
+
+    void resolve(){ status = AlertStatus.RESOLVED; }
+    void linkTicket(String ticketId){ this.linkedTicketId = ticketId; }
+
+    @Override public String toString(){
+        AlertSeverity worst = getWorstSeverity();
+        return getId()+" | INCIDENT "+scope.name().toLowerCase()+"="+scopeKey+" | "+(worst==null ? "-" : worst)+" | "+status+
+               " | alerts="+getAlertCount()+" (open "+openAlerts+", suppressed "+suppressed+") | devices="+sampleDeviceIds.size()+(otherDeviceAlerts>0 ? "+" : "")+
+               (linkedTicketId==null ? "" : " | ticket="+linkedTicketId);
+    }
+}
@@ -0,0 +1,86 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Correlation state behind {@link Incident}s: every incident (indexed by status in
+ * creation order), the incident currently open per scope key, and each sensor's latest
+ * alert per severity for duplicate rate limiting. Retained state scales with incidents
+ * and alerting sensors, not with breaches. Guarded by the service lock.
+ */
+final class IncidentCorrelator {
+    private CorrelationPolicy policy = CorrelationPolicy.DEFAULT;
+    private final Map<String, Incident> incidents = new LinkedHashMap<>();
+    private final Map<String, Incident> current = new HashMap<>(); // scope key -> newest unresolved incident
+    private final TimeIndex<AlertStatus, Incident> byStatus = new TimeIndex<>(Incident::getOpenedAt);
+    private final Map<Sensor, Recent> recent = new HashMap<>();
+
+    /** A sensor's latest alert and its reading time, per severity. */
+    private static final class Recent {
+        final Alert[] alerts = new Alert[AlertSeverity.values().length];
+        final long[] at = new long[AlertSeverity.values().length];
+    }
+
+    CorrelationPolicy policy(){ return policy; }
+
+    void setPolicy(CorrelationPolicy policy){
+        if(policy==null) throw new IllegalArgumentException("policy required");
+        this.policy = policy;
+        current.clear(); // scope or window may have changed: start fresh incidents
+    }
+
+    /** Scope key of a new alert under the current policy, or null when correlation is off. */
+    String scopeKey(Device d, String deviceId){
+        if(!policy.isEnabled()) return null;
+        if(policy.getScope()==CorrelationPolicy.Scope.LOCATION) return d==null ? "" : d.getLocation();
+        return deviceId;
+    }
+
+    /**
+     * The unresolved alert a new breach of {@code s} at {@code severity} duplicates, i.e. one
+     * raised less than the duplicate interval earlier; null if a new alert should be raised.
+     */
+    Alert duplicateOf(Sensor s, AlertSeverity severity, long readingMillis){
+        if(!policy.isEnabled() || policy.getDuplicateMillis()==0) return null;
+        Recent r = recent.get(s);
+        if(r==null) return null;
+        Alert a = r.alerts[severity.ordinal()];
+        if(a==null || a.getStatus()==AlertStatus.RESOLVED) return null;
+        return readingMillis-r.at[severity.ordinal()] < policy.getDuplicateMillis() ? a : null;
+    }
+
+    /** The open incident a new alert at {@code readingMillis} joins, or null if a new one must open. */
+    Incident joinable(String scopeKey, long readingMillis){
+        Incident i = current.get(scopeKey);
+        if(i==null || i.getStatus()==AlertStatus.RESOLVED) return null;
+        return readingMillis-i.getLastAlertMillis() <= policy.getWindowMillis() ? i : null;
+    }
+
+    void opened(Incident i){
+        if(incidents.put(i.getId(), i)!=null) return;
+        byStatus.add(i.getStatus(), i);
+        if(i.getStatus()!=AlertStatus.RESOLVED) current.put(i.getScopeKey(), i);
+    }
+
+    /** Remembers an alert as its sensor's latest at its severity. */
+    void alertRaised(Sensor s, Alert a, long readingMillis){
+        Recent r = recent.computeIfAbsent(s, k -> new Recent());
+        r.alerts[a.getSeverity().ordinal()] = a;
+        r.at[a.getSeverity().ordinal()] = readingMillis;
+    }
+
+    void statusChanged(Incident i, AlertStatus before){
+        byStatus.move(before, i.getStatus(), i);
+        if(i.getStatus()==AlertStatus.RESOLVED) current.remove(i.getScopeKey(), i);
+    }
+
+    Incident get(String id){ return id==null ? null : incidents.get(id); }
+    Collection<Incident> all(){ return incidents.values(); }
+    int count(AlertStatus status){ return byStatus.size(status); }
+    TimeIndex.Pos pos(Incident i){ return byStatus.pos(i); }
+
+    Page<Incident> query(Set<AlertStatus> statuses, LocalDateTime from, LocalDateTime to, TimeIndex.Pos before, int limit){
+        return byStatus.page(statuses, before, from, to, i -> true, limit);
+    }
+}
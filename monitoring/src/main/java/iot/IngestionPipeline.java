@@ -0,0 +1,357 @@
+package iot;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Programmatic, multi-producer ingestion path.
+ * Producers publish into one of two bounded lanes; one consumer thread drains them in
+ * batches and hands each batch to {@link MonitoringService#ingestBatch} under a single
+ * lock acquisition. A partial batch is processed once it has waited {@code flushLatency}.
+ * <p>
+ * Readings of {@linkplain Sensor#isPriority() priority sensors} (those with a HIGH or
+ * CRITICAL threshold) go to the priority lane, which is always drained first, so they are
+ * evaluated ahead of the rest however far behind the consumer is. What happens when a
+ * lane is full is set by the {@link OverloadPolicy}: under {@link OverloadPolicy#BLOCK}
+ * each lane is a ring buffer (one slot sequence per entry, so producers only contend on a
+ * single CAS) and producers wait; the shedding policies keep a small buffer per sensor
+ * and discard its oldest readings, counted as shed or conflated. A sensor whose priority
+ * changes while readings are queued may have a few of them evaluated out of order, which
+ * the history drops as usual.
+ * <p>
+ * A reading whose recording throws is skipped and counted as failed (see
+ * {@link #getFailedCount()} and {@link #getLastFailure()}); the rest of its batch is still
+ * recorded.
+ */
+public class IngestionPipeline implements ReadingSink, AutoCloseable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MonitoringService service;
+    private final OverloadPolicy policy;
+    private final int batchSize;
+    private final long flushLatencyNanos;
+    private final Lane priority;
+    private final Lane normal;
+
+    // consumer-owned batch buffers
+    private final Sensor[] batchSensor;
+    private final long[] batchTime;
+    private final double[] batchValue;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile RuntimeException lastFailure;
+    private final Consumer<RuntimeException> onFailure = this::failed;
+    private final AtomicInteger flushWaiters = new AtomicInteger();
+    private final AtomicInteger publishing = new AtomicInteger(); // producers between the open check and their offer
+    private final Thread consumer;
+    private volatile boolean accepting = true; // producers may publish
+    private volatile boolean running = true;   // consumer keeps polling; cleared once no offer is in flight
+
+    public IngestionPipeline(MonitoringService service){
+        this(service, 1<<16, 1024, Duration.ofMillis(1));
+    }
+
+    /**
+     * @param capacity ring size, rounded up to a power of two
+     * @param batchSize max readings handed to the service per lock acquisition
+     * @param flushLatency max time a partial batch waits before being processed
+     */
+    public IngestionPipeline(MonitoringService service, int capacity, int batchSize, Duration flushLatency){
+        this(service, capacity, batchSize, flushLatency, "ingestion-pipeline");
+    }
+
+    /** @param threadName name of the consumer thread */
+    public IngestionPipeline(MonitoringService service, int capacity, int batchSize, Duration flushLatency, String threadName){
+        this(service, capacity, batchSize, flushLatency, threadName, OverloadPolicy.BLOCK);
+    }
+
+    /** @param capacity ring size per lane under {@link OverloadPolicy#BLOCK}; unused by the shedding policies */
+    public IngestionPipeline(MonitoringService service, int capacity, int batchSize, Duration flushLatency, String threadName, OverloadPolicy policy){
+        if(service==null) throw new IllegalArgumentException("service required");
+        if(capacity<2) throw new IllegalArgumentException("capacity must be >= 2");
+        if(batchSize<1) throw new IllegalArgumentException("batchSize must be >= 1");
+        if(flushLatency==null || flushLatency.isNegative()) throw new IllegalArgumentException("flushLatency required");
+        if(policy==null) throw new IllegalArgumentException("policy required");
+        this.service = service;
+        this.policy = policy;
+        int cap = Integer.highestOneBit(capacity-1)<<1;
+        this.batchSize = policy.isShedding() ? batchSize : Math.min(batchSize, cap);
+        this.flushLatencyNanos = flushLatency.toNanos();
+        this.priority = policy.isShedding() ? new SensorLane() : new RingLane(cap);
+        this.normal = policy.isShedding() ? new SensorLane() : new RingLane(cap);
+        this.batchSensor = new Sensor[this.batchSize];
+        this.batchTime = new long[this.batchSize];
+        this.batchValue = new double[this.batchSize];
+        this.consumer = new Thread(this::consume, threadName);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override public Sensor findSensor(String sensorId){ return service.getSensor(sensorId); }
+
+    /** Publishes a reading; under {@link OverloadPolicy#BLOCK} spins/parks while its lane is full. */
+    @Override public void publish(Sensor s, long epochMillis, double value){
+        while(!tryPublish(s, epochMillis, value)){
+            if(!accepting) throw new IllegalStateException("Pipeline closed");
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /** Publishes a reading for a sensor id; unknown sensors are rejected. */
+    public void publish(String sensorId, long epochMillis, double value){
+        Sensor s = service.getSensor(sensorId);
+        if(s==null) throw new IllegalArgumentException("Unknown sensor "+sensorId);
+        publish(s, epochMillis, value);
+    }
+
+    /** @return false if the reading's lane is full (only under {@link OverloadPolicy#BLOCK}) */
+    @Override public boolean tryPublish(Sensor s, long epochMillis, double value){
+        if(s==null || s.getDeviceId()==null) throw new IllegalArgumentException("Sensor must be attached to a device");
+        publishing.incrementAndGet();
+        try {
+            if(!accepting) throw new IllegalStateException("Pipeline closed");
+            return (s.isPriority() ? priority : normal).offer(s, epochMillis, value);
+        } finally {
+            publishing.decrementAndGet(); // close() waits for this before the consumer's last drain
+        }
+    }
+
+    /** Blocks until every reading published before this call has been processed (or discarded, or has failed). */
+    public void flush(){
+        long target = published();
+        flushWaiters.incrementAndGet();
+        try {
+            LockSupport.unpark(consumer);
+            while(done() < target){
+                if(!consumer.isAlive()) throw new IllegalStateException("Pipeline consumer stopped");
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } finally {
+            flushWaiters.decrementAndGet();
+        }
+    }
+
+    public long getProcessedCount(){ return processed.get(); }
+    /** Readings discarded under {@link OverloadPolicy.Mode#DROP_OLDEST}. */
+    public long getShedCount(){ return shed.sum(); }
+    /** Readings superseded by a newer value of their sensor under {@link OverloadPolicy.Mode#CONFLATE}. */
+    public long getConflatedCount(){ return conflated.sum(); }
+    /** Readings skipped because recording them threw. */
+    public long getFailedCount(){ return failed.sum(); }
+    /** The exception of the most recent failed reading, or null if none has failed. */
+    public RuntimeException getLastFailure(){ return lastFailure; }
+    /** Readings published but not yet processed, discarded or failed. */
+    public long getBacklog(){ return Math.max(0, published()-done()); }
+    public int getBatchSize(){ return batchSize; }
+    public OverloadPolicy getPolicy(){ return policy; }
+
+    private long published(){ return priority.published()+normal.published(); }
+    private long done(){ return processed.get()+shed.sum()+conflated.sum()+failed.sum(); }
+
+    private void failed(RuntimeException ex){
+        failed.increment();
+        lastFailure = ex;
+        service.getMetrics().readingFailed();
+    }
+
+    private void consume(){
+        int n = 0;
+        long firstAt = 0;
+        while(running || n>0 || !priority.isEmpty() || !normal.isEmpty()){
+            int before = n;
+            n = priority.drain(n);
+            n = normal.drain(n);
+            if(n>before && before==0) firstAt = System.nanoTime();
+            boolean due = n==batchSize
+                || (n>0 && (flushWaiters.get()>0 || !running || System.nanoTime()-firstAt >= flushLatencyNanos));
+            if(due){
+                for(int i=0;i<n;){
+                    int stop = service.ingestBatch(batchSensor, batchTime, batchValue, i, n, onFailure);
+                    processed.addAndGet(stop-i);
+                    i = stop<n ? stop+1 : n; // skip the reading that failed, keep the rest of the batch
+                }
+                Arrays.fill(batchSensor, 0, n, null);
+                n = 0;
+            } else if(n==before){
+                LockSupport.parkNanos(n==0 ? IDLE_PARK_NANOS : Math.min(IDLE_PARK_NANOS, flushLatencyNanos));
+            }
+        }
+    }
+
+    /** Stops accepting readings and processes everything already published. */
+    @Override public void close(){
+        accepting = false;
+        while(publishing.get()>0) Thread.onSpinWait(); // let offers that passed the check land first
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A bounded queue of readings; multi-producer, drained by the consumer thread only. */
+    private abstract static class Lane {
+        /** @return false if full */
+        abstract boolean offer(Sensor s, long epochMillis, double value);
+        /** Appends queued readings to the batch from index {@code n}; returns the new batch size. */
+        abstract int drain(int n);
+        abstract boolean isEmpty();
+        /** Readings ever accepted. */
+        abstract long published();
+    }
+
+    private final class RingLane extends Lane {
+        private final int mask;
+        // ring slots (parallel arrays) guarded by per-slot sequence numbers
+        private final AtomicLongArray slotSeq;
+        private final Sensor[] slotSensor;
+        private final long[] slotTime;
+        private final double[] slotValue;
+        private final AtomicLong tail = new AtomicLong();
+        private long head; // consumer-owned
+
+        RingLane(int cap){
+            this.mask = cap-1;
+            this.slotSeq = new AtomicLongArray(cap);
+            for(int i=0;i<cap;i++) slotSeq.set(i, i);
+            this.slotSensor = new Sensor[cap];
+            this.slotTime = new long[cap];
+            this.slotValue = new double[cap];
+        }
+
+        @Override boolean offer(Sensor s, long epochMillis, double value){
+            while(true){
+                long pos = tail.get();
+                int idx = (int)(pos & mask);
+                long diff = slotSeq.get(idx) - pos;
+                if(diff==0){
+                    if(!tail.compareAndSet(pos, pos+1)) continue;
+                    slotSensor[idx] = s;
+                    slotTime[idx] = epochMillis;
+                    slotValue[idx] = value;
+                    slotSeq.lazySet(idx, pos+1);
+                    return true;
+                }
+                if(diff<0) return false; // slot not yet released by the consumer
+            }
+        }
+
+        @Override int drain(int n){
+            while(n<batchSize){
+                int idx = (int)(head & mask);
+                if(slotSeq.get(idx) != head+1) break;
+                batchSensor[n] = slotSensor[idx];
+                batchTime[n] = slotTime[idx];
+                batchValue[n] = slotValue[idx];
+                n++;
+                slotSensor[idx] = null;
+                slotSeq.lazySet(idx, head+mask+1);
+                head++;
+            }
+            return n;
+        }
+
+        @Override boolean isEmpty(){ return head>=tail.get(); }
+        @Override long published(){ return tail.get(); }
+    }
+
+    /**
+     * Per-sensor ring of the policy's depth, plus a queue of sensors with readings waiting
+     * (each at most once), so the backlog is bounded by sensors x depth. Sensors are drained
+     * in the order they became ready, each sensor's readings in publish order.
+     */
+    private final class SensorLane extends Lane {
+        private final Map<Sensor, Pending> pending = new ConcurrentHashMap<>();
+        private final Queue<Pending> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicLong published = new AtomicLong();
+
+        @Override boolean offer(Sensor s, long epochMillis, double value){
+            Pending p = pending.get(s);
+            if(p==null) p = pending.computeIfAbsent(s, k -> new Pending(k, policy.getPerSensor()));
+            boolean enqueue;
+            synchronized(p){
+                if(p.count==p.times.length){
+                    p.head = (p.head+1) % p.times.length;
+                    p.count--;
+                    discarded();
+                }
+                int i = (p.head+p.count) % p.times.length;
+                p.times[i] = epochMillis;
+                p.values[i] = value;
+                p.count++;
+                published.incrementAndGet();
+                enqueue = !p.queued;
+                p.queued = true;
+            }
+            if(enqueue) ready.offer(p);
+            return true;
+        }
+
+        @Override int drain(int n){
+            while(n<batchSize){
+                Pending p = ready.poll();
+                if(p==null) break;
+                boolean more;
+                synchronized(p){
+                    int take = Math.min(p.count, batchSize-n);
+                    for(int k=0;k<take;k++){
+                        batchSensor[n] = p.sensor;
+                        batchTime[n] = p.times[p.head];
+                        batchValue[n] = p.values[p.head];
+                        n++;
+                        p.head = (p.head+1) % p.times.length;
+                    }
+                    p.count -= take;
+                    more = p.count>0;
+                    p.queued = more;
+                }
+                if(more) ready.offer(p); // batch full: the rest waits behind the other ready sensors
+            }
+            return n;
+        }
+
+        private void discarded(){
+            if(policy.getMode()==OverloadPolicy.Mode.CONFLATE){
+                conflated.increment();
+                service.getMetrics().readingConflated();
+            } else {
+                shed.increment();
+                service.getMetrics().readingShed();
+            }
+        }
+
+        @Override boolean isEmpty(){ return ready.isEmpty(); }
+        @Override long published(){ return published.get(); }
+    }
+
+    /** A sensor's queued readings; guarded by its own monitor. */
+    private static final class Pending {
+        final Sensor sensor;
+        final long[] times;
+        final double[] values;
+        int head, count;
+        boolean queued; // in the ready queue
+
+        Pending(Sensor sensor, int depth){
+            this.sensor = sensor;
+            this.times = new long[depth];
+            this.values = new double[depth];
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package iot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP (and optional UDP) server for the {@link LineProtocolDecoder} line protocol.
+ * Each TCP connection runs a blocking read loop on its own thread; on Java 21+ these are
+ * virtual threads, otherwise small-stack platform threads. A connection whose readings
+ * can't be published (sink full) stops reading, so TCP flow control pushes back on that
+ * device alone. UDP datagrams may carry several lines and are decoded on one thread.
+ * <p>
+ * Platform threads each reserve a stack and count against the OS thread limit, so the
+ * default connection cap is {@value #PLATFORM_MAX_CONNECTIONS} on older runtimes and only
+ * {@value #VIRTUAL_MAX_CONNECTIONS} (about 100k devices with headroom) on Java 21+.
+ */
+public class IngestionServer implements AutoCloseable {
+    private static final long PLATFORM_STACK_BYTES = 256*1024;
+    static final int PLATFORM_MAX_CONNECTIONS = 4_096, VIRTUAL_MAX_CONNECTIONS = 200_000;
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory(); // null before Java 21
+
+    private final ReadingSink sink;
+    private final int bufferBytes;
+    private final Semaphore connectionSlots;
+    private final ThreadFactory connectionThreads = VIRTUAL_THREADS!=null ? VIRTUAL_THREADS : IngestionServer::platformThread;
+    private ServerSocketChannel tcp;
+    private DatagramChannel udp;
+    private volatile boolean running;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder unknownSensors = new LongAdder();
+
+    /** 2 KB line buffers, at most {@link #defaultMaxConnections()} connections. */
+    public IngestionServer(ReadingSink sink){ this(sink, 2048, defaultMaxConnections()); }
+
+    /** Connections one server takes by default: far more when they run on virtual threads. */
+    public static int defaultMaxConnections(){ return VIRTUAL_THREADS!=null ? VIRTUAL_MAX_CONNECTIONS : PLATFORM_MAX_CONNECTIONS; }
+
+    /**
+     * @param bufferBytes per-connection read buffer; also the maximum line length
+     * @param maxConnections further connections are closed immediately
+     */
+    public IngestionServer(ReadingSink sink, int bufferBytes, int maxConnections){
+        if(sink==null) throw new IllegalArgumentException("sink required");
+        if(bufferBytes<64) throw new IllegalArgumentException("bufferBytes must be >= 64");
+        if(maxConnections<1) throw new IllegalArgumentException("maxConnections must be >= 1");
+        this.sink = sink;
+        this.bufferBytes = bufferBytes;
+        this.connectionSlots = new Semaphore(maxConnections);
+    }
+
+    /** Starts listening; pass {@code udpPort < 0} to disable UDP. Port 0 picks a free port. */
+    public synchronized void start(int tcpPort, int udpPort) throws IOException {
+        if(running) throw new IllegalStateException("Already started");
+        running = true;
+        tcp = ServerSocketChannel.open();
+        tcp.bind(new InetSocketAddress(tcpPort), 4096);
+        Thread acceptor = new Thread(this::acceptLoop, "ingest-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        if(udpPort>=0){
+            udp = DatagramChannel.open();
+            udp.bind(new InetSocketAddress(udpPort));
+            Thread receiver = new Thread(this::udpLoop, "ingest-udp");
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+    }
+
+    public int getTcpPort() throws IOException { return ((InetSocketAddress)tcp.getLocalAddress()).getPort(); }
+    public int getUdpPort() throws IOException { return udp==null ? -1 : ((InetSocketAddress)udp.getLocalAddress()).getPort(); }
+
+    private void acceptLoop(){
+        while(running){
+            try {
+                SocketChannel ch = tcp.accept();
+                if(!connectionSlots.tryAcquire()){
+                    rejected.increment();
+                    ch.close();
+                    continue;
+                }
+                accepted.increment();
+                active.incrementAndGet();
+                connectionThreads.newThread(() -> serve(ch)).start();
+            } catch(ClosedChannelException ex){
+                return;
+            } catch(IOException ex){
+                if(running) System.err.println("Accept failed: "+ex.getMessage());
+            }
+        }
+    }
+
+    private void serve(SocketChannel ch){
+        LineProtocolDecoder decoder = new LineProtocolDecoder(sink);
+        ByteBuffer buf = ByteBuffer.allocate(bufferBytes);
+        long[] reported = new long[3];
+        try(ch){
+            while(running && ch.read(buf)>=0){
+                buf.flip();
+                decoder.decode(buf);
+                buf.compact();
+                report(decoder, reported);
+            }
+        } catch(IOException ex){
+            // connection reset by the device; nothing to do
+        } catch(IllegalStateException ex){
+            // sink closed while this connection was publishing
+        } finally {
+            report(decoder, reported);
+            active.decrementAndGet();
+            connectionSlots.release();
+        }
+    }
+
+    /** Adds a decoder's counts since the last report to the server totals (once per read, not per line). */
+    private void report(LineProtocolDecoder d, long[] reported){
+        readings.add(d.getReadings()-reported[0]); reported[0] = d.getReadings();
+        malformed.add(d.getMalformed()-reported[1]); reported[1] = d.getMalformed();
+        unknownSensors.add(d.getUnknownSensors()-reported[2]); reported[2] = d.getUnknownSensors();
+    }
+
+    private void udpLoop(){
+        LineProtocolDecoder decoder = new LineProtocolDecoder(sink);
+        ByteBuffer buf = ByteBuffer.allocateDirect(64*1024);
+        long[] reported = new long[3];
+        while(running){
+            try {
+                buf.clear();
+                udp.receive(buf);
+                buf.flip();
+                decoder.decode(buf);
+                if(buf.hasRemaining()){ // datagram without trailing newline: treat the tail as a line
+                    ByteBuffer tail = ByteBuffer.allocate(buf.remaining()+1).put(buf).put((byte)'\n').flip();
+                    decoder.decode(tail);
+                }
+                report(decoder, reported);
+            } catch(ClosedChannelException ex){
+                return;
+            } catch(IOException ex){
+                if(running) System.err.println("UDP receive failed: "+ex.getMessage());
+            }
+        }
+    }
+
+    public int getActiveConnections(){ return active.get(); }
+    public long getAcceptedConnections(){ return accepted.sum(); }
+    public long getRejectedConnections(){ return rejected.sum(); }
+    public long getReadings(){ return readings.sum(); }
+    public long getMalformed(){ return malformed.sum(); }
+    public long getUnknownSensors(){ return unknownSensors.sum(); }
+
+    @Override public synchronized void close(){
+        running = false;
+        try {
+            if(tcp!=null) tcp.close();
+            if(udp!=null) udp.close();
+        } catch(IOException ex){
+            System.err.println("Close failed: "+ex.getMessage());
+        }
+    }
+
+    /** Virtual threads when the runtime has them (Java 21+; the build targets 17), else null. */
+    private static ThreadFactory virtualThreadFactory(){
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch(ReflectiveOperationException ex){
+            return null;
+        }
+    }
+
+    /** Daemon platform thread with a small stack. */
+    private static Thread platformThread(Runnable r){
+        Thread t = new Thread(null, r, "ingest-conn", PLATFORM_STACK_BYTES);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,499 @@
+package iot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.management.JMException;
+
+/**
+ * Simple menu-driven console app implementing the rules.
+ * It is one client of {@link MonitoringService}; readings go through the same
+ * {@link IngestionPipeline} programmatic producers use.
+ * State is in memory unless a data directory is given as the first argument, in which
+ * case it is journaled there and recovered on the next start (see {@link Persistence}).
+ * {@code --tcp port} (and {@code --udp port}) also accept readings from devices over the
+ * network, into the same pipeline (see {@link IngestionServer}).
+ * {@code --load-test} instead runs a synthetic fleet through the engine (see {@link LoadGenerator}).
+ */
+public class IoTMonitoringApp {
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofMinutes(5);
+    private static final Duration METRICS_DUMP_INTERVAL = Duration.ofSeconds(15);
+    private static final int PAGE_SIZE = 20;
+    private static final int WORST_DEVICES = 5;
+    private static final Duration STALE_AFTER = Duration.ofMinutes(15);
+    private static final Duration HEARTBEAT_CHECK_INTERVAL = Duration.ofSeconds(1);
+    private static final Set<AlertStatus> UNRESOLVED = EnumSet.of(AlertStatus.NEW, AlertStatus.ACKNOWLEDGED);
+
+    private final MonitoringService service = new MonitoringService();
+    private final IngestionPipeline pipeline = new IngestionPipeline(service);
+    private final Persistence persistence; // null when running in memory only
+    private final Path dataDir;
+    private final int tcpPort, udpPort; // -1: not listening
+    private IngestionServer server;
+    private volatile boolean replaying; // keeps bulk replays from printing every alert
+    private ScheduledExecutorService heartbeatChecker;
+
+    private final Scanner sc = new Scanner(System.in);
+
+    public IoTMonitoringApp(Path dataDir) throws IOException {
+        this(dataDir, -1, -1);
+    }
+
+    /** @param tcpPort port for network ingestion, 0 for any free one, -1 for none; likewise {@code udpPort} (needs TCP) */
+    public IoTMonitoringApp(Path dataDir, int tcpPort, int udpPort) throws IOException {
+        if(udpPort>=0 && tcpPort<0) throw new IllegalArgumentException("--udp needs --tcp");
+        this.dataDir = dataDir;
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+        this.persistence = dataDir==null ? null : new Persistence(dataDir);
+    }
+
+    /**
+     * {@code [dataDir] [--tcp port [--udp port]]} for the console, or
+     * {@code --load-test [key=value...]} (see {@link LoadGenerator#main}).
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length>0 && args[0].equals("--load-test")){
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        Path dataDir = null;
+        int tcp = -1, udp = -1;
+        for(int i=0;i<args.length;i++){
+            switch(args[i]){
+                case "--tcp": tcp = port(args, ++i, "--tcp"); break;
+                case "--udp": udp = port(args, ++i, "--udp"); break;
+                default:
+                    if(args[i].startsWith("--") || dataDir!=null) throw new IllegalArgumentException("Unexpected argument "+args[i]);
+                    dataDir = Paths.get(args[i]);
+            }
+        }
+        new IoTMonitoringApp(dataDir, tcp, udp).run();
+    }
+
+    private static int port(String[] args, int i, String flag){
+        if(i>=args.length) throw new IllegalArgumentException(flag+" needs a port");
+        try {
+            int p = Integer.parseInt(args[i]);
+            if(p<0 || p>65535) throw new NumberFormatException();
+            return p;
+        } catch(NumberFormatException ex){
+            throw new IllegalArgumentException(flag+" needs a port, got "+args[i]);
+        }
+    }
+
+    private void run() throws IOException {
+        boolean recovered = false;
+        if(persistence!=null){
+            recovered = persistence.recover(service);
+            persistence.startSnapshots(SNAPSHOT_INTERVAL);
+            if(recovered) System.out.println("Recovered state from "+service.getDevices().size()+" device(s).");
+        }
+        if(!recovered) seed();
+        // alerts that join an existing incident are not printed one by one; see the Incidents menu
+        service.onAlert(a -> { if(!replaying && a.getIncidentId()==null) System.out.println("ALERT GENERATED: "+a); });
+        service.onIncident(i -> {
+            if(!replaying) System.out.println("INCIDENT OPENED: "+i+"\n  first alert: "+service.getAlert(i.getFirstAlertId()));
+        });
+        startMetrics();
+        startHeartbeatChecks();
+        if(tcpPort>=0) startServer();
+        while(true){
+            System.out.println("\n=== IoT Monitoring Menu ===");
+            System.out.println("1) Add Device");
+            System.out.println("2) Add Sensor to Device");
+            System.out.println("3) Set Threshold");
+            System.out.println("4) Ingest Reading");
+            System.out.println("5) Generate Alerts (re-check changed sensors)");
+            System.out.println("6) Acknowledge Alert");
+            System.out.println("7) Create Maintenance Ticket for Alert");
+            System.out.println("8) Add Tech Action to Ticket");
+            System.out.println("9) Close Ticket");
+            System.out.println("10) View Dashboards / Alerts");
+            System.out.println("11) Metrics");
+            System.out.println("12) Replay Readings File");
+            System.out.println("13) Incidents");
+            System.out.println("14) Rules");
+            System.out.println("15) Exit");
+            System.out.print("Choose: ");
+            String ch = sc.nextLine().trim();
+            try {
+                switch(ch){
+                    case "1": addDevice(); break;
+                    case "2": addSensor(); break;
+                    case "3": setThreshold(); break;
+                    case "4": ingestReading(); break;
+                    case "5": generateAlerts(); break;
+                    case "6": acknowledgeAlert(); break;
+                    case "7": createTicket(); break;
+                    case "8": addTechAction(); break;
+                    case "9": closeTicket(); break;
+                    case "10": viewDashboards(); break;
+                    case "11": DashboardPrinter.printMetrics(service.getMetrics()); break;
+                    case "12": replayFile(); break;
+                    case "13": manageIncident(); break;
+                    case "14": manageRules(); break;
+                    case "15": shutdown(); System.out.println("Bye."); return;
+                    default: System.out.println("Invalid.");
+                }
+            } catch(Exception ex){
+                System.out.println("Error: "+ex.getMessage());
+            }
+        }
+    }
+
+    /** Gauges, the JMX MBean and, with a data directory, a Prometheus text dump next to the journal. */
+    private void startMetrics(){
+        Metrics m = service.getMetrics();
+        m.gauge("iot_alerts_open", "Unresolved alerts", () -> service.getAlertCount(AlertStatus.NEW)+service.getAlertCount(AlertStatus.ACKNOWLEDGED));
+        m.gauge("iot_incidents_open", "Unresolved incidents", () -> service.getIncidentCount(AlertStatus.NEW)+service.getIncidentCount(AlertStatus.ACKNOWLEDGED));
+        m.gauge("iot_sensors_offline", "Heartbeat-monitored sensors past their deadline", service::getOfflineSensorCount);
+        m.gauge("iot_tickets_open", "Open maintenance tickets", () -> service.getTicketCount(TicketStatus.OPEN));
+        m.gauge("iot_pipeline_processed", "Readings processed by the ingestion pipeline", pipeline::getProcessedCount);
+        m.gauge("iot_pipeline_backlog", "Readings queued in the ingestion pipeline", pipeline::getBacklog);
+        if(persistence!=null) m.gauge("iot_journal_sync_failing", "1 while the journal can't be forced to disk and refuses appends", () -> persistence.getSyncFailure()==null ? 0 : 1);
+        try {
+            m.registerMBean("monitoring");
+        } catch(JMException ex){
+            System.err.println("Metrics MBean not registered: "+ex.getMessage());
+        }
+        if(dataDir!=null) m.startDump(dataDir.resolve("metrics.prom"), METRICS_DUMP_INTERVAL);
+    }
+
+    /** OFFLINE alerts are printed by the alert listener as the checker raises them. */
+    private void startHeartbeatChecks(){
+        heartbeatChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat-checker");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = HEARTBEAT_CHECK_INTERVAL.toMillis();
+        heartbeatChecker.scheduleWithFixedDelay(() -> {
+            try { service.checkHeartbeats(); } catch(RuntimeException ex){ System.err.println("Heartbeat check failed: "+ex.getMessage()); }
+        }, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /** Network ingestion into the console's pipeline; readings and alerts show up as if entered here. */
+    private void startServer() throws IOException {
+        server = new IngestionServer(pipeline);
+        server.start(tcpPort, udpPort);
+        System.out.println("Accepting readings on TCP port "+server.getTcpPort()+
+                (udpPort>=0 ? " and UDP port "+server.getUdpPort() : "")+" (deviceId,sensorId,epochMillis,value per line)");
+        Metrics m = service.getMetrics();
+        m.gauge("iot_server_connections", "Open device connections", server::getActiveConnections);
+        m.gauge("iot_server_readings", "Readings received over the network", server::getReadings);
+        m.gauge("iot_server_malformed", "Network lines that could not be decoded", server::getMalformed);
+        m.gauge("iot_server_unknown_sensors", "Network readings for sensors that are not registered", server::getUnknownSensors);
+    }
+
+    private void shutdown() throws IOException {
+        if(server!=null) server.close();
+        heartbeatChecker.shutdownNow();
+        pipeline.close();
+        service.getMetrics().close();
+        if(persistence!=null){
+            persistence.snapshot();
+            persistence.close();
+        }
+    }
+
+    private void seed(){
+        Device d = service.addDevice(new Device("Boiler-01", "Plant-A"));
+        service.addSensor(d, new Sensor("TEMPERATURE", "°C"));
+        service.addThreshold(new Threshold(d.getId(), "TEMPERATURE", null, 80.0, AlertSeverity.HIGH));
+
+        service.addTechnician(new Technician("Ravi", "99999"));
+    }
+
+    private void addDevice(){
+        System.out.print("Device name: "); String name = sc.nextLine().trim();
+        System.out.print("Location: "); String loc = sc.nextLine().trim();
+        Device d = service.addDevice(new Device(name, loc));
+        System.out.println("Added: "+d);
+    }
+
+    private void addSensor(){
+        Device d = pickDevice(); if(d==null) return;
+        System.out.print("Sensor type (e.g. TEMPERATURE): "); String type = sc.nextLine().trim();
+        System.out.print("Unit (e.g. °C): "); String unit = sc.nextLine().trim();
+        System.out.print("Expected reporting interval in seconds (blank for no heartbeat): "); String hb = sc.nextLine().trim();
+        Sensor s = service.addSensor(d, new Sensor(type, unit));
+        if(!hb.isEmpty()) service.setHeartbeat(s, Duration.ofSeconds(Long.parseLong(hb)));
+        System.out.println("Added sensor: "+s+" to device "+d.getName()+(hb.isEmpty() ? "" : ", offline after "+hb+"s without a reading"));
+    }
+
+    private void setThreshold(){
+        Device d = pickDevice(); if(d==null) return;
+        System.out.print("Sensor type for threshold: "); String stype = sc.nextLine().trim();
+        System.out.print("Min (blank for none): "); String minu = sc.nextLine().trim();
+        System.out.print("Max (blank for none): "); String maxu = sc.nextLine().trim();
+        System.out.print("Severity (LOW/MEDIUM/HIGH/CRITICAL): "); String sev = sc.nextLine().trim();
+        System.out.print("Hysteresis (blank for none): "); String hyst = sc.nextLine().trim();
+        System.out.print("Window metric COUNT/MIN/MAX/MEAN/VARIANCE/RATE (blank for each reading): "); String metric = sc.nextLine().trim();
+        Double min = minu.isEmpty()? null: Double.parseDouble(minu);
+        Double max = maxu.isEmpty()? null: Double.parseDouble(maxu);
+        AlertSeverity severity = sev.isEmpty()? AlertSeverity.MEDIUM : AlertSeverity.valueOf(sev.toUpperCase());
+        double hysteresis = hyst.isEmpty()? 0: Double.parseDouble(hyst);
+        Threshold t;
+        if(metric.isEmpty()){
+            t = new Threshold(d.getId(), stype, min, max, severity, hysteresis);
+        } else {
+            System.out.print("Window minutes: "); long minutes = Long.parseLong(sc.nextLine().trim());
+            System.out.print("Tumbling window? (y/N): "); boolean tumbling = sc.nextLine().trim().equalsIgnoreCase("y");
+            Duration length = Duration.ofMinutes(minutes);
+            WindowSpec window = tumbling ? WindowSpec.tumbling(length) : WindowSpec.sliding(length);
+            t = new WindowThreshold(d.getId(), stype, WindowMetric.valueOf(metric.toUpperCase()), window, min, max, severity, hysteresis);
+        }
+        service.addThreshold(t);
+        System.out.println("Threshold set: "+t);
+    }
+
+    private void ingestReading(){
+        Device d = pickDevice(); if(d==null) return;
+        Sensor s = pickSensorForDevice(d); if(s==null) return;
+        System.out.print("Value: "); double v = Double.parseDouble(sc.nextLine().trim());
+        // alerts are printed by the listener registered in run() once the pipeline processes the reading
+        pipeline.publish(s, System.currentTimeMillis(), v);
+        pipeline.flush();
+        System.out.println("Ingested: "+s.getLastReading());
+    }
+
+    private void generateAlerts(){
+        // only sensors affected by threshold or rule changes since the last scan are evaluated;
+        // alerts are printed by the listener registered in run()
+        List<Alert> raised = service.generateAlerts();
+        if(raised.isEmpty()) System.out.println("No new alerts.");
+    }
+
+    /** Bulk replay of a CSV (line protocol) or binary readings file; see {@link BulkReplay}. */
+    private void replayFile() throws IOException {
+        System.out.print("Readings file (CSV or binary): "); Path file = Paths.get(sc.nextLine().trim());
+        System.out.print("Dry run against current thresholds? (Y/n): "); boolean dry = !sc.nextLine().trim().equalsIgnoreCase("n");
+        BulkReplay replay;
+        if(dry){
+            replay = BulkReplay.dryRun(service, service.getThresholds());
+        } else {
+            pipeline.flush(); // queued readings go first
+            replay = new BulkReplay(service);
+        }
+        BulkReplay.Result r;
+        replaying = true;
+        try {
+            r = replay.replay(file);
+        } finally {
+            replaying = false;
+        }
+        System.out.println(r);
+        List<Alert> alerts = r.getAlerts();
+        for(int i=0;i<Math.min(PAGE_SIZE, alerts.size());i++) System.out.println("  "+alerts.get(i));
+        if(alerts.size()>PAGE_SIZE) System.out.println("  ... "+(alerts.size()-PAGE_SIZE)+" more");
+    }
+
+    /** Picks an unresolved incident, then acknowledges it or opens its single ticket. */
+    private void manageIncident(){
+        System.out.println("Correlation: "+service.getCorrelationPolicy());
+        String id = pickFromPages(cursor -> service.queryIncidents(UNRESOLVED, cursor, PAGE_SIZE), "open incidents", "Incident ID");
+        if(id==null || id.isEmpty()) return;
+        Incident i = service.getIncident(id);
+        if(i==null){ System.out.println("Not found"); return; }
+        System.out.println(i+"\n  sample alerts: "+i.getSampleAlertIds());
+        System.out.print("[a]cknowledge all, create [t]icket, Enter to return: ");
+        switch(sc.nextLine().trim().toLowerCase(Locale.ROOT)){
+            case "a":
+                if(i.getStatus()!=AlertStatus.NEW){ System.out.println("Incident already "+i.getStatus()); return; }
+                System.out.print("Acknowledger name: "); String who = sc.nextLine().trim();
+                service.acknowledge(i, who);
+                System.out.println("Acknowledged: "+i);
+                break;
+            case "t":
+                if(i.getLinkedTicketId()!=null){ System.out.println("Incident already has ticket "+i.getLinkedTicketId()); return; }
+                System.out.print("Ticket description: "); String desc = sc.nextLine().trim();
+                System.out.println("Ticket created: "+service.createTicket(i, desc));
+                break;
+        }
+    }
+
+    /** Multi-sensor rules, e.g. "TEMPERATURE > 80 AND PRESSURE < 2" on one device, a location or the fleet. */
+    private void manageRules(){
+        List<Rule> rules = service.getRules();
+        if(rules.isEmpty()) System.out.println("No rules");
+        rules.forEach(System.out::println);
+        System.out.print("[a]dd rule, [r]emove rule, Enter to return: ");
+        switch(sc.nextLine().trim().toLowerCase(Locale.ROOT)){
+            case "a":
+                System.out.print("Name: "); String name = sc.nextLine().trim();
+                System.out.print("Condition (e.g. TEMPERATURE > 80 AND PRESSURE < 2): "); String expr = sc.nextLine().trim();
+                System.out.print("Severity (LOW/MEDIUM/HIGH/CRITICAL): "); String sev = sc.nextLine().trim();
+                AlertSeverity severity = sev.isEmpty()? AlertSeverity.MEDIUM : AlertSeverity.valueOf(sev.toUpperCase());
+                System.out.print("Check on [d]evice, [l]ocation or [f]leet: ");
+                Rule r;
+                switch(sc.nextLine().trim().toLowerCase(Locale.ROOT)){
+                    case "d":
+                        Device d = pickDevice(); if(d==null) return;
+                        r = Rule.onDevice(d.getId(), name, expr, severity);
+                        break;
+                    case "l":
+                        System.out.print("Location: ");
+                        r = Rule.atLocation(sc.nextLine().trim(), name, expr, severity);
+                        break;
+                    default:
+                        r = Rule.onFleet(name, expr, severity);
+                }
+                service.addRule(r);
+                System.out.println("Rule added: "+r);
+                break;
+            case "r":
+                System.out.print("Rule ID: ");
+                Rule removed = service.removeRule(sc.nextLine().trim());
+                System.out.println(removed==null ? "Not found" : "Removed: "+removed);
+                break;
+        }
+    }
+
+    private void acknowledgeAlert(){
+        Alert a = pickAlert(AlertStatus.NEW); if(a==null) return;
+        System.out.print("Acknowledger name: "); String who = sc.nextLine().trim();
+        service.acknowledge(a, who);
+        System.out.println("Acknowledged: "+a);
+    }
+
+    private void createTicket(){
+        Alert a = pickAlert(AlertStatus.ACKNOWLEDGED); if(a==null) return;
+        System.out.print("Ticket description: "); String desc = sc.nextLine().trim();
+        MaintenanceTicket t = service.createTicket(a, desc);
+        System.out.println("Ticket created: "+t);
+    }
+
+    private void addTechAction(){
+        MaintenanceTicket t = pickTicket(); if(t==null) return;
+        System.out.print("Action description: "); String action = sc.nextLine().trim();
+        System.out.print("Technician ID (leave blank to pick): "); String tid = sc.nextLine().trim();
+        Technician tech = null;
+        if(tid.isEmpty()){
+            tech = pickTechnician();
+        } else {
+            tech = service.getTechnician(tid);
+            if(tech==null) System.out.println("Tech id not found; using none");
+        }
+        service.addAction(t, action, tech);
+        System.out.println("Action added.");
+    }
+
+    private void closeTicket(){
+        MaintenanceTicket t = pickTicket(); if(t==null) return;
+        try {
+            // resolves the linked alert if present
+            service.closeTicket(t);
+            System.out.println("Ticket closed and alert resolved (if linked).");
+        } catch(Exception ex){
+            System.out.println("Cannot close: "+ex.getMessage());
+        }
+    }
+
+    private void viewDashboards(){
+        AlertSeverity filter = null;
+        int page = 0;
+        while(true){
+            AlertSeverity f = filter; int p = page;
+            LocalDateTime staleBefore = LocalDateTime.now().minus(STALE_AFTER);
+            // rendered from the materialized model under the lock, printed after releasing it
+            String screen = service.read(svc -> DashboardPrinter.renderDashboard(svc.getDashboard(), f, p, PAGE_SIZE, WORST_DEVICES, staleBefore));
+            System.out.print(screen);
+            System.out.print("[n]ext [p]rev [f]ilter by severity [a]lerts & tickets, Enter to return: ");
+            switch(sc.nextLine().trim().toLowerCase(Locale.ROOT)){
+                case "n":
+                    int pages = service.read(svc -> (svc.getDashboard().countDevices(f)+PAGE_SIZE-1)/PAGE_SIZE);
+                    if(page+1<pages) page++;
+                    break;
+                case "p": page = Math.max(0, page-1); break;
+                case "f":
+                    System.out.print("Minimum open alert severity (LOW/MEDIUM/HIGH/CRITICAL, blank for all devices): ");
+                    String v = sc.nextLine().trim();
+                    filter = v.isEmpty() ? null : AlertSeverity.valueOf(v.toUpperCase(Locale.ROOT));
+                    page = 0;
+                    break;
+                case "a": printAlertsAndTickets(); break;
+                default: return;
+            }
+        }
+    }
+
+    private void printAlertsAndTickets(){
+        // newest unresolved alerts and open tickets only; the full history is reachable by paging
+        System.out.println("\n--- Open Incidents ("+(service.getIncidentCount(AlertStatus.NEW)+service.getIncidentCount(AlertStatus.ACKNOWLEDGED))+") ---");
+        service.queryIncidents(UNRESOLVED, null, PAGE_SIZE).getItems().forEach(System.out::println);
+        DashboardPrinter.printAlerts(service.queryAlerts(UNRESOLVED, null, null, null, null, null, PAGE_SIZE).getItems());
+        System.out.println("\n--- Open Tickets ("+service.getTicketCount(TicketStatus.OPEN)+") ---");
+        service.queryTickets(TicketStatus.OPEN, null, null, null, PAGE_SIZE).getItems().forEach(System.out::println);
+    }
+
+    /* ===== Helpers / Pickers ===== */
+    private Device pickDevice(){
+        List<Device> devices = service.getDevices();
+        if(devices.isEmpty()){ System.out.println("No devices"); return null; }
+        devices.forEach(d -> System.out.println(d.getId()+" : "+d.getName()+" @"+d.getLocation()));
+        System.out.print("Device ID: "); String id = sc.nextLine().trim(); Device d = service.getDevice(id);
+        if(d==null) System.out.println("Not found");
+        return d;
+    }
+
+    private Sensor pickSensorForDevice(Device d){
+        if(d.getSensors().isEmpty()){ System.out.println("Device has no sensors"); return null; }
+        d.getSensors().forEach(s -> System.out.println(s.getId()+" : "+s.getType()+" ("+s.getUnit()+")"));
+        System.out.print("Sensor ID: "); String id = sc.nextLine().trim(); Sensor s = service.getSensor(id);
+        if(s==null) System.out.println("Not found");
+        return s;
+    }
+
+    private Alert pickAlert(AlertStatus required){
+        Set<AlertStatus> statuses = required==null ? null : EnumSet.of(required);
+        String id = pickFromPages(cursor -> service.queryAlerts(statuses, null, null, null, null, cursor, PAGE_SIZE), "alerts", "Alert ID");
+        if(id==null) return null;
+        Alert a = service.getAlert(id);
+        if(a==null) { System.out.println("Not found"); return null; }
+        if(required!=null && a.getStatus()!=required){ System.out.println("Alert status mismatch: required="+required); return null; }
+        return a;
+    }
+
+    private MaintenanceTicket pickTicket(){
+        String id = pickFromPages(cursor -> service.queryTickets(TicketStatus.OPEN, null, null, cursor, PAGE_SIZE), "open tickets", "Ticket ID");
+        if(id==null) return null;
+        MaintenanceTicket t = service.getTicket(id);
+        if(t==null) System.out.println("Not found");
+        return t;
+    }
+
+    /** Lists a query page by page (newest first) until an id is entered; null if nothing to list. */
+    private <T extends Entity> String pickFromPages(Function<String, Page<T>> query, String what, String prompt){
+        String cursor = null;
+        while(true){
+            Page<T> page = query.apply(cursor);
+            if(cursor==null && page.getItems().isEmpty()){ System.out.println("No "+what); return null; }
+            page.getItems().forEach(e -> System.out.println(e.getId()+" : "+e));
+            System.out.print(page.hasMore() ? prompt+" (Enter for more): " : prompt+": ");
+            String id = sc.nextLine().trim();
+            if(!id.isEmpty() || !page.hasMore()) return id;
+            cursor = page.getNextCursor();
+        }
+    }
+
+    private Technician pickTechnician(){
+        List<Technician> techs = service.getTechnicians();
+        if(techs.isEmpty()){
+            System.out.print("No technicians exist. Enter name to create: ");
+            String name = sc.nextLine().trim();
+            return service.addTechnician(new Technician(name, ""));
+        }
+        techs.forEach(t -> System.out.println(t.getId()+" : "+t.getName()));
+        System.out.print("Technician ID: "); String id = sc.nextLine().trim(); Technician t = service.getTechnician(id);
+        if(t==null) System.out.println("Not found");
+        return t;
+    }
+}
@@ -0,0 +1,230 @@
+package iot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Segmented, memory-mapped, append-only binary log.
+ * <p>
+ * Segments are fixed-size files named after the global offset of their first byte.
+ * A record is {@code [int len+1][byte type][payload][int crc32c(type+payload)]}; a zero
+ * length word marks the end of a segment (mapped files start zero-filled). A torn or
+ * corrupt record at the tail ends replay and is overwritten by the next append.
+ * <p>
+ * Appends only copy into the mapping; a background thread forces dirty segments to disk
+ * every {@code syncInterval} (group commit), and {@link #sync()} forces immediately.
+ * If forcing fails, the segments stay queued and are retried by the next sync; until one
+ * succeeds, {@link #getSyncFailure()} reports the error and appends are refused, so
+ * records are never accepted that can't be made durable.
+ */
+public class Journal implements AutoCloseable {
+    private static final String SUFFIX = ".wal";
+    private static final int HEADER = 5, TRAILER = 4;
+
+    /** Receives records during {@link #replay}; {@code payload} is only valid during the call. */
+    @FunctionalInterface
+    public interface RecordHandler { void accept(byte type, ByteBuffer payload); }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final CRC32C crc = new CRC32C();
+    private final List<MappedByteBuffer> unsynced = new ArrayList<>();
+    private MappedByteBuffer current;
+    private ByteBuffer checksummed; // view of current the record crc is computed over, reused per segment
+    private long currentBase;
+    private boolean dirty;
+    private volatile IOException syncFailure; // last failed force, until a sync succeeds
+    private final Thread syncer;
+    private volatile boolean open = true;
+
+    public Journal(Path dir, int segmentBytes, Duration syncInterval) throws IOException {
+        if(segmentBytes < 4096) throw new IllegalArgumentException("segmentBytes must be >= 4096");
+        if(syncInterval==null || syncInterval.isNegative() || syncInterval.isZero()) throw new IllegalArgumentException("syncInterval must be positive");
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        List<Long> bases = segmentBases();
+        if(bases.isEmpty()){
+            openSegment(0);
+        } else {
+            long last = bases.get(bases.size()-1);
+            openSegment(last);
+            current.position(validLength(current));
+        }
+        long intervalMillis = Math.max(1, syncInterval.toMillis());
+        this.syncer = new Thread(() -> {
+            while(open){
+                try { Thread.sleep(intervalMillis); } catch(InterruptedException ex){ return; }
+                try { sync(); } catch(UncheckedIOException ex){ /* kept in syncFailure; retried next interval */ }
+            }
+        }, "journal-sync");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    /**
+     * Appends a record; the payload is read from its position to its limit.
+     * @return journal offset just past the record
+     */
+    public synchronized long append(byte type, ByteBuffer payload){
+        if(!open) throw new IllegalStateException("Journal closed");
+        IOException failed = syncFailure;
+        if(failed!=null) throw new UncheckedIOException("Journal sync failed; appends refused until a sync succeeds", failed);
+        int len = payload.remaining();
+        int size = HEADER+len+TRAILER;
+        if(size > segmentBytes-4) throw new IllegalArgumentException("Record too large: "+len);
+        if(current.remaining() < size+4) roll(); // keep room for the end marker
+        int start = current.position();
+        current.position(start+4);
+        current.put(type);
+        current.put(payload);
+        crc.reset();
+        crc.update(checksummed.limit(start+HEADER+len).position(start+4));
+        current.putInt((int)crc.getValue());
+        current.putInt(current.position(), 0); // clear any stale tail left by a torn write
+        current.putInt(start, len+1); // length last, so a torn record reads as end-of-log
+        dirty = true;
+        return currentBase+current.position();
+    }
+
+    /** Offset the next record will be written at. */
+    public synchronized long position(){ return currentBase+current.position(); }
+
+    /**
+     * Forces every appended record to disk.
+     * @throws UncheckedIOException if forcing failed; the unforced segments are retried by the next sync
+     */
+    public void sync(){
+        List<MappedByteBuffer> toForce;
+        synchronized(this){
+            if(!dirty && unsynced.isEmpty()) return;
+            toForce = new ArrayList<>(unsynced);
+            unsynced.clear();
+            if(dirty) toForce.add(current);
+            dirty = false;
+        }
+        for(int i=0;i<toForce.size();i++){
+            try {
+                toForce.get(i).force();
+            } catch(UncheckedIOException ex){
+                synchronized(this){
+                    List<MappedByteBuffer> rest = toForce.subList(i, toForce.size());
+                    for(MappedByteBuffer b : rest) if(b==current) dirty = true;
+                    rest.remove(current);
+                    unsynced.addAll(0, rest);
+                    syncFailure = ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        synchronized(this){
+            if(unsynced.isEmpty()) syncFailure = null; // else a concurrent sync re-queued segments that still failed
+        }
+    }
+
+    /** The error of the last failed sync, or null once a sync has succeeded. */
+    public IOException getSyncFailure(){ return syncFailure; }
+
+    /** Replays every record at or after {@code from} (an offset returned by append/position). */
+    public void replay(long from, RecordHandler handler) throws IOException {
+        List<Long> bases = segmentBases();
+        for(int i=0;i<bases.size();i++){
+            long base = bases.get(i);
+            long end = i+1<bases.size() ? bases.get(i+1) : Long.MAX_VALUE;
+            if(end <= from) continue;
+            ByteBuffer seg = mapReadOnly(base);
+            CRC32C check = new CRC32C();
+            int pos = 0;
+            while(pos+HEADER <= seg.limit()){
+                int lenWord = seg.getInt(pos);
+                if(lenWord<=0) break;
+                int len = lenWord-1;
+                int recEnd = pos+HEADER+len+TRAILER;
+                if(recEnd > seg.limit() || !checksumOk(check, seg, pos, len)) break;
+                if(base+pos >= from){
+                    ByteBuffer payload = seg.duplicate().position(pos+HEADER).limit(pos+HEADER+len).slice();
+                    handler.accept(seg.get(pos+4), payload);
+                }
+                pos = recEnd;
+            }
+        }
+    }
+
+    /** Deletes segments that end at or before {@code offset} (e.g. covered by a snapshot). */
+    public void truncateBefore(long offset) throws IOException {
+        List<Long> bases = segmentBases();
+        for(int i=0;i+1<bases.size();i++){ // the last segment is always kept
+            if(bases.get(i+1) > offset) break;
+            Files.deleteIfExists(segmentPath(bases.get(i)));
+        }
+    }
+
+    @Override public void close(){
+        open = false;
+        syncer.interrupt();
+        sync();
+    }
+
+    private void roll(){
+        current.putInt(current.position(), 0);
+        unsynced.add(current);
+        try {
+            openSegment(currentBase+current.position());
+        } catch(IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void openSegment(long base) throws IOException {
+        try(FileChannel ch = FileChannel.open(segmentPath(base), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            current = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        checksummed = current.duplicate();
+        currentBase = base;
+    }
+
+    private ByteBuffer mapReadOnly(long base) throws IOException {
+        try(FileChannel ch = FileChannel.open(segmentPath(base), StandardOpenOption.READ)){
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private int validLength(ByteBuffer seg){
+        CRC32C check = new CRC32C();
+        int pos = 0;
+        while(pos+HEADER <= seg.limit()){
+            int lenWord = seg.getInt(pos);
+            if(lenWord<=0) break;
+            int len = lenWord-1;
+            if(pos+HEADER+len+TRAILER > seg.limit() || !checksumOk(check, seg, pos, len)) break;
+            pos += HEADER+len+TRAILER;
+        }
+        return pos;
+    }
+
+    private static boolean checksumOk(CRC32C c, ByteBuffer seg, int pos, int len){
+        c.reset();
+        c.update(seg.duplicate().position(pos+4).limit(pos+HEADER+len));
+        return (int)c.getValue() == seg.getInt(pos+HEADER+len);
+    }
+
+    private Path segmentPath(long base){ return dir.resolve(String.format("%020d%s", base, SUFFIX)); }
+
+    private List<Long> segmentBases() throws IOException {
+        List<Long> out = new ArrayList<>();
+        try(Stream<Path> files = Files.list(dir)){
+            files.map(p -> p.getFileName().toString())
+                 .filter(n -> n.endsWith(SUFFIX))
+                 .forEach(n -> out.add(Long.parseLong(n.substring(0, n.length()-SUFFIX.length()))));
+        }
+        Collections.sort(out);
+        return out;
+    }
+}
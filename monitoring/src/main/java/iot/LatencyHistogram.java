@@ -0,0 +1,109 @@
+package iot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style histogram of non-negative longs (typically nanoseconds or milliseconds):
+ * values below 128 are exact; above that each power of two is split into 64 linear
+ * sub-buckets, so any recorded value is reported within ~1.6%. Values above
+ * {@link #MAX_VALUE} are clamped to it.
+ * <p>
+ * Counts are striped by thread over preallocated arrays: {@link #record} allocates
+ * nothing and concurrent writers rarely share a cache line. Reads sum the stripes and
+ * are approximate while writers are active.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;           // linear sub-buckets per power of two
+    private static final int MAX_SHIFT = 38;
+    /** Largest trackable value, 2^45-1 (~9.7 hours in ns). */
+    public static final long MAX_VALUE = ((2L*SUB) << MAX_SHIFT) - 1;
+    private static final int BUCKETS = MAX_SHIFT*SUB + 2*SUB;
+    // per-stripe slots after the buckets
+    private static final int SUM = BUCKETS, MAX = BUCKETS+1, SLOTS = BUCKETS+2;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public LatencyHistogram(){
+        this(Math.min(Runtime.getRuntime().availableProcessors(), 16));
+    }
+
+    /** @param stripes number of stripes, rounded up to a power of two */
+    public LatencyHistogram(int stripes){
+        if(stripes<1) throw new IllegalArgumentException("stripes must be >= 1");
+        int n = Integer.highestOneBit(stripes*2 - 1);
+        this.stripes = new AtomicLongArray[n];
+        for(int i=0;i<n;i++) this.stripes[i] = new AtomicLongArray(SLOTS);
+        this.mask = n-1;
+    }
+
+    static int bucket(long v){
+        if(v < 2*SUB) return (int)v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS; // leaves v>>>shift in [64, 128)
+        return shift*SUB + (int)(v >>> shift);
+    }
+
+    /** Smallest value that falls in {@code bucket}. */
+    static long lowerBound(int bucket){
+        if(bucket < 2*SUB) return bucket;
+        int shift = bucket/SUB - 1;
+        return (long)(bucket%SUB + SUB) << shift;
+    }
+
+    /** Largest value that falls in {@code bucket}. */
+    static long upperBound(int bucket){ return bucket+1<BUCKETS ? lowerBound(bucket+1)-1 : MAX_VALUE; }
+
+    public void record(long value){
+        if(value<0) value = 0;
+        else if(value>MAX_VALUE) value = MAX_VALUE;
+        AtomicLongArray s = stripes[(int)Thread.currentThread().getId() & mask];
+        s.getAndIncrement(bucket(value));
+        s.getAndAdd(SUM, value);
+        long m = s.get(MAX);
+        while(value>m && !s.weakCompareAndSetVolatile(MAX, m, value)) m = s.get(MAX);
+    }
+
+    /** Summed view of all stripes at one point in time. */
+    public Snapshot snapshot(){
+        long[] counts = new long[BUCKETS];
+        long count = 0, sum = 0, max = 0;
+        for(AtomicLongArray s : stripes){
+            for(int i=0;i<BUCKETS;i++){
+                long c = s.get(i);
+                counts[i] += c;
+                count += c;
+            }
+            sum += s.get(SUM);
+            max = Math.max(max, s.get(MAX));
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+
+    /** Immutable summary of a histogram. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count, sum, max;
+
+        Snapshot(long[] counts, long count, long sum, long max){
+            this.counts = counts; this.count = count; this.sum = sum; this.max = max;
+        }
+
+        public long getCount(){ return count; }
+        public long getSum(){ return sum; }
+        public long getMax(){ return max; }
+        public double getMean(){ return count==0 ? 0 : (double)sum/count; }
+
+        /** Upper bound of the bucket holding the {@code q} quantile (0 &lt; q &lt;= 1); 0 if empty. */
+        public long percentile(double q){
+            if(!(q>0 && q<=1)) throw new IllegalArgumentException("quantile must be in (0, 1]");
+            if(count==0) return 0;
+            long rank = (long)Math.ceil(q*count), seen = 0;
+            for(int i=0;i<counts.length;i++){
+                seen += counts[i];
+                if(seen>=rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
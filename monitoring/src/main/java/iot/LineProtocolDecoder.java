@@ -0,0 +1,174 @@
+package iot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the ingestion line protocol straight from a {@link ByteBuffer}:
+ * <pre>deviceId,sensorId,epochMillis,value\n</pre>
+ * An empty {@code epochMillis} means "now" (read from the {@link CoarseClock}).
+ * Ids are matched byte-for-byte against a small per-decoder cache of sensors, so
+ * steady-state decoding builds no Strings; only a cache miss (first sighting of a
+ * sensor, or an unknown one) allocates.
+ * One decoder per connection; not thread-safe.
+ */
+public class LineProtocolDecoder {
+    private static final int CACHE_SIZE = 16; // a connection is usually one device
+    private static final double[] POW10 = new double[23];
+    static { POW10[0] = 1; for(int i=1;i<POW10.length;i++) POW10[i] = POW10[i-1]*10; }
+
+    private final ReadingSink sink;
+    private final byte[][] cachedIds;
+    private final Sensor[] cachedSensors;
+    private boolean discarding; // skipping the rest of an over-long line
+
+    private long readings, malformed, unknownSensors;
+
+    public LineProtocolDecoder(ReadingSink sink){ this(sink, CACHE_SIZE); }
+
+    /** @param cacheSize sensor cache slots, a power of two; larger for inputs that interleave many sensors */
+    LineProtocolDecoder(ReadingSink sink, int cacheSize){
+        if(sink==null) throw new IllegalArgumentException("sink required");
+        if(cacheSize<1 || Integer.bitCount(cacheSize)!=1) throw new IllegalArgumentException("cacheSize must be a power of two");
+        this.sink = sink;
+        this.cachedIds = new byte[cacheSize][];
+        this.cachedSensors = new Sensor[cacheSize];
+    }
+
+    /**
+     * Consumes every complete line between the buffer's position and limit, publishing
+     * each reading (blocking while the sink is full, which stalls this connection only).
+     * On return the position is at the start of the first incomplete line. If the buffer
+     * is full and holds no line break, the partial line is dropped as malformed.
+     */
+    public void decode(ByteBuffer buf){
+        int pos = buf.position(), limit = buf.limit();
+        int lineStart = pos;
+        for(int i=pos;i<limit;i++){
+            if(buf.get(i)!='\n') continue;
+            if(discarding) discarding = false;
+            else decodeLine(buf, lineStart, i);
+            lineStart = i+1;
+        }
+        if(lineStart==pos && limit-pos==buf.capacity()){
+            // no newline in a full buffer: the line can never fit
+            if(!discarding) malformed++;
+            discarding = true;
+            lineStart = limit;
+        }
+        buf.position(lineStart);
+    }
+
+    /** Decodes a complete input, including a last line without a line break (file replay). */
+    void decodeAll(ByteBuffer buf){
+        int lineStart = buf.position(), limit = buf.limit();
+        for(int i=lineStart;i<limit;i++){
+            if(buf.get(i)!='\n') continue;
+            decodeLine(buf, lineStart, i);
+            lineStart = i+1;
+        }
+        if(lineStart<limit) decodeLine(buf, lineStart, limit);
+        buf.position(limit);
+    }
+
+    private void decodeLine(ByteBuffer buf, int start, int end){
+        if(end>start && buf.get(end-1)=='\r') end--;
+        if(end==start) return; // blank line / keepalive
+        int c1 = indexOf(buf, start, end), c2 = c1<0 ? -1 : indexOf(buf, c1+1, end), c3 = c2<0 ? -1 : indexOf(buf, c2+1, end);
+        if(c3<0 || c1==start || c2==c1+1 || c3==end-1){ malformed++; return; }
+        Sensor s = sensor(buf, c1+1, c2);
+        if(s==null){ unknownSensors++; return; }
+        if(!sameAscii(buf, start, c1, s.getDeviceId())){ malformed++; return; }
+        long ts;
+        if(c3==c2+1){
+            ts = CoarseClock.millis();
+        } else {
+            ts = parseLong(buf, c2+1, c3);
+            if(ts==Long.MIN_VALUE){ malformed++; return; }
+        }
+        double v = parseDouble(buf, c3+1, end);
+        if(Double.isNaN(v)){ malformed++; return; }
+        sink.publish(s, ts, v);
+        readings++;
+    }
+
+    private Sensor sensor(ByteBuffer buf, int start, int end){
+        int h = 1;
+        for(int i=start;i<end;i++) h = 31*h + buf.get(i);
+        int slot = (h ^ (h>>>16)) & (cachedIds.length-1);
+        byte[] id = cachedIds[slot];
+        if(id!=null && id.length==end-start){
+            boolean eq = true;
+            for(int i=0;i<id.length && eq;i++) eq = id[i]==buf.get(start+i);
+            if(eq) return cachedSensors[slot];
+        }
+        byte[] bytes = new byte[end-start];
+        buf.get(start, bytes);
+        Sensor s = sink.findSensor(new String(bytes, StandardCharsets.US_ASCII));
+        if(s!=null){ cachedIds[slot] = bytes; cachedSensors[slot] = s; }
+        return s;
+    }
+
+    private static int indexOf(ByteBuffer buf, int from, int to){
+        for(int i=from;i<to;i++) if(buf.get(i)==',') return i;
+        return -1;
+    }
+
+    private static boolean sameAscii(ByteBuffer buf, int start, int end, String s){
+        if(s==null || s.length()!=end-start) return false;
+        for(int i=0;i<s.length();i++) if(buf.get(start+i)!=s.charAt(i)) return false;
+        return true;
+    }
+
+    /** @return the value, or Long.MIN_VALUE if not a plain (optionally signed) integer */
+    static long parseLong(ByteBuffer buf, int start, int end){
+        boolean neg = buf.get(start)=='-';
+        int i = neg || buf.get(start)=='+' ? start+1 : start;
+        if(i==end || end-i>18) return Long.MIN_VALUE;
+        long v = 0;
+        for(;i<end;i++){
+            int d = buf.get(i)-'0';
+            if(d<0 || d>9) return Long.MIN_VALUE;
+            v = v*10+d;
+        }
+        return neg ? -v : v;
+    }
+
+    /**
+     * Fast path for plain decimals with up to 15 significant digits, which are exactly
+     * representable and so round correctly; anything else (exponents, long mantissas)
+     * falls back to {@link Double#parseDouble}.
+     * @return the value, or NaN if malformed
+     */
+    static double parseDouble(ByteBuffer buf, int start, int end){
+        int i = start;
+        boolean neg = false;
+        if(i<end && (buf.get(i)=='-' || buf.get(i)=='+')){ neg = buf.get(i)=='-'; i++; }
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false, simple = i<end;
+        for(;i<end && simple;i++){
+            byte b = buf.get(i);
+            if(b=='.' && !dot){ dot = true; continue; }
+            int d = b-'0';
+            if(d<0 || d>9 || ++digits>15){ simple = false; break; }
+            mantissa = mantissa*10+d;
+            if(dot) scale++;
+        }
+        if(simple && digits>0){
+            double v = mantissa/POW10[scale];
+            return neg ? -v : v;
+        }
+        byte[] bytes = new byte[end-start];
+        buf.get(start, bytes);
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch(NumberFormatException ex){
+            return Double.NaN;
+        }
+    }
+
+    public long getReadings(){ return readings; }
+    public long getMalformed(){ return malformed; }
+    public long getUnknownSensors(){ return unknownSensors; }
+}
@@ -0,0 +1,356 @@
+package iot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic fleet for capacity tests. {@link #provision} registers devices of M sensors on
+ * a {@link ShardedEngine}, each sensor drawn from a set of {@link Template}s, with one
+ * threshold per device and sensor type; {@link #run} then drives generated readings
+ * through the engine's ingest and alert path in-process and reports sustained throughput,
+ * ingest-to-alert latency and heap usage.
+ * <p>
+ * Everything generated follows from the seed: which template each sensor gets, its
+ * baseline, every value and which readings breach. Producer {@code i} always emits the
+ * same value sequence for its slice of sensors, so runs with the same settings are
+ * repeatable; only timestamps and pacing follow the wall clock.
+ */
+public final class LoadGenerator {
+    private static final int BATCH = 256;          // readings per clock read and pacing check
+    private static final int LOCATIONS = 100;
+    private static final long SAMPLE_MILLIS = 100; // heap sampling while a run is in progress
+    private static final List<String> OPTIONS = List.of("sensors", "perDevice", "rate", "seconds", "warmup", "breach", "noise",
+            "drift", "seed", "shards", "producers", "policy", "segment", "segments");
+
+    /** A kind of sensor: its type, normal operating point and the threshold provisioned for it. */
+    public static final class Template {
+        private final String type, unit;
+        private final double baseline, noise, drift;
+        private final Double min, max;
+        private final AlertSeverity severity;
+
+        /**
+         * @param noise standard deviation of readings around the baseline
+         * @param drift added to the sensor's operating point with every reading it emits
+         * @param min,max threshold bounds; null for none, but not both
+         */
+        public Template(String type, String unit, double baseline, double noise, double drift,
+                        Double min, Double max, AlertSeverity severity){
+            if(type==null || type.isBlank()) throw new IllegalArgumentException("type required");
+            if(!(noise>=0)) throw new IllegalArgumentException("noise must be >= 0");
+            if(min==null && max==null) throw new IllegalArgumentException("min or max required");
+            this.type = type; this.unit = unit; this.baseline = baseline; this.noise = noise; this.drift = drift;
+            this.min = min; this.max = max; this.severity = severity;
+        }
+
+        public String getType(){ return type; }
+        public double getBaseline(){ return baseline; }
+        public double getNoise(){ return noise; }
+        public double getDrift(){ return drift; }
+
+        /** The same template with noise scaled by {@code noiseScale} and a drift of {@code driftPerNoise} noise deviations per reading. */
+        Template scaled(double noiseScale, double driftPerNoise){
+            double n = noise*noiseScale;
+            return new Template(type, unit, baseline, n, n*driftPerNoise, min, max, severity);
+        }
+
+        /** A value outside the bounds by one to two noise deviations (at least 1). */
+        double breach(SplittableRandom rnd){
+            double margin = Math.max(noise, 1)*(1+rnd.nextDouble());
+            return max!=null && (min==null || rnd.nextBoolean()) ? max+margin : min-margin;
+        }
+
+        @Override public String toString(){ return type+" ~"+baseline+"±"+noise+" ["+(min==null ? "-" : min)+","+(max==null ? "-" : max)+"]"; }
+    }
+
+    /** Five common industrial sensor kinds, each normally well inside its bounds. */
+    public static final List<Template> DEFAULT_TEMPLATES = List.of(
+            new Template("TEMPERATURE", "°C", 55, 3, 0, 0.0, 80.0, AlertSeverity.HIGH),
+            new Template("HUMIDITY", "%", 45, 5, 0, 10.0, 90.0, AlertSeverity.LOW),
+            new Template("PRESSURE", "bar", 4, 0.2, 0, 1.0, 8.0, AlertSeverity.MEDIUM),
+            new Template("VIBRATION", "mm/s", 2, 0.5, 0, null, 10.0, AlertSeverity.HIGH),
+            new Template("CURRENT", "A", 12, 1, 0, null, 30.0, AlertSeverity.CRITICAL));
+
+    /** What a run measured; throughput and latency cover the period after warm-up. */
+    public static final class Report {
+        private final int sensors;
+        private final long published, processed, dropped, alerts, suppressed;
+        private final double seconds;
+        private final LatencyHistogram.Snapshot latency;
+        private final long heapProvisioned, heapPeak, heapAfter;
+
+        Report(int sensors, long published, long processed, long dropped, long alerts, long suppressed, double seconds,
+               LatencyHistogram.Snapshot latency, long heapProvisioned, long heapPeak, long heapAfter){
+            this.sensors = sensors; this.published = published; this.processed = processed; this.dropped = dropped;
+            this.alerts = alerts; this.suppressed = suppressed; this.seconds = seconds; this.latency = latency;
+            this.heapProvisioned = heapProvisioned; this.heapPeak = heapPeak; this.heapAfter = heapAfter;
+        }
+
+        public int getSensors(){ return sensors; }
+        /** Readings published over the whole run, warm-up included. */
+        public long getPublished(){ return published; }
+        /** Readings evaluated after warm-up. */
+        public long getProcessed(){ return processed; }
+        /** Readings shed or conflated after warm-up (only with a shedding {@link OverloadPolicy}). */
+        public long getDropped(){ return dropped; }
+        public long getAlerts(){ return alerts; }
+        /** Breaches folded into a recent alert of the same sensor by the correlation policy. */
+        public long getSuppressed(){ return suppressed; }
+        public double getSeconds(){ return seconds; }
+        public double getThroughput(){ return seconds==0 ? 0 : processed/seconds; }
+        /** Reading timestamp (taken at publish) to alert listener, in milliseconds. */
+        public LatencyHistogram.Snapshot getLatency(){ return latency; }
+        /** Heap in use after provisioning and a full GC. */
+        public long getHeapProvisioned(){ return heapProvisioned; }
+        /** Highest heap use sampled during the run (every {@value #SAMPLE_MILLIS} ms). */
+        public long getHeapPeak(){ return heapPeak; }
+        /** Heap in use after the run and a full GC. */
+        public long getHeapAfter(){ return heapAfter; }
+
+        @Override public String toString(){
+            return String.format(Locale.ROOT,
+                    "sensors             %,d%n"+
+                    "published           %,d%n"+
+                    "processed           %,d in %.1f s after warm-up (%,d dropped)%n"+
+                    "throughput          %,.0f readings/s%n"+
+                    "alerts              %,d (%,d duplicate breaches suppressed)%n"+
+                    "ingest-to-alert ms  p50 %d  p99 %d  p99.9 %d  max %d%n"+
+                    "heap MB             provisioned %,d  peak %,d  after run %,d",
+                    sensors, published, processed, seconds, dropped, getThroughput(), alerts, suppressed,
+                    latency.percentile(0.50), latency.percentile(0.99), latency.percentile(0.999), latency.getMax(),
+                    heapProvisioned>>20, heapPeak>>20, heapAfter>>20);
+        }
+    }
+
+    private final long seed;
+    private final int devices, sensorsPerDevice;
+    private final List<Template> templates;
+    private final double breachProbability;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // provisioned fleet, indexed by sensor; producers own disjoint slices
+    private Sensor[] sensors;
+    private Template[] kinds;
+    private double[] baselines;
+    private long[] emitted;
+    private long heapProvisioned;
+
+    // current run: alerts after measureFrom (epoch millis) are counted
+    private volatile long measureFrom = Long.MAX_VALUE;
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder alerts = new LongAdder();
+
+    /** @param breachProbability chance that a reading is out of its sensor's bounds */
+    public LoadGenerator(long seed, int devices, int sensorsPerDevice, List<Template> templates, double breachProbability){
+        if(devices<1 || sensorsPerDevice<1) throw new IllegalArgumentException("devices and sensorsPerDevice must be >= 1");
+        if((long)devices*sensorsPerDevice>Integer.MAX_VALUE-8) throw new IllegalArgumentException("fleet too large");
+        if(templates==null || templates.isEmpty()) throw new IllegalArgumentException("templates required");
+        if(!(breachProbability>=0 && breachProbability<=1)) throw new IllegalArgumentException("breachProbability must be in [0, 1]");
+        this.seed = seed;
+        this.devices = devices;
+        this.sensorsPerDevice = sensorsPerDevice;
+        this.templates = List.copyOf(templates);
+        this.breachProbability = breachProbability;
+    }
+
+    /**
+     * Registers the fleet on {@code engine}: devices named {@code load-<n>} spread over
+     * {@value #LOCATIONS} locations, with thresholds from their sensors' templates.
+     * @return the sensors, in generation order
+     */
+    public Sensor[] provision(ShardedEngine engine){
+        if(sensors!=null) throw new IllegalStateException("Already provisioned");
+        int n = devices*sensorsPerDevice;
+        sensors = new Sensor[n];
+        kinds = new Template[n];
+        baselines = new double[n];
+        emitted = new long[n];
+        SplittableRandom rnd = new SplittableRandom(seed);
+        boolean[] thresholded = new boolean[templates.size()];
+        for(int d=0;d<devices;d++){
+            Device dev = engine.addDevice(new Device(String.format("load-%07d", d), "Site-"+(d%LOCATIONS)));
+            Arrays.fill(thresholded, false);
+            for(int k=0;k<sensorsPerDevice;k++){
+                int kind = rnd.nextInt(templates.size());
+                Template t = templates.get(kind);
+                int i = d*sensorsPerDevice+k;
+                sensors[i] = engine.addSensor(dev, new Sensor(t.type, t.unit));
+                kinds[i] = t;
+                baselines[i] = t.baseline + t.noise*(2*rnd.nextDouble()-1);
+                if(!thresholded[kind]){
+                    engine.addThreshold(new Threshold(dev.getId(), t.type, t.min, t.max, t.severity));
+                    thresholded[kind] = true;
+                }
+            }
+        }
+        engine.onAlert(this::alertRaised);
+        heapProvisioned = heapAfterGc();
+        return sensors;
+    }
+
+    /**
+     * Publishes readings for {@code warmup + duration} from {@code producers} threads, each
+     * cycling through its slice of the fleet, then waits for the engine to drain.
+     * @param readingsPerSecond total target rate; 0 publishes as fast as the engine accepts
+     */
+    public Report run(ShardedEngine engine, double readingsPerSecond, Duration warmup, Duration duration, int producers){
+        if(sensors==null) throw new IllegalStateException("provision() first");
+        if(producers<1 || producers>sensors.length) throw new IllegalArgumentException("producers must be in [1, sensors]");
+        if(!(readingsPerSecond>=0)) throw new IllegalArgumentException("readingsPerSecond must be >= 0");
+        long start = System.nanoTime();
+        long warmupEnd = start+warmup.toNanos(), end = warmupEnd+duration.toNanos();
+        measureFrom = Long.MAX_VALUE;
+        long[] base = warmup.isZero() ? mark(engine) : null;
+        long[] sent = new long[producers];
+        Thread[] threads = new Thread[producers];
+        for(int p=0;p<producers;p++){
+            int id = p, from = (int)((long)sensors.length*p/producers), to = (int)((long)sensors.length*(p+1)/producers);
+            threads[p] = new Thread(() -> sent[id] = produce(engine, from, to, new SplittableRandom(seed+31L*(id+1)),
+                    readingsPerSecond/producers, end), "load-"+p);
+            threads[p].setDaemon(true);
+            threads[p].start();
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long peak = 0;
+        for(Thread t : threads){
+            while(t.isAlive()){
+                peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+                if(base==null && System.nanoTime()>=warmupEnd) base = mark(engine);
+                long untilWarm = (warmupEnd-System.nanoTime())/1_000_000;
+                joinQuietly(t, base==null ? Math.max(1, Math.min(SAMPLE_MILLIS, untilWarm)) : SAMPLE_MILLIS);
+            }
+        }
+        engine.flush();
+        long stop = System.nanoTime();
+        peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+        if(base==null) base = mark(engine);
+        long published = 0;
+        for(long n : sent) published += n;
+        long[] now = counts(engine);
+        Report r = new Report(sensors.length, published, now[0]-base[0], now[1]-base[1], alerts.sum(), now[2]-base[2],
+                (stop-Math.min(stop, base[3]))/1e9, latency.snapshot(), heapProvisioned, peak, heapAfterGc());
+        measureFrom = Long.MAX_VALUE;
+        return r;
+    }
+
+    /** Starts measuring: resets alert stats and returns the engine's counts plus the time. */
+    private long[] mark(ShardedEngine engine){
+        latency = new LatencyHistogram();
+        alerts.reset();
+        measureFrom = System.currentTimeMillis();
+        long[] c = counts(engine);
+        c[3] = System.nanoTime();
+        return c;
+    }
+
+    /** Processed, dropped and suppressed so far (and a slot for {@link #mark}'s time). */
+    private static long[] counts(ShardedEngine engine){
+        long suppressed = engine.getMetrics().getCounters().getOrDefault("iot_alerts_suppressed_total", 0L);
+        return new long[]{engine.getProcessedCount(), engine.getShedCount()+engine.getConflatedCount(), suppressed, 0};
+    }
+
+    /** Cycles through sensors [from, to) until {@code endNanos}, pacing to {@code rate} per second when positive. */
+    private long produce(ShardedEngine engine, int from, int to, SplittableRandom rnd, double rate, long endNanos){
+        long sent = 0, start = System.nanoTime();
+        int i = from;
+        while(true){
+            long now = System.nanoTime();
+            if(now>=endNanos) return sent;
+            if(rate>0){
+                long due = start+(long)(sent*1e9/rate);
+                if(due>now){ LockSupport.parkNanos(Math.min(due, endNanos)-now); continue; }
+            }
+            long ms = System.currentTimeMillis();
+            for(int b=0;b<BATCH;b++){
+                Template t = kinds[i];
+                double v = rnd.nextDouble()<breachProbability ? t.breach(rnd)
+                         : baselines[i] + t.drift*emitted[i] + t.noise*rnd.nextGaussian();
+                emitted[i]++;
+                engine.publish(sensors[i], ms, v);
+                if(++i==to) i = from;
+            }
+            sent += BATCH;
+        }
+    }
+
+    /** Called on shard consumer threads; latency is taken from the breaching reading's timestamp. */
+    private void alertRaised(Alert a){
+        if(a.getType()!=AlertType.THRESHOLD) return;
+        long now = System.currentTimeMillis();
+        long at = a.getReading().getTimestamp().atZone(zone).toInstant().toEpochMilli();
+        if(at<measureFrom) return;
+        alerts.increment();
+        latency.record(Math.max(0, now-at));
+    }
+
+    private static void joinQuietly(Thread t, long millis){
+        try { t.join(millis); } catch(InterruptedException ex){ Thread.currentThread().interrupt(); }
+    }
+
+    private static long heapAfterGc(){
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Command-line load test: {@code key=value} options, all optional:
+     * {@code sensors=100000 perDevice=10 rate=0 seconds=30 warmup=5 breach=0.001 noise=1 drift=0
+     * seed=42 shards=<cores> producers=1 policy=block|drop|conflate segment=1024 segments=32}.
+     * {@code rate} is total readings per second (0: as fast as accepted), {@code noise} scales
+     * each template's noise and {@code drift} is in template noise deviations per reading.
+     * {@code segment} and {@code segments} size each sensor's raw history (see
+     * {@link TimeSeriesStore}); a raw segment grows as its sensor reports, to 16 KB by
+     * default, and shrinks back once sealed into a compressed block.
+     */
+    public static void main(String[] args){
+        Map<String, String> opt = new HashMap<>();
+        for(String arg : args){
+            int eq = arg.indexOf('=');
+            if(eq<1) throw new IllegalArgumentException("Expected key=value, got "+arg);
+            opt.put(arg.substring(0, eq), arg.substring(eq+1));
+        }
+        Set<String> unknown = new TreeSet<>(opt.keySet());
+        unknown.removeAll(OPTIONS);
+        if(!unknown.isEmpty()) throw new IllegalArgumentException("Unknown option(s) "+unknown+"; expected "+OPTIONS);
+        int sensorCount = Integer.parseInt(opt.getOrDefault("sensors", "100000"));
+        int perDevice = Integer.parseInt(opt.getOrDefault("perDevice", "10"));
+        double rate = Double.parseDouble(opt.getOrDefault("rate", "0"));
+        Duration seconds = Duration.ofSeconds(Long.parseLong(opt.getOrDefault("seconds", "30")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(opt.getOrDefault("warmup", "5")));
+        double breach = Double.parseDouble(opt.getOrDefault("breach", "0.001"));
+        double noise = Double.parseDouble(opt.getOrDefault("noise", "1"));
+        double drift = Double.parseDouble(opt.getOrDefault("drift", "0"));
+        long seed = Long.parseLong(opt.getOrDefault("seed", "42"));
+        int shards = Integer.parseInt(opt.getOrDefault("shards", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int producers = Integer.parseInt(opt.getOrDefault("producers", "1"));
+        int segment = Integer.parseInt(opt.getOrDefault("segment", "1024"));
+        int segments = Integer.parseInt(opt.getOrDefault("segments", "32"));
+        OverloadPolicy policy;
+        switch(opt.getOrDefault("policy", "block")){
+            case "drop": policy = OverloadPolicy.dropOldest(4); break;
+            case "conflate": policy = OverloadPolicy.CONFLATE; break;
+            case "block": policy = OverloadPolicy.BLOCK; break;
+            default: throw new IllegalArgumentException("policy must be block, drop or conflate");
+        }
+        List<Template> templates = new ArrayList<>();
+        for(Template t : DEFAULT_TEMPLATES) templates.add(t.scaled(noise, drift));
+
+        int deviceCount = Math.max(1, (sensorCount+perDevice-1)/perDevice);
+        LoadGenerator gen = new LoadGenerator(seed, deviceCount, perDevice, templates, breach);
+        try(ShardedEngine engine = new ShardedEngine(shards, 1<<16, 1024, Duration.ofMillis(1), policy,
+                () -> new TimeSeriesStore(segment, segments))){
+            long t0 = System.nanoTime();
+            gen.provision(engine);
+            System.out.printf(Locale.ROOT, "Provisioned %,d devices x %d sensors on %d shard(s) in %.1f s, seed %d, history %d x %d samples%n",
+                    deviceCount, perDevice, shards, (System.nanoTime()-t0)/1e9, seed, segments, segment);
+            System.out.printf(Locale.ROOT, "Running %s warm-up + %s at %s, breach probability %s, %s%n", warmup, seconds,
+                    rate>0 ? String.format(Locale.ROOT, "%,.0f readings/s", rate) : "full speed", breach, policy);
+            System.out.println(gen.run(engine, rate, warmup, seconds, producers));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.*;
 
 public class MaintenanceTicket extends Entity {
     private final String alertId;
+    private final String incidentId; // set when the ticket covers a whole incident
     private final String deviceId;
     private final String sensorId;
     private final String description;
@@ -14,27 +15,49 @@ public class MaintenanceTicket extends Entity {
     private String assignedTechId;
 
     public MaintenanceTicket(Alert alert, String description){
+        this(nextKey(), alert, description, LocalDateTime.now());
+    }
+
+    MaintenanceTicket(long key, Alert alert, String description, LocalDateTime createdAt){
+        this(key, alert, null, description, createdAt);
+    }
+
+    /** @param alert the incident's first alert when {@code incidentId} is set */
+    MaintenanceTicket(long key, Alert alert, String incidentId, String description, LocalDateTime createdAt){
+        super(key);
         if(alert==null) throw new IllegalArgumentException("alert required");
         this.alertId = alert.getId();
+        this.incidentId = incidentId;
         this.deviceId = alert.getDeviceId();
         this.sensorId = alert.getSensorId();
         this.description = (description==null ? "" : description);
-        this.createdAt = LocalDateTime.now();
+        this.createdAt = createdAt;
     }
 
     public String getAlertId(){ return alertId; }
+    public String getIncidentId(){ return incidentId; }
     public String getDeviceId(){ return deviceId; }
     public String getSensorId(){ return sensorId; }
+    public String getDescription(){ return description; }
+    public LocalDateTime getCreatedAt(){ return createdAt; }
     public TicketStatus getStatus(){ return status; }
+    public String getAssignedTechId(){ return assignedTechId; }
     public List<String> getActionLogs(){ return Collections.unmodifiableList(actionLogs); }
     public void assignTechnician(Technician t){ this.assignedTechId = t==null? null : t.getId(); }
 
-    public void addAction(String action, Technician by){
+    /** @return the log line recorded for the action */
+    public String addAction(String action, Technician by){
         if(action==null || action.isBlank()) throw new IllegalArgumentException("action required");
         String who = (by==null) ? "system" : by.getName()+"("+by.getId()+")";
-        actionLogs.add(LocalDateTime.now()+" | "+who+" | "+action);
+        String line = LocalDateTime.now()+" | "+who+" | "+action;
+        actionLogs.add(line);
+        return line;
     }
 
+    /** Restores a previously recorded log line verbatim (recovery). */
+    void restoreAction(String line){ actionLogs.add(line); }
+    void restoreAssignedTechId(String techId){ this.assignedTechId = techId; }
+
     /**
      * Close the ticket. Rule: requires at least one action log before closure.
      */
@@ -44,6 +67,7 @@ public class MaintenanceTicket extends Entity {
     }
 
     @Override public String toString(){
-        return getId()+" | TICKET for alert="+alertId+" | status="+status+" | actions="+actionLogs.size();
+        String subject = incidentId==null ? "alert="+alertId : "incident="+incidentId;
+        return getId()+" | TICKET for "+subject+" | status="+status+" | actions="+actionLogs.size();
     }
 }
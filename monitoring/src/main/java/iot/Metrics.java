@@ -0,0 +1,256 @@
+package iot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the hot paths: ingest, threshold evaluation,
+ * alert scans and creation, and the alert/ticket lifecycle. One instance can be shared
+ * by several services (e.g. all shards of a {@link ShardedEngine}): counters are
+ * {@link LongAdder}s and histograms are striped {@link LatencyHistogram}s, so recording
+ * allocates nothing and doesn't serialize writer threads.
+ * <p>
+ * Threshold evaluation is timed for one reading in {@value #EVALUATION_SAMPLE} to keep
+ * clock reads off most readings. {@link #DISABLED} records nothing and never reads the
+ * clock, which is the baseline for measuring the instrumentation's overhead.
+ * <p>
+ * Exposed as a JMX MBean ({@link #registerMBean}), as Prometheus text
+ * ({@link #writePrometheus}, {@link #startDump}) and on the console metrics page.
+ */
+public final class Metrics implements AutoCloseable {
+    /** Records nothing. */
+    public static final Metrics DISABLED = new Metrics(false);
+
+    static final int EVALUATION_SAMPLE = 64;
+
+    /** Unit a histogram records in; Prometheus output converts to seconds. */
+    enum Unit {
+        NANOS(1e-9), MILLIS(1e-3);
+        final double seconds;
+        Unit(double seconds){ this.seconds = seconds; }
+    }
+
+    /** A named metric; several entries may share one family name with different labels. */
+    static final class Entry {
+        final String family, labels, help;
+        final LongAdder counter;
+        final LatencyHistogram histogram;
+        final Unit unit;
+        final LongSupplier gauge;
+
+        Entry(String family, String labels, String help, LongAdder counter, LatencyHistogram histogram, Unit unit, LongSupplier gauge){
+            this.family = family; this.labels = labels; this.help = help;
+            this.counter = counter; this.histogram = histogram; this.unit = unit; this.gauge = gauge;
+        }
+
+        /** Flat name for JMX and the console page, e.g. {@code iot_alerts_raised_total_HIGH}. */
+        String flatName(){ return labels.isEmpty() ? family : family+"_"+labels.substring(labels.indexOf('"')+1, labels.lastIndexOf('"')); }
+    }
+
+    private final boolean enabled;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    private final LongAdder readings = counter("iot_readings_total", "Readings recorded");
+    private final LongAdder readingsShed = counter("iot_readings_shed_total", "Readings dropped by an overloaded pipeline (oldest per sensor)");
+    private final LongAdder readingsConflated = counter("iot_readings_conflated_total", "Readings superseded by a newer value of their sensor in an overloaded pipeline");
+    private final LongAdder readingsFailed = counter("iot_readings_failed_total", "Readings the ingestion pipeline could not record because recording threw");
+    private final LatencyHistogram ingest = histogram("iot_ingest", "Time per ingest call (one reading or one batch)", Unit.NANOS);
+    private final LatencyHistogram evaluation = histogram("iot_evaluation", "Threshold evaluation time per reading (sampled)", Unit.NANOS);
+    private final LongAdder scannedSensors = counter("iot_scan_sensors_total", "Sensors re-evaluated by alert scans");
+    private final LatencyHistogram scan = histogram("iot_scan", "Time per generateAlerts() scan", Unit.NANOS);
+    private final LongAdder[] alertsRaised = new LongAdder[AlertSeverity.values().length];
+    private final LongAdder alertsSuppressed = counter("iot_alerts_suppressed_total", "Duplicate breaches folded into an existing alert");
+    private final LongAdder incidentsOpened = counter("iot_incidents_opened_total", "Incidents opened");
+    private final LatencyHistogram alertCreation = histogram("iot_alert_creation", "Time to create, index, journal and publish an alert", Unit.NANOS);
+    private final LatencyHistogram timeToAck = histogram("iot_alert_time_to_ack", "Alert creation to acknowledgement", Unit.MILLIS);
+    private final LatencyHistogram timeToResolve = histogram("iot_alert_time_to_resolve", "Alert creation to resolution", Unit.MILLIS);
+    private final LongAdder ticketsCreated = counter("iot_tickets_created_total", "Maintenance tickets created");
+    private final LatencyHistogram timeToClose = histogram("iot_ticket_time_to_close", "Ticket creation to closure", Unit.MILLIS);
+
+    private ScheduledExecutorService dumper;
+
+    public Metrics(){ this(true); }
+
+    private Metrics(boolean enabled){
+        this.enabled = enabled;
+        for(AlertSeverity sev : AlertSeverity.values()){
+            alertsRaised[sev.ordinal()] = new LongAdder();
+            entries.add(new Entry("iot_alerts_raised_total", "severity=\""+sev+"\"", "Alerts raised", alertsRaised[sev.ordinal()], null, null, null));
+        }
+    }
+
+    private LongAdder counter(String name, String help){
+        LongAdder c = new LongAdder();
+        entries.add(new Entry(name, "", help, c, null, null, null));
+        return c;
+    }
+
+    private LatencyHistogram histogram(String name, String help, Unit unit){
+        LatencyHistogram h = new LatencyHistogram();
+        entries.add(new Entry(name, "", help, null, h, unit, null));
+        return h;
+    }
+
+    /** Publishes a value sampled at read time (queue depth, open alerts, ...). */
+    public void gauge(String name, String help, LongSupplier value){
+        if(name==null || value==null) throw new IllegalArgumentException("name and value required");
+        entries.add(new Entry(name, "", help==null ? "" : help, null, null, null, value));
+    }
+
+    public boolean isEnabled(){ return enabled; }
+
+    /* ===== Recording (allocation-free on the reading path) ===== */
+
+    /** Clock reading to pass to the recording methods; 0 when disabled. */
+    long start(){ return enabled ? System.nanoTime() : 0; }
+
+    void ingested(int readingCount, long start){
+        if(!enabled) return;
+        readings.add(readingCount);
+        ingest.record(System.nanoTime()-start);
+    }
+
+    void readingShed(){ if(enabled) readingsShed.increment(); }
+    void readingConflated(){ if(enabled) readingsConflated.increment(); }
+    void readingFailed(){ if(enabled) readingsFailed.increment(); }
+
+    /**
+     * Whether to time this reading's evaluation; true for one in {@value #EVALUATION_SAMPLE}.
+     * @param seq a count the caller advances per reading and owns, so writers share no counter
+     */
+    boolean sampleEvaluation(int seq){ return enabled && (seq & (EVALUATION_SAMPLE-1))==0; }
+
+    void evaluated(long start){ evaluation.record(System.nanoTime()-start); }
+
+    void scanned(int sensors, long start){
+        if(!enabled) return;
+        scannedSensors.add(sensors);
+        scan.record(System.nanoTime()-start);
+    }
+
+    void alertRaised(Alert a, long start){
+        if(!enabled) return;
+        alertsRaised[a.getSeverity().ordinal()].increment();
+        alertCreation.record(System.nanoTime()-start);
+    }
+
+    void alertSuppressed(){ if(enabled) alertsSuppressed.increment(); }
+    void incidentOpened(){ if(enabled) incidentsOpened.increment(); }
+
+    void alertAcknowledged(Alert a){
+        if(enabled && a.getAcknowledgedAt()!=null) timeToAck.record(millisBetween(a.getCreatedAt(), a.getAcknowledgedAt()));
+    }
+
+    void alertResolved(Alert a){
+        if(enabled) timeToResolve.record(millisBetween(a.getCreatedAt(), LocalDateTime.now()));
+    }
+
+    void ticketCreated(){ if(enabled) ticketsCreated.increment(); }
+
+    void ticketClosed(MaintenanceTicket t){
+        if(enabled) timeToClose.record(millisBetween(t.getCreatedAt(), LocalDateTime.now()));
+    }
+
+    private static long millisBetween(LocalDateTime from, LocalDateTime to){ return Duration.between(from, to).toMillis(); }
+
+    /* ===== Reading ===== */
+
+    List<Entry> entries(){ return entries; }
+
+    /** Current counter and gauge values by flat name, in registration order. */
+    public Map<String, Long> getCounters(){
+        Map<String, Long> out = new LinkedHashMap<>();
+        for(Entry e : entries){
+            if(e.counter!=null) out.put(e.flatName(), e.counter.sum());
+            else if(e.gauge!=null) out.put(e.flatName(), e.gauge.getAsLong());
+        }
+        return out;
+    }
+
+    /** Histogram snapshots by name; values are in nanoseconds, or milliseconds for {@code *_time_to_*}. */
+    public Map<String, LatencyHistogram.Snapshot> getHistograms(){
+        Map<String, LatencyHistogram.Snapshot> out = new LinkedHashMap<>();
+        for(Entry e : entries) if(e.histogram!=null) out.put(e.flatName(), e.histogram.snapshot());
+        return out;
+    }
+
+    /** Writes every metric in the Prometheus text exposition format; histograms as summaries. */
+    public void writePrometheus(Appendable out) throws IOException {
+        String family = null;
+        for(Entry e : entries){
+            boolean hist = e.histogram!=null;
+            String name = hist ? e.family+"_seconds" : e.family;
+            if(!e.family.equals(family)){
+                family = e.family;
+                out.append("# HELP ").append(name).append(' ').append(e.help).append('\n');
+                out.append("# TYPE ").append(name).append(' ').append(hist ? "summary" : e.counter!=null ? "counter" : "gauge").append('\n');
+            }
+            if(!hist){
+                long v = e.counter!=null ? e.counter.sum() : e.gauge.getAsLong();
+                out.append(name);
+                if(!e.labels.isEmpty()) out.append('{').append(e.labels).append('}');
+                out.append(' ').append(Long.toString(v)).append('\n');
+                continue;
+            }
+            LatencyHistogram.Snapshot s = e.histogram.snapshot();
+            for(double q : new double[]{0.5, 0.9, 0.99, 0.999}){
+                out.append(name).append("{quantile=\"").append(Double.toString(q)).append("\"} ")
+                   .append(Double.toString(s.percentile(q)*e.unit.seconds)).append('\n');
+            }
+            out.append(name).append("_sum ").append(Double.toString(s.getSum()*e.unit.seconds)).append('\n');
+            out.append(name).append("_count ").append(Long.toString(s.getCount())).append('\n');
+        }
+    }
+
+    /** Registers these metrics with the platform MBean server as {@code iot:type=Metrics,name=<name>}. */
+    public void registerMBean(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), new ObjectName("iot:type=Metrics,name="+ObjectName.quote(name)));
+    }
+
+    /**
+     * Rewrites {@code file} with the Prometheus text every {@code interval} (write to a temp
+     * file, then rename, so scrapers never see a partial file) until {@link #close()}.
+     */
+    public synchronized void startDump(Path file, Duration interval){
+        if(dumper!=null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = interval.toMillis();
+        dumper.scheduleWithFixedDelay(() -> {
+            try { dump(file); } catch(IOException|RuntimeException ex){ System.err.println("Metrics dump failed: "+ex.getMessage()); }
+        }, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes the Prometheus text to {@code file} once. */
+    public void dump(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+        try(Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+            writePrometheus(w);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override public synchronized void close(){
+        if(dumper!=null) dumper.shutdownNow();
+        dumper = null;
+    }
+}
@@ -0,0 +1,77 @@
+package iot;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.*;
+
+/**
+ * JMX view of a {@link Metrics} instance. Counters and gauges are {@code long} attributes;
+ * each histogram contributes {@code _count}, {@code _mean}, {@code _p50}, {@code _p99},
+ * {@code _p999} and {@code _max} attributes in its recording unit. Read-only.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private static final String[] STATS = {"_count", "_mean", "_p50", "_p99", "_p999", "_max"};
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics){ this.metrics = metrics; }
+
+    @Override public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for(Metrics.Entry e : metrics.entries()){
+            String name = e.flatName();
+            if(e.histogram==null){
+                if(name.equals(attribute)) return e.counter!=null ? e.counter.sum() : e.gauge.getAsLong();
+                continue;
+            }
+            if(!attribute.startsWith(name)) continue;
+            String stat = attribute.substring(name.length());
+            LatencyHistogram.Snapshot s = e.histogram.snapshot();
+            switch(stat){
+                case "_count": return s.getCount();
+                case "_mean": return s.getMean();
+                case "_p50": return s.percentile(0.5);
+                case "_p99": return s.percentile(0.99);
+                case "_p999": return s.percentile(0.999);
+                case "_max": return s.getMax();
+                default: break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override public AttributeList getAttributes(String[] attributes){
+        AttributeList out = new AttributeList();
+        for(String a : attributes){
+            try { out.add(new Attribute(a, getAttribute(a))); } catch(AttributeNotFoundException ignored){ }
+        }
+        return out;
+    }
+
+    @Override public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: "+attribute.getName());
+    }
+
+    @Override public AttributeList setAttributes(AttributeList attributes){ return new AttributeList(); }
+
+    @Override public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override public MBeanInfo getMBeanInfo(){
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for(Metrics.Entry e : metrics.entries()){
+            String name = e.flatName();
+            if(e.histogram==null){
+                attrs.add(new MBeanAttributeInfo(name, "long", e.help, true, false, false));
+                continue;
+            }
+            String unit = e.unit==Metrics.Unit.NANOS ? " (ns)" : " (ms)";
+            for(String stat : STATS){
+                String type = stat.equals("_mean") ? "double" : "long";
+                attrs.add(new MBeanAttributeInfo(name+stat, type, e.help+unit, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "IoT monitoring metrics",
+                attrs.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,758 @@
+package iot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory state and rules shared by all clients (console menu, ingestion pipeline).
+ * Mutations are serialized on this object; sensor lookup is lock-free so producers
+ * can resolve sensors without contending with the pipeline consumer.
+ */
+public class MonitoringService {
+    static final long HEARTBEAT_TICK_MILLIS = 100;
+
+    private final Map<String, Device> devices = new LinkedHashMap<>();
+    private final Map<String, Sensor> sensors = new ConcurrentHashMap<>();
+    private final Map<String, Threshold> thresholds = new LinkedHashMap<>();
+    private final ThresholdIndex thresholdIndex = new ThresholdIndex();
+    private final RuleEngine rules = new RuleEngine();
+    private final Map<String, Alert> alerts = new LinkedHashMap<>();
+    private final Map<String, MaintenanceTicket> tickets = new LinkedHashMap<>();
+    private final AlertIndex alertIndex = new AlertIndex();
+    private final TicketIndex ticketIndex = new TicketIndex();
+    private final DashboardModel dashboard = new DashboardModel();
+    private final IncidentCorrelator correlator = new IncidentCorrelator();
+    private final Map<String, Technician> techs = new LinkedHashMap<>();
+    // open breach per (sensor, threshold); a condition that stays breached raises one alert
+    private final Map<Sensor, Map<Threshold, Alert>> openBreaches = new HashMap<>();
+    // sensors whose last reading has not been evaluated against their current thresholds and rules
+    private final Set<Sensor> dirty = new LinkedHashSet<>();
+    // heartbeat deadlines of monitored sensors, on the wall clock
+    private final TimerWheel heartbeats = new TimerWheel(HEARTBEAT_TICK_MILLIS, CoarseClock.millis());
+    private int monitoredSensors, offlineSensors;
+    private final TimeSeriesStore history;
+    private final Metrics metrics;
+    private int evaluationSeq; // picks which readings get their evaluation timed; per service, as shards share metrics
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final List<Consumer<Alert>> alertListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Incident>> incidentListeners = new CopyOnWriteArrayList<>();
+    private StateLog log = StateLog.NONE;
+    private boolean replaying; // set while recovery replays journaled readings
+
+    public MonitoringService(){ this(new TimeSeriesStore()); }
+
+    public MonitoringService(TimeSeriesStore history){ this(history, new Metrics()); }
+
+    /** @param metrics where to record hot-path metrics; may be shared, or {@link Metrics#DISABLED} */
+    public MonitoringService(TimeSeriesStore history, Metrics metrics){
+        if(history==null) throw new IllegalArgumentException("history required");
+        if(metrics==null) throw new IllegalArgumentException("metrics required");
+        this.history = history;
+        this.metrics = metrics;
+    }
+
+    /* ===== Registration ===== */
+    public synchronized Device addDevice(Device d){
+        if(d==null) throw new IllegalArgumentException("Device null");
+        devices.put(d.getId(), d);
+        dashboard.deviceAdded(d);
+        rules.deviceAdded(d);
+        log.deviceAdded(d);
+        return d;
+    }
+
+    public synchronized Sensor addSensor(Device d, Sensor s){
+        if(d==null || !devices.containsKey(d.getId())) throw new IllegalArgumentException("Unknown device");
+        d.addSensor(s);
+        if(sensors.put(s.getId(), s)==null) dashboard.sensorAdded();
+        for(Threshold t : thresholdIndex.lookup(d.getId(), s)){
+            if(t instanceof WindowThreshold) s.ensureWindow(((WindowThreshold)t).getWindow());
+        }
+        rules.sensorAdded(d, s);
+        updatePriority(s);
+        log.sensorAdded(s);
+        return s;
+    }
+
+    public synchronized Threshold addThreshold(Threshold t){
+        if(t==null) throw new IllegalArgumentException("Threshold null");
+        thresholds.put(t.getId(), t);
+        thresholdIndex.add(t);
+        markAffected(t);
+        log.thresholdAdded(t);
+        return t;
+    }
+
+    public synchronized Threshold removeThreshold(String id){
+        Threshold t = thresholds.remove(id);
+        if(t==null) return null;
+        thresholdIndex.remove(t);
+        log.thresholdRemoved(t);
+        Device d = devices.get(t.getDeviceId());
+        if(d!=null){
+            for(Sensor s : d.getSensors()){
+                Map<Threshold, Alert> open = openBreaches.get(s);
+                if(open!=null && open.remove(t)!=null && open.isEmpty()) openBreaches.remove(s);
+                if(!s.getTypeKey().equals(t.getTypeKey())) continue;
+                updatePriority(s);
+                if(t instanceof WindowThreshold) releaseWindow(s, ((WindowThreshold)t).getWindow());
+            }
+        }
+        return t;
+    }
+
+    /** Drops a sensor's window once no remaining threshold on it reads that window. */
+    private void releaseWindow(Sensor s, WindowSpec spec){
+        for(Threshold other : thresholdIndex.lookup(s.getDeviceId(), s)){
+            if(other instanceof WindowThreshold && ((WindowThreshold)other).getWindow().equals(spec)) return;
+        }
+        s.dropWindow(spec);
+    }
+
+    /** Queues the device's sensors of the threshold's type for the next {@link #generateAlerts()}. */
+    private void markAffected(Threshold t){
+        Device d = devices.get(t.getDeviceId());
+        if(d==null) return;
+        for(Sensor s : d.getSensors()){
+            if(!s.getTypeKey().equals(t.getTypeKey())) continue;
+            if(t instanceof WindowThreshold) s.ensureWindow(((WindowThreshold)t).getWindow());
+            updatePriority(s);
+            if(s.hasReading()) dirty.add(s);
+        }
+    }
+
+    /** Flags sensors with a HIGH or CRITICAL threshold or rule so pipelines evaluate their readings first. */
+    private void updatePriority(Sensor s){
+        boolean p = false;
+        for(Threshold t : thresholdIndex.lookup(s.getDeviceId(), s)) p |= t.getSeverity().compareTo(AlertSeverity.HIGH)>=0;
+        for(RuleEngine.Binding b : s.rules()) p |= b.rule.getSeverity().compareTo(AlertSeverity.HIGH)>=0;
+        s.setPriority(p);
+    }
+
+    /**
+     * Checks {@code r} on every device in its scope, now and as devices and sensors are
+     * added. Only readings of the sensors it reads re-evaluate it.
+     */
+    public synchronized Rule addRule(Rule r){
+        if(r==null) throw new IllegalArgumentException("Rule null");
+        for(RuleEngine.Binding b : rules.add(r, devices.values())){
+            for(Sensor[] ss : b.sensors){
+                for(Sensor s : ss){
+                    updatePriority(s);
+                    if(s.hasReading()) dirty.add(s);
+                }
+            }
+        }
+        log.ruleAdded(r);
+        return r;
+    }
+
+    /** Stops checking a rule; alerts it raised stay open until resolved. */
+    public synchronized Rule removeRule(String id){
+        Rule r = rules.get(id);
+        if(r==null) return null;
+        for(RuleEngine.Binding b : rules.remove(id)){
+            for(Sensor[] ss : b.sensors) for(Sensor s : ss) updatePriority(s);
+        }
+        log.ruleRemoved(r);
+        return r;
+    }
+
+    public synchronized Technician addTechnician(Technician t){
+        if(t==null) throw new IllegalArgumentException("Technician null");
+        techs.put(t.getId(), t);
+        log.technicianAdded(t);
+        return t;
+    }
+
+    public void onAlert(Consumer<Alert> listener){ alertListeners.add(listener); }
+    void removeAlertListener(Consumer<Alert> listener){ alertListeners.remove(listener); }
+
+    /** Called (under the service lock) when an alert opens a new incident, after the alert's own listeners. */
+    public void onIncident(Consumer<Incident> listener){ incidentListeners.add(listener); }
+
+    /** How new alerts are coalesced into incidents; {@link CorrelationPolicy#DEFAULT} unless set. */
+    public synchronized void setCorrelationPolicy(CorrelationPolicy policy){ correlator.setPolicy(policy); }
+    public synchronized CorrelationPolicy getCorrelationPolicy(){ return correlator.policy(); }
+
+    /** Routes every subsequent state change to {@code log} (see {@link Persistence}). */
+    synchronized void setStateLog(StateLog log){ this.log = log==null ? StateLog.NONE : log; }
+
+    /* ===== Readings & alerts ===== */
+
+    /** Records a single reading and checks it against the thresholds for its device/sensor type. */
+    public synchronized Reading ingest(Sensor s, LocalDateTime timestamp, double value){
+        long start = metrics.start();
+        record(s, timestamp.atZone(zone).toInstant().toEpochMilli(), value);
+        metrics.ingested(1, start);
+        return s.getLastReading();
+    }
+
+    /**
+     * Records a batch of readings under a single lock acquisition.
+     * Arrays are read for indexes [0, n).
+     */
+    public void ingestBatch(Sensor[] batchSensors, long[] epochMillis, double[] values, int n){
+        ingestBatch(batchSensors, epochMillis, values, 0, n);
+    }
+
+    /** Records readings [from, to) of the arrays under a single lock acquisition. */
+    synchronized void ingestBatch(Sensor[] batchSensors, long[] epochMillis, double[] values, int from, int to){
+        long start = metrics.start();
+        for(int i=from;i<to;i++) record(batchSensors[i], epochMillis[i], values[i]);
+        metrics.ingested(to-from, start);
+    }
+
+    /**
+     * Records readings [from, to) under a single lock acquisition, skipping any older than
+     * its sensor's latest, so a backlog replayed into live state never rolls last values,
+     * heartbeats or history back.
+     * @return number of readings skipped
+     */
+    synchronized int ingestNewer(Sensor[] batchSensors, long[] epochMillis, double[] values, int from, int to){
+        long start = metrics.start();
+        int skipped = 0;
+        for(int i=from;i<to;i++){
+            Sensor s = batchSensors[i];
+            if(s.hasReading() && epochMillis[i]<s.getLastMillis()){ skipped++; continue; }
+            record(s, epochMillis[i], values[i]);
+        }
+        metrics.ingested(to-from-skipped, start);
+        return skipped;
+    }
+
+    /**
+     * Records readings [from, to) under a single lock acquisition, stopping at the first one
+     * that throws; its exception goes to {@code failed}, and the readings before it stay recorded.
+     * @return index of the reading that failed, or {@code to}
+     */
+    synchronized int ingestBatch(Sensor[] batchSensors, long[] epochMillis, double[] values, int from, int to,
+                                 Consumer<RuntimeException> failed){
+        long start = metrics.start();
+        int i = from;
+        try {
+            for(;i<to;i++) record(batchSensors[i], epochMillis[i], values[i]);
+        } catch(RuntimeException ex){
+            failed.accept(ex);
+        }
+        metrics.ingested(i-from, start);
+        return i;
+    }
+
+    /**
+     * Records a reading into the sensor's slot, history and windows, then evaluates it.
+     * Allocation-free unless it raises an alert (or seals a history block); the
+     * {@link Reading} object is only built when an alert needs it.
+     */
+    private void record(Sensor s, long epochMillis, double value){
+        s.record(epochMillis, value);
+        Heartbeat h = s.heartbeat();
+        if(h!=null) heartbeatSeen(h);
+        history.append(s.getId(), epochMillis, value);
+        log.readingRecorded(s, epochMillis, value);
+        s.recordWindows(epochMillis, value);
+        if(metrics.sampleEvaluation(++evaluationSeq)){
+            long start = System.nanoTime();
+            evaluate(s, epochMillis, value, null);
+            metrics.evaluated(start);
+        } else {
+            evaluate(s, epochMillis, value, null);
+        }
+        if(!dirty.isEmpty()) dirty.remove(s);
+    }
+
+    /** Checks the sensor's latest reading against its thresholds, then re-checks the rules that read it. */
+    private void evaluate(Sensor s, long epochMillis, double value, List<Alert> out){
+        Threshold[] ts = thresholdIndex.lookup(s.getDeviceId(), s);
+        if(ts.length>0) checkThresholds(s, ts, epochMillis, value, out);
+        for(RuleEngine.Binding b : s.rules()) checkRule(b, s, epochMillis, out);
+    }
+
+    /**
+     * A new alert is raised only when a (sensor, threshold) pair enters breach; it stays
+     * open until the value clears the threshold's hysteresis band or the alert is resolved.
+     * A breach that duplicates a recent alert (see {@link CorrelationPolicy}) is attached
+     * to that alert instead.
+     */
+    private void checkThresholds(Sensor s, Threshold[] ts, long epochMillis, double value, List<Alert> out){
+        Map<Threshold, Alert> open = openBreaches.get(s);
+        for(Threshold t : ts){
+            double v = t.measure(s, value, epochMillis);
+            Alert current = open==null ? null : open.get(t);
+            if(current!=null && current.getStatus()==AlertStatus.RESOLVED) current = null;
+            if(t.isBreached(v)){
+                if(current!=null || replaying) continue; // on replay the journaled alert follows
+                if(open==null) openBreaches.put(s, open = new HashMap<>());
+                Alert dup = correlator.duplicateOf(s, t.getSeverity(), epochMillis);
+                if(dup!=null){
+                    open.put(t, dup);
+                    Incident i = correlator.get(dup.getIncidentId());
+                    if(i!=null){ i.suppress(); log.alertSuppressed(i); }
+                    metrics.alertSuppressed();
+                    continue;
+                }
+                long start = metrics.start();
+                Alert a = new Alert(s.getLastReading(), s.getType(), t.getSeverity());
+                open.put(t, a);
+                raise(s, a, t, epochMillis, start, out);
+            } else if(open!=null && (current==null || t.isCleared(v))){
+                open.remove(t);
+            }
+        }
+        if(open!=null && open.isEmpty()) openBreaches.remove(s);
+    }
+
+    /**
+     * Re-evaluates a rule on the device of {@code s}, whose reading just changed. Raises an
+     * alert when the rule becomes true; once it is false again (or its alert is resolved)
+     * the next match raises another.
+     */
+    private void checkRule(RuleEngine.Binding b, Sensor s, long epochMillis, List<Alert> out){
+        if(b.open!=null && b.open.getStatus()==AlertStatus.RESOLVED) b.open = null;
+        if(!b.matches()){ b.open = null; return; }
+        if(b.open!=null || replaying) return; // on replay the journaled alert follows
+        long start = metrics.start();
+        Alert a = Alert.rule(b.rule, s, LocalDateTime.now());
+        b.open = a;
+        raise(s, a, null, epochMillis, start, out);
+    }
+
+    /** Registers, correlates, journals and publishes a new alert. */
+    private void raise(Sensor s, Alert a, Threshold cause, long atMillis, long start, List<Alert> out){
+        alerts.put(a.getId(), a);
+        alertIndex.add(a);
+        Incident opened = correlate(s, a, atMillis);
+        dashboard.alertOpened(a);
+        log.alertRaised(a, cause);
+        notifyListeners(a);
+        if(opened!=null) for(Consumer<Incident> l : incidentListeners) l.accept(opened);
+        metrics.alertRaised(a, start);
+        if(out!=null) out.add(a);
+    }
+
+    /**
+     * Adds a new alert to the open incident of its device/location, opening one if there is
+     * none within the correlation window.
+     * @return the incident if this alert opened it, else null
+     */
+    private Incident correlate(Sensor s, Alert a, long readingMillis){
+        if(a.getType()==AlertType.THRESHOLD) correlator.alertRaised(s, a, readingMillis);
+        String key = correlator.scopeKey(devices.get(a.getDeviceId()), a.getDeviceId());
+        if(key==null) return null;
+        Incident i = correlator.joinable(key, readingMillis);
+        Incident opened = null;
+        if(i==null){
+            opened = i = new Incident(correlator.policy().getScope(), key, a.getCreatedAt());
+            correlator.opened(i);
+            metrics.incidentOpened();
+            log.incidentOpened(i);
+        }
+        i.join(a, readingMillis);
+        return opened;
+    }
+
+    private void notifyListeners(Alert a){
+        for(Consumer<Alert> l : alertListeners) l.accept(a);
+    }
+
+    /* ===== Heartbeats ===== */
+
+    /** {@link #setHeartbeat(Sensor, Duration, AlertSeverity)} with HIGH severity. */
+    public void setHeartbeat(Sensor s, Duration interval){ setHeartbeat(s, interval, AlertSeverity.HIGH); }
+
+    /**
+     * Expects {@code s} to report at least every {@code interval} (wall clock, from when
+     * readings are ingested); once it misses that deadline, {@link #checkHeartbeats()}
+     * raises an {@link AlertType#OFFLINE} alert of {@code severity}. The sensor raises no
+     * other offline alert until it reports again or that alert is resolved. A null
+     * interval stops monitoring it.
+     */
+    public synchronized void setHeartbeat(Sensor s, Duration interval, AlertSeverity severity){
+        if(s==null || sensors.get(s.getId())!=s) throw new IllegalArgumentException("Unknown sensor");
+        if(interval!=null && interval.toMillis()<1) throw new IllegalArgumentException("interval must be at least 1 ms");
+        if(severity==null) throw new IllegalArgumentException("severity required");
+        Heartbeat old = s.heartbeat();
+        if(old!=null){
+            heartbeats.cancel(old);
+            monitoredSensors--;
+            if(old.offline!=null) offlineSensors--;
+        }
+        Heartbeat h = interval==null ? null : new Heartbeat(s, interval.toMillis(), severity);
+        s.setHeartbeat(h);
+        if(h!=null){
+            monitoredSensors++;
+            if(old!=null && old.offline!=null){
+                h.offline = old.offline; // still out: stays offline until it reports
+                offlineSensors++;
+            } else {
+                h.deadline = CoarseClock.millis()+h.intervalMillis;
+                heartbeats.schedule(h, h.deadline);
+            }
+        }
+        log.heartbeatChanged(s);
+    }
+
+    /** Raises OFFLINE alerts for sensors past their deadline; call periodically (deadlines have {@value #HEARTBEAT_TICK_MILLIS} ms resolution). */
+    public List<Alert> checkHeartbeats(){ return checkHeartbeats(CoarseClock.millis()); }
+
+    /**
+     * Advances the heartbeat wheel to {@code nowMillis}. Cost follows the deadlines that
+     * come due, not the number of monitored sensors.
+     * @return alerts raised
+     */
+    synchronized List<Alert> checkHeartbeats(long nowMillis){
+        List<Alert> out = new ArrayList<>();
+        heartbeats.advance(nowMillis, t -> {
+            Heartbeat h = (Heartbeat)t;
+            if(h.deadline>nowMillis) heartbeats.schedule(h, h.deadline); // reported since it was scheduled
+            else wentOffline(h, nowMillis, out);
+        });
+        return out;
+    }
+
+    public synchronized int getMonitoredSensorCount(){ return monitoredSensors; }
+    public synchronized int getOfflineSensorCount(){ return offlineSensors; }
+
+    /** A reading arrived: moves the deadline (the timer catches up when it fires) and ends any outage. */
+    private void heartbeatSeen(Heartbeat h){
+        h.deadline = CoarseClock.millis()+h.intervalMillis;
+        if(h.offline!=null){ h.offline = null; offlineSensors--; }
+        if(!h.isScheduled()) heartbeats.schedule(h, h.deadline);
+    }
+
+    private void wentOffline(Heartbeat h, long nowMillis, List<Alert> out){
+        long start = metrics.start();
+        Alert a = Alert.offline(h.sensor, h.sensor.getLastReading(), h.severity, LocalDateTime.now());
+        h.offline = a;
+        offlineSensors++;
+        raise(h.sensor, a, null, nowMillis, start, out);
+    }
+
+    /** Resolving an outage's alert re-arms the sensor's deadline, so continued silence raises again. */
+    private void offlineResolved(Alert a){
+        Sensor s = sensors.get(a.getSensorId());
+        Heartbeat h = s==null ? null : s.heartbeat();
+        if(h==null || h.offline!=a) return;
+        h.offline = null;
+        offlineSensors--;
+        h.deadline = CoarseClock.millis()+h.intervalMillis;
+        heartbeats.schedule(h, h.deadline);
+    }
+
+    /**
+     * Re-evaluates the last reading of sensors changed since the previous scan.
+     * Readings are evaluated as they are ingested, so this only has work to do for
+     * sensors whose thresholds or rules were added since; cost follows activity, not fleet size.
+     * @return alerts newly raised by this scan
+     */
+    public synchronized List<Alert> generateAlerts(){
+        long start = metrics.start();
+        int scanned = dirty.size();
+        List<Alert> out = new ArrayList<>();
+        for(Sensor s : dirty){
+            if(s.hasReading()) evaluate(s, s.getLastMillis(), s.getLastValue(), out);
+        }
+        dirty.clear();
+        metrics.scanned(scanned, start);
+        return out;
+    }
+
+    /** Queues every sensor that has a reading for the next {@link #generateAlerts()} (full rescan). */
+    synchronized void markAllDirty(){
+        for(Sensor s : sensors.values()){
+            if(s.hasReading()) dirty.add(s);
+        }
+    }
+
+    public synchronized int getDirtySensorCount(){ return dirty.size(); }
+    /** Rules currently true on a device with their alert unresolved. */
+    public synchronized int getRuleMatchCount(){ return rules.matching().size(); }
+    public synchronized int getOpenBreachCount(){
+        int n = 0;
+        for(Map<Threshold, Alert> open : openBreaches.values()) n += open.size();
+        return n;
+    }
+
+    public synchronized void acknowledge(Alert a, String by){
+        acknowledge(a, by, LocalDateTime.now());
+        metrics.alertAcknowledged(a);
+        log.alertAcknowledged(a);
+    }
+
+    /** Status transitions go through here so the alert indexes follow them. */
+    synchronized void acknowledge(Alert a, String by, LocalDateTime at){
+        AlertStatus before = a.getStatus();
+        a.acknowledge(by, at);
+        alertIndex.statusChanged(a, before);
+    }
+
+    synchronized void resolve(Alert a){
+        AlertStatus before = a.getStatus();
+        a.resolve();
+        alertIndex.statusChanged(a, before);
+        if(before==AlertStatus.RESOLVED) return;
+        dashboard.alertClosed(a);
+        if(a.getType()==AlertType.OFFLINE) offlineResolved(a);
+        Incident i = correlator.get(a.getIncidentId());
+        if(i!=null){
+            i.memberResolved();
+            // derived from the alert records, so recovery repeats it without a journal entry of its own
+            if(i.getOpenAlerts()==0 && i.getStatus()!=AlertStatus.RESOLVED) resolve(i);
+        }
+    }
+
+    /* ===== Incidents ===== */
+
+    /** Acknowledges the incident and every member alert still NEW. */
+    public synchronized void acknowledge(Incident i, String by){
+        acknowledge(i, by, LocalDateTime.now());
+        log.incidentAcknowledged(i);
+        for(Alert a : alertIndex.members(i, EnumSet.of(AlertStatus.NEW))) acknowledge(a, by);
+    }
+
+    synchronized void acknowledge(Incident i, String by, LocalDateTime at){
+        AlertStatus before = i.getStatus();
+        i.acknowledge(by, at);
+        correlator.statusChanged(i, before);
+    }
+
+    synchronized void resolve(Incident i){
+        AlertStatus before = i.getStatus();
+        i.resolve();
+        correlator.statusChanged(i, before);
+    }
+
+    synchronized void close(MaintenanceTicket t){
+        TicketStatus before = t.getStatus();
+        t.close();
+        ticketIndex.statusChanged(t, before);
+    }
+
+    /* ===== Tickets ===== */
+    public synchronized MaintenanceTicket createTicket(Alert a, String description){
+        MaintenanceTicket t = new MaintenanceTicket(a, description);
+        a.linkTicket(t.getId());
+        return register(t);
+    }
+
+    /** One ticket for a whole incident; closing it resolves every member alert. */
+    public synchronized MaintenanceTicket createTicket(Incident i, String description){
+        Alert first = alerts.get(i.getFirstAlertId());
+        if(first==null) throw new IllegalStateException("Incident has no alerts");
+        MaintenanceTicket t = new MaintenanceTicket(Entity.nextKey(), first, i.getId(), description, LocalDateTime.now());
+        i.linkTicket(t.getId());
+        return register(t);
+    }
+
+    private MaintenanceTicket register(MaintenanceTicket t){
+        tickets.put(t.getId(), t);
+        ticketIndex.add(t);
+        metrics.ticketCreated();
+        log.ticketCreated(t);
+        return t;
+    }
+
+    public synchronized void addAction(MaintenanceTicket t, String action, Technician by){
+        log.ticketAction(t, t.addAction(action, by));
+    }
+
+    /** Closes the ticket and resolves its linked alert, or all alerts of its incident. */
+    public synchronized void closeTicket(MaintenanceTicket t){
+        close(t);
+        metrics.ticketClosed(t);
+        log.ticketClosed(t);
+        Incident i = correlator.get(t.getIncidentId());
+        List<Alert> resolved = i!=null ? alertIndex.members(i, EnumSet.of(AlertStatus.NEW, AlertStatus.ACKNOWLEDGED))
+                                       : Collections.singletonList(alerts.get(t.getAlertId()));
+        for(Alert a : resolved){
+            if(a==null || a.getStatus()==AlertStatus.RESOLVED) continue;
+            resolve(a);
+            metrics.alertResolved(a);
+            log.alertResolved(a);
+        }
+    }
+
+    /* ===== Recovery (used by Persistence while no StateLog is attached) ===== */
+
+    /** Replays a journaled reading: updates history/last reading and clears breaches, but raises nothing. */
+    synchronized void restoreReading(Sensor s, long epochMillis, double value){
+        replaying = true;
+        try {
+            record(s, epochMillis, value);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /** Re-registers a journaled alert (into its incident, if it names one) and, if still unresolved, its open breach. */
+    synchronized void restoreAlert(Alert a, Threshold cause){
+        Sensor s = sensors.get(a.getSensorId());
+        if(alerts.put(a.getId(), a)==null){
+            alertIndex.add(a);
+            if(a.getStatus()!=AlertStatus.RESOLVED) dashboard.alertOpened(a);
+            LocalDateTime at = a.getType()==AlertType.OFFLINE ? a.getCreatedAt() : a.getReading().getTimestamp();
+            long ms = at.atZone(zone).toInstant().toEpochMilli();
+            Incident i = correlator.get(a.getIncidentId());
+            if(i!=null) i.join(a, ms);
+            if(s!=null && a.getType()==AlertType.THRESHOLD) correlator.alertRaised(s, a, ms);
+        }
+        if(cause!=null && s!=null && a.getStatus()!=AlertStatus.RESOLVED){
+            openBreaches.computeIfAbsent(s, k -> new HashMap<>()).put(cause, a);
+        }
+    }
+
+    synchronized void restoreTicket(MaintenanceTicket t){
+        if(tickets.put(t.getId(), t)==null) ticketIndex.add(t);
+        Incident i = correlator.get(t.getIncidentId());
+        Alert a = alerts.get(t.getAlertId());
+        if(i!=null) i.linkTicket(t.getId());
+        else if(a!=null) a.linkTicket(t.getId());
+    }
+
+    /** Marks the sensor of a restored, unresolved OFFLINE alert as still out until it reports. */
+    synchronized void restoreOffline(Alert a){
+        Sensor s = sensors.get(a.getSensorId());
+        Heartbeat h = s==null ? null : s.heartbeat();
+        if(h==null || a.getStatus()==AlertStatus.RESOLVED) return;
+        if(h.offline==null) offlineSensors++;
+        h.offline = a;
+        heartbeats.cancel(h);
+    }
+
+    /** Marks a restored, unresolved RULE alert as its rule's open match on that device. */
+    synchronized void restoreRuleMatch(Alert a){
+        RuleEngine.Binding b = rules.binding(a.getRuleId(), a.getDeviceId());
+        if(b!=null && a.getStatus()!=AlertStatus.RESOLVED) b.open = a;
+    }
+
+    /** Rule bindings with an open match; callers must hold the service lock. */
+    List<RuleEngine.Binding> ruleMatches(){ return rules.matching(); }
+
+    /** Re-registers a journaled incident; its alerts join as they are restored. */
+    synchronized void restoreIncident(Incident i){ correlator.opened(i); }
+
+    /** Open breaches as (sensor -> threshold -> alert); callers must hold the service lock. */
+    Map<Sensor, Map<Threshold, Alert>> openBreaches(){ return openBreaches; }
+
+    /* ===== Queries ===== */
+
+    /**
+     * Visits a sensor's retained history with {@code from <= time <= to} (epoch millis)
+     * without creating {@link Reading} objects.
+     * @return number of samples visited
+     */
+    public int readings(String sensorId, long from, long to, TimeSeriesStore.SampleVisitor visitor){
+        return history.readings(sensorId, from, to, visitor);
+    }
+
+    public TimeSeriesStore getHistory(){ return history; }
+    public Metrics getMetrics(){ return metrics; }
+
+    public synchronized Device getDevice(String id){ return devices.get(id); }
+    public synchronized Threshold getThreshold(String id){ return thresholds.get(id); }
+    public synchronized Rule getRule(String id){ return rules.get(id); }
+    public Sensor getSensor(String id){ return sensors.get(id); }
+    public synchronized Alert getAlert(String id){ return alerts.get(id); }
+    public synchronized MaintenanceTicket getTicket(String id){ return tickets.get(id); }
+    public synchronized Technician getTechnician(String id){ return techs.get(id); }
+    public synchronized Incident getIncident(String id){ return correlator.get(id); }
+
+    /** Runs {@code view} under the service lock, so everything it reads is one consistent state. */
+    public synchronized <T> T read(Function<MonitoringService, T> view){ return view.apply(this); }
+
+    public synchronized List<Device> getDevices(){ return new ArrayList<>(devices.values()); }
+    public synchronized List<Threshold> getThresholds(){ return new ArrayList<>(thresholds.values()); }
+    public synchronized List<Rule> getRules(){ return new ArrayList<>(rules.all()); }
+    public synchronized List<Alert> getAlerts(){ return new ArrayList<>(alerts.values()); }
+    public synchronized List<MaintenanceTicket> getTickets(){ return new ArrayList<>(tickets.values()); }
+    public synchronized List<Technician> getTechnicians(){ return new ArrayList<>(techs.values()); }
+    public synchronized List<Incident> getIncidents(){ return new ArrayList<>(correlator.all()); }
+
+    /**
+     * Pages through alerts newest first using the status/severity/device indexes, so the
+     * cost follows the page size rather than the alert history. Null criteria match all.
+     * @param statuses allowed statuses, e.g. NEW and ACKNOWLEDGED for unresolved alerts
+     * @param from,to inclusive creation-time bounds
+     * @param cursor {@link Page#getNextCursor()} of the previous page, or null for the first
+     */
+    public synchronized Page<Alert> queryAlerts(Set<AlertStatus> statuses, AlertSeverity severity, String deviceId,
+                                                LocalDateTime from, LocalDateTime to, String cursor, int limit){
+        return alertPage(statuses, severity, deviceId, from, to, alertCursor(cursor), limit);
+    }
+
+    synchronized Page<Alert> alertPage(Set<AlertStatus> statuses, AlertSeverity severity, String deviceId,
+                                       LocalDateTime from, LocalDateTime to, TimeIndex.Pos before, int limit){
+        return alertIndex.query(statuses, severity, deviceId, from, to, before, limit);
+    }
+
+    /** Pages through tickets newest first; null criteria match all (see {@link #queryAlerts}). */
+    public synchronized Page<MaintenanceTicket> queryTickets(TicketStatus status, String deviceId, String alertId,
+                                                             String cursor, int limit){
+        return ticketPage(status, deviceId, alertId, ticketCursor(cursor), limit);
+    }
+
+    synchronized Page<MaintenanceTicket> ticketPage(TicketStatus status, String deviceId, String alertId,
+                                                    TimeIndex.Pos before, int limit){
+        return ticketIndex.query(status, deviceId, alertId, before, limit);
+    }
+
+    /** Pages through incidents newest first (by opening); null statuses match all. */
+    public synchronized Page<Incident> queryIncidents(Set<AlertStatus> statuses, String cursor, int limit){
+        return incidentPage(statuses, incidentCursor(cursor), limit);
+    }
+
+    synchronized Page<Incident> incidentPage(Set<AlertStatus> statuses, TimeIndex.Pos before, int limit){
+        return correlator.query(statuses, null, null, before, limit);
+    }
+
+    synchronized TimeIndex.Pos incidentPos(String cursor){
+        Incident i = correlator.get(cursor);
+        return i==null ? null : correlator.pos(i);
+    }
+
+    private TimeIndex.Pos incidentCursor(String cursor){
+        if(cursor==null) return null;
+        TimeIndex.Pos p = incidentPos(cursor);
+        if(p==null) throw new IllegalArgumentException("Unknown cursor: "+cursor);
+        return p;
+    }
+
+    /** Resume position for an alert page cursor; null if the cursor names no alert here. */
+    synchronized TimeIndex.Pos alertPos(String cursor){
+        Alert a = alerts.get(cursor);
+        return a==null ? null : alertIndex.pos(a);
+    }
+
+    synchronized TimeIndex.Pos ticketPos(String cursor){
+        MaintenanceTicket t = tickets.get(cursor);
+        return t==null ? null : ticketIndex.pos(t);
+    }
+
+    private TimeIndex.Pos alertCursor(String cursor){
+        if(cursor==null) return null;
+        TimeIndex.Pos p = alertPos(cursor);
+        if(p==null) throw new IllegalArgumentException("Unknown cursor: "+cursor);
+        return p;
+    }
+
+    private TimeIndex.Pos ticketCursor(String cursor){
+        if(cursor==null) return null;
+        TimeIndex.Pos p = ticketPos(cursor);
+        if(p==null) throw new IllegalArgumentException("Unknown cursor: "+cursor);
+        return p;
+    }
+
+    /** Materialized dashboard state; only read it under the service lock, e.g. inside {@link #read}. */
+    public DashboardModel getDashboard(){ return dashboard; }
+
+    public synchronized int getAlertCount(AlertStatus status){ return alertIndex.count(status); }
+    public synchronized int getTicketCount(TicketStatus status){ return ticketIndex.count(status); }
+    public synchronized int getIncidentCount(AlertStatus status){ return correlator.count(status); }
+}
@@ -0,0 +1,44 @@
+package iot;
+
+/**
+ * What an {@link IngestionPipeline} does when readings arrive faster than they can be
+ * evaluated. Blocking pushes back on producers (and through the
+ * {@link IngestionServer}, on the devices' TCP connections); the shedding policies never
+ * block and instead bound the backlog to a few readings per sensor, discarding that
+ * sensor's oldest queued readings first. Either way the queued work is bounded.
+ */
+public final class OverloadPolicy {
+    public enum Mode { BLOCK, DROP_OLDEST, CONFLATE }
+
+    /** Producers wait while the ring is full; nothing is discarded. */
+    public static final OverloadPolicy BLOCK = new OverloadPolicy(Mode.BLOCK, 0);
+
+    /** Only the latest unprocessed value of each sensor is kept; older ones are counted as conflated. */
+    public static final OverloadPolicy CONFLATE = new OverloadPolicy(Mode.CONFLATE, 1);
+
+    private final Mode mode;
+    private final int perSensor;
+
+    private OverloadPolicy(Mode mode, int perSensor){
+        this.mode = mode; this.perSensor = perSensor;
+    }
+
+    /** Keeps up to {@code perSensor} unprocessed readings per sensor; older ones are counted as shed. */
+    public static OverloadPolicy dropOldest(int perSensor){
+        if(perSensor<1) throw new IllegalArgumentException("perSensor must be >= 1");
+        return new OverloadPolicy(Mode.DROP_OLDEST, perSensor);
+    }
+
+    public Mode getMode(){ return mode; }
+    /** Unprocessed readings kept per sensor; 0 for {@link #BLOCK}, which bounds the ring instead. */
+    public int getPerSensor(){ return perSensor; }
+    public boolean isShedding(){ return mode!=Mode.BLOCK; }
+
+    @Override public String toString(){
+        switch(mode){
+            case DROP_OLDEST: return "drop oldest beyond "+perSensor+" per sensor";
+            case CONFLATE: return "conflate to latest per sensor";
+            default: return "block";
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package iot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a newest-first query. Pass {@link #getNextCursor()} back to the same query
+ * to continue after the last item; it is null on the last page.
+ */
+public final class Page<T extends Entity> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    Page(List<T> items, String nextCursor){
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems(){ return items; }
+    public String getNextCursor(){ return nextCursor; }
+    public boolean hasMore(){ return nextCursor!=null; }
+}
@@ -0,0 +1,735 @@
+package iot;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable state for {@link MonitoringService}: every change is journaled to a
+ * {@link Journal} and the full state is periodically written as a compact snapshot.
+ * Recovery loads the newest snapshot and replays only the journal tail after it.
+ * <p>
+ * Journal payloads refer to entities by their 64-bit key; readings cost 24 bytes
+ * (+9 bytes record framing).
+ */
+public class Persistence implements StateLog, AutoCloseable {
+    private static final byte DEVICE = 1, SENSOR = 2, THRESHOLD_ADDED = 3, THRESHOLD_REMOVED = 4,
+            TECHNICIAN = 5, READING = 6, ALERT_RAISED = 7, ALERT_ACK = 8, ALERT_RESOLVED = 9,
+            TICKET_CREATED = 10, TICKET_ACTION = 11, TICKET_CLOSED = 12,
+            INCIDENT_OPENED = 13, ALERT_SUPPRESSED = 14, INCIDENT_ACK = 15, HEARTBEAT = 16, OFFLINE_RAISED = 17,
+            RULE_ADDED = 18, RULE_REMOVED = 19, RULE_RAISED = 20;
+    private static final int SNAPSHOT_MAGIC = 0x494f5453; // "IOTS"
+    private static final int SNAPSHOT_VERSION = 8; // 2: window thresholds, 3: downsampled history, 4: incidents, 5: heartbeats, 6: rules, 7: history last, 8: compressed blocks; 1-7 are still readable
+    private static final String SNAPSHOT_PREFIX = "snapshot-", SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path dir;
+    private final Journal journal;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ByteBuffer scratch = ByteBuffer.allocate(64*1024); // guarded by the service lock
+    private final Object snapshotLock = new Object();
+    private MonitoringService attached;
+    private ScheduledExecutorService snapshotter;
+
+    /** 64 MB segments, 50 ms group-commit interval. */
+    public Persistence(Path dir) throws IOException {
+        this(dir, 64<<20, Duration.ofMillis(50));
+    }
+
+    public Persistence(Path dir, int segmentBytes, Duration syncInterval) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.journal = new Journal(dir.resolve("journal"), segmentBytes, syncInterval);
+    }
+
+    /**
+     * Rebuilds {@code service} (which must be empty) from the newest snapshot plus the
+     * journal tail, then attaches this as its {@link StateLog}.
+     * @return true if any state was recovered
+     */
+    public boolean recover(MonitoringService service) throws IOException {
+        Path snap = latestSnapshot();
+        long from = 0;
+        boolean any = false;
+        Map<Long, Sensor> sensorsByKey = new HashMap<>();
+        if(snap!=null){
+            from = readSnapshot(snap, service, sensorsByKey);
+            any = true;
+        }
+        long[] replayed = {0};
+        journal.replay(from, (type, in) -> {
+            apply(service, type, in, sensorsByKey);
+            replayed[0]++;
+        });
+        attach(service);
+        return any || replayed[0]>0;
+    }
+
+    /** Journals every subsequent change made through {@code service}. */
+    public void attach(MonitoringService service){
+        this.attached = service;
+        service.setStateLog(this);
+    }
+
+    /**
+     * Writes a snapshot of the attached service and drops journal segments it covers.
+     * Under the service lock only the entity state is encoded (in memory) and each sensor's
+     * history cut is taken; the history, the bulk of the data, is streamed to the file
+     * afterwards, one sensor lock at a time, while ingestion goes on. The file is forced and
+     * renamed into place, and older snapshots and journal segments are only deleted once the
+     * rename itself is durable.
+     */
+    public void snapshot() throws IOException {
+        MonitoringService service = attached;
+        if(service==null) throw new IllegalStateException("Not attached");
+        synchronized(snapshotLock){ // one writer of the tmp file at a time
+            takeSnapshot(service);
+        }
+    }
+
+    private void takeSnapshot(MonitoringService service) throws IOException {
+        long offset;
+        ByteArrayOutputStream state = new ByteArrayOutputStream(1<<16);
+        List<Sensor> sensors;
+        long[] cuts;
+        TimeSeriesStore history = service.getHistory();
+        synchronized(service){ // a consistent cut: the journal offset, entity state and each sensor's sample count
+            offset = journal.position();
+            try(DataOutputStream out = new DataOutputStream(state)){
+                sensors = writeState(out, service);
+            }
+            cuts = new long[sensors.size()];
+            for(int i=0;i<cuts.length;i++) cuts[i] = history.appended(sensors.get(i).getId());
+        }
+        Path tmp = dir.resolve(SNAPSHOT_PREFIX+"tmp");
+        try(FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1<<16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(offset);
+            state.writeTo(out);
+            state = null; // let it go before streaming the history
+            writeHistory(out, history, sensors, cuts);
+            out.flush();
+            ch.force(true);
+        }
+        Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, offset, SNAPSHOT_SUFFIX));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(dir);
+        for(Path old : snapshots()) if(!old.equals(target)) Files.deleteIfExists(old);
+        journal.truncateBefore(offset);
+    }
+
+    /** Makes renames and deletions in {@code d} durable; directories can't be opened for this on Windows. */
+    private static void forceDirectory(Path d) throws IOException {
+        if(System.getProperty("os.name", "").startsWith("Windows")) return;
+        try(FileChannel ch = FileChannel.open(d, StandardOpenOption.READ)){
+            ch.force(true);
+        }
+    }
+
+    /** Takes a snapshot every {@code interval} in the background. */
+    public synchronized void startSnapshots(Duration interval){
+        if(snapshotter!=null) return;
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshotter");
+            t.setDaemon(true);
+            return t;
+        });
+        long ms = interval.toMillis();
+        snapshotter.scheduleWithFixedDelay(() -> {
+            // anything escaping would cancel the schedule silently, and with it journal truncation
+            try { snapshot(); } catch(Throwable ex){ System.err.println("Snapshot failed: "+ex); }
+        }, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /** Forces journaled changes to disk now rather than at the next group commit. */
+    public void sync(){ journal.sync(); }
+
+    /** Why the journal last failed to reach disk, or null while it is healthy; journaling fails until this clears. */
+    public IOException getSyncFailure(){ return journal.getSyncFailure(); }
+
+    @Override public synchronized void close(){
+        if(snapshotter!=null) snapshotter.shutdownNow();
+        journal.close();
+    }
+
+    /* ===== StateLog: encode changes ===== */
+
+    @Override public void deviceAdded(Device d){
+        ByteBuffer b = begin(); b.putLong(d.getKey()); putString(b, d.getName()); putString(b, d.getLocation()); write(DEVICE);
+    }
+    @Override public void sensorAdded(Sensor s){
+        ByteBuffer b = begin(); b.putLong(s.getKey()); putString(b, s.getDeviceId()); putString(b, s.getType()); putString(b, s.getUnit()); write(SENSOR);
+    }
+    @Override public void thresholdAdded(Threshold t){
+        ByteBuffer b = begin(); putThreshold(b, t); write(THRESHOLD_ADDED);
+    }
+    @Override public void thresholdRemoved(Threshold t){
+        ByteBuffer b = begin(); putString(b, t.getId()); write(THRESHOLD_REMOVED);
+    }
+    @Override public void ruleAdded(Rule r){
+        ByteBuffer b = begin(); putRule(b, r); write(RULE_ADDED);
+    }
+    @Override public void ruleRemoved(Rule r){
+        ByteBuffer b = begin(); putString(b, r.getId()); write(RULE_REMOVED);
+    }
+    @Override public void heartbeatChanged(Sensor s){
+        Heartbeat h = s.heartbeat();
+        ByteBuffer b = begin(); b.putLong(s.getKey()); b.putLong(h==null ? 0 : h.intervalMillis); b.put((byte)(h==null ? 0 : h.severity.ordinal()));
+        write(HEARTBEAT);
+    }
+    @Override public void technicianAdded(Technician t){
+        ByteBuffer b = begin(); b.putLong(t.getKey()); putString(b, t.getName()); putString(b, t.getContact()); write(TECHNICIAN);
+    }
+    @Override public void readingRecorded(Sensor s, long epochMillis, double value){
+        ByteBuffer b = begin(); b.putLong(s.getKey()); b.putLong(epochMillis); b.putDouble(value); write(READING);
+    }
+    @Override public void alertRaised(Alert a, Threshold cause){
+        ByteBuffer b = begin(); putAlert(b, a);
+        if(a.getType()==AlertType.OFFLINE){ putString(b, a.getIncidentId()); write(OFFLINE_RAISED); return; }
+        if(a.getType()==AlertType.RULE){ putString(b, a.getRuleId()); putString(b, a.getIncidentId()); write(RULE_RAISED); return; }
+        putString(b, cause==null ? "" : cause.getId()); putString(b, a.getIncidentId()); write(ALERT_RAISED);
+    }
+    @Override public void incidentOpened(Incident i){
+        ByteBuffer b = begin(); b.putLong(i.getKey()); b.put((byte)i.getScope().ordinal()); putString(b, i.getScopeKey()); b.putLong(millis(i.getOpenedAt()));
+        write(INCIDENT_OPENED);
+    }
+    @Override public void alertSuppressed(Incident i){
+        ByteBuffer b = begin(); putString(b, i.getId()); write(ALERT_SUPPRESSED);
+    }
+    @Override public void incidentAcknowledged(Incident i){
+        ByteBuffer b = begin(); putString(b, i.getId()); putString(b, i.getAcknowledgedBy()); b.putLong(millis(i.getAcknowledgedAt())); write(INCIDENT_ACK);
+    }
+    @Override public void alertAcknowledged(Alert a){
+        ByteBuffer b = begin(); putString(b, a.getId()); putString(b, a.getAcknowledgedBy()); b.putLong(millis(a.getAcknowledgedAt())); write(ALERT_ACK);
+    }
+    @Override public void alertResolved(Alert a){
+        ByteBuffer b = begin(); putString(b, a.getId()); write(ALERT_RESOLVED);
+    }
+    @Override public void ticketCreated(MaintenanceTicket t){
+        ByteBuffer b = begin(); b.putLong(t.getKey()); putString(b, t.getAlertId()); putString(b, t.getDescription()); b.putLong(millis(t.getCreatedAt()));
+        putString(b, t.getIncidentId()); write(TICKET_CREATED);
+    }
+    @Override public void ticketAction(MaintenanceTicket t, String logLine){
+        ByteBuffer b = begin(); putString(b, t.getId()); putString(b, logLine); write(TICKET_ACTION);
+    }
+    @Override public void ticketClosed(MaintenanceTicket t){
+        ByteBuffer b = begin(); putString(b, t.getId()); write(TICKET_CLOSED);
+    }
+
+    private ByteBuffer begin(){ scratch.clear(); return scratch; }
+    private void write(byte type){ scratch.flip(); journal.append(type, scratch); }
+
+    /* ===== Replay ===== */
+
+    private void apply(MonitoringService svc, byte type, ByteBuffer in, Map<Long, Sensor> sensorsByKey){
+        switch(type){
+            case DEVICE: {
+                long key = in.getLong();
+                svc.addDevice(restored(new Device(key, getString(in), getString(in))));
+                break;
+            }
+            case SENSOR: {
+                long key = in.getLong();
+                Device d = svc.getDevice(getString(in));
+                Sensor s = restored(new Sensor(key, getString(in), getString(in)));
+                if(d!=null){ svc.addSensor(d, s); sensorsByKey.put(key, s); }
+                break;
+            }
+            case THRESHOLD_ADDED: svc.addThreshold(restored(getThreshold(in))); break;
+            case THRESHOLD_REMOVED: svc.removeThreshold(getString(in)); break;
+            case RULE_ADDED: svc.addRule(restored(getRule(in))); break;
+            case RULE_REMOVED: svc.removeRule(getString(in)); break;
+            case TECHNICIAN: {
+                long key = in.getLong();
+                svc.addTechnician(restored(new Technician(key, getString(in), getString(in))));
+                break;
+            }
+            case READING: {
+                Sensor s = sensorsByKey.get(in.getLong());
+                long ms = in.getLong();
+                double v = in.getDouble();
+                if(s!=null) svc.restoreReading(s, ms, v);
+                break;
+            }
+            case HEARTBEAT: {
+                Sensor s = sensorsByKey.get(in.getLong());
+                long interval = in.getLong();
+                AlertSeverity sev = AlertSeverity.values()[in.get()];
+                if(s!=null) svc.setHeartbeat(s, interval==0 ? null : Duration.ofMillis(interval), sev);
+                break;
+            }
+            case OFFLINE_RAISED: {
+                Alert a = getAlert(in, svc, AlertType.OFFLINE);
+                String incidentId = getString(in);
+                if(a==null) break;
+                if(!incidentId.isEmpty()) a.linkIncident(incidentId);
+                svc.restoreAlert(a, null);
+                svc.restoreOffline(a);
+                break;
+            }
+            case RULE_RAISED: {
+                Alert a = getAlert(in, svc, AlertType.RULE);
+                String ruleId = getString(in), incidentId = getString(in);
+                if(a==null) break;
+                a.linkRule(ruleId);
+                if(!incidentId.isEmpty()) a.linkIncident(incidentId);
+                svc.restoreAlert(a, null);
+                svc.restoreRuleMatch(a);
+                break;
+            }
+            case ALERT_RAISED: {
+                Alert a = getAlert(in, svc, AlertType.THRESHOLD);
+                Threshold cause = svc.getThreshold(getString(in));
+                String incidentId = in.hasRemaining() ? getString(in) : ""; // absent in older journals
+                if(a==null) break;
+                if(!incidentId.isEmpty()) a.linkIncident(incidentId);
+                svc.restoreAlert(a, cause);
+                break;
+            }
+            case INCIDENT_OPENED: {
+                long key = in.getLong();
+                CorrelationPolicy.Scope scope = CorrelationPolicy.Scope.values()[in.get()];
+                String scopeKey = getString(in);
+                svc.restoreIncident(restored(new Incident(key, scope, scopeKey, time(in.getLong()))));
+                break;
+            }
+            case ALERT_SUPPRESSED: {
+                Incident i = svc.getIncident(getString(in));
+                if(i!=null) i.suppress();
+                break;
+            }
+            case INCIDENT_ACK: {
+                Incident i = svc.getIncident(getString(in));
+                String by = getString(in);
+                LocalDateTime at = time(in.getLong());
+                if(i!=null && i.getStatus()==AlertStatus.NEW) svc.acknowledge(i, by, at);
+                break;
+            }
+            case ALERT_ACK: {
+                Alert a = svc.getAlert(getString(in));
+                String by = getString(in);
+                LocalDateTime at = time(in.getLong());
+                if(a!=null && a.getStatus()==AlertStatus.NEW) svc.acknowledge(a, by, at);
+                break;
+            }
+            case ALERT_RESOLVED: {
+                Alert a = svc.getAlert(getString(in));
+                if(a!=null) svc.resolve(a);
+                break;
+            }
+            case TICKET_CREATED: {
+                long key = in.getLong();
+                Alert a = svc.getAlert(getString(in));
+                String desc = getString(in);
+                LocalDateTime at = time(in.getLong());
+                String incidentId = in.hasRemaining() ? getString(in) : "";
+                if(a!=null) svc.restoreTicket(restored(new MaintenanceTicket(key, a, incidentId.isEmpty() ? null : incidentId, desc, at)));
+                break;
+            }
+            case TICKET_ACTION: {
+                MaintenanceTicket t = svc.getTicket(getString(in));
+                String line = getString(in);
+                if(t!=null) t.restoreAction(line);
+                break;
+            }
+            case TICKET_CLOSED: {
+                MaintenanceTicket t = svc.getTicket(getString(in));
+                if(t!=null && t.getStatus()!=TicketStatus.CLOSED) svc.close(t);
+                break;
+            }
+            default: throw new IllegalStateException("Unknown journal record type "+type);
+        }
+    }
+
+    /* ===== Snapshot ===== */
+
+    /**
+     * Encodes everything but the reading history; called under the service lock.
+     * @return the sensors written, in order
+     */
+    private List<Sensor> writeState(DataOutputStream out, MonitoringService svc) throws IOException {
+        List<Sensor> sensors = new ArrayList<>();
+        List<Device> devices = svc.getDevices();
+        out.writeInt(devices.size());
+        for(Device d : devices){
+            out.writeLong(d.getKey()); out.writeUTF(d.getName()); out.writeUTF(d.getLocation());
+            out.writeInt(d.getSensors().size());
+            for(Sensor s : d.getSensors()){
+                out.writeLong(s.getKey()); out.writeUTF(s.getType()); out.writeUTF(s.getUnit());
+                out.writeBoolean(s.hasReading());
+                if(s.hasReading()){ out.writeLong(s.getLastMillis()); out.writeDouble(s.getLastValue()); }
+                Heartbeat h = s.heartbeat();
+                out.writeLong(h==null ? 0 : h.intervalMillis); out.writeByte(h==null ? 0 : h.severity.ordinal());
+                sensors.add(s);
+            }
+        }
+        List<Threshold> thresholds = svc.getThresholds();
+        out.writeInt(thresholds.size());
+        for(Threshold t : thresholds){ // same encoding as the journal record
+            ByteBuffer b = begin(); putThreshold(b, t); b.flip();
+            out.writeShort(b.remaining());
+            out.write(b.array(), 0, b.remaining());
+        }
+        List<Rule> rules = svc.getRules();
+        out.writeInt(rules.size());
+        for(Rule r : rules){ // same encoding as the journal record
+            ByteBuffer b = begin(); putRule(b, r); b.flip();
+            out.writeShort(b.remaining());
+            out.write(b.array(), 0, b.remaining());
+        }
+        List<Technician> techs = svc.getTechnicians();
+        out.writeInt(techs.size());
+        for(Technician t : techs){ out.writeLong(t.getKey()); out.writeUTF(t.getName()); out.writeUTF(t.getContact()); }
+        List<Incident> incidents = svc.getIncidents(); // before alerts, which rejoin them on restore
+        out.writeInt(incidents.size());
+        for(Incident i : incidents){
+            out.writeLong(i.getKey()); out.writeByte(i.getScope().ordinal()); out.writeUTF(i.getScopeKey());
+            out.writeLong(millis(i.getOpenedAt())); out.writeByte(i.getStatus().ordinal());
+            out.writeUTF(i.getAcknowledgedBy()==null ? "" : i.getAcknowledgedBy());
+            out.writeLong(i.getAcknowledgedAt()==null ? Long.MIN_VALUE : millis(i.getAcknowledgedAt()));
+            out.writeLong(i.getSuppressed());
+        }
+        List<Alert> alerts = svc.getAlerts();
+        out.writeInt(alerts.size());
+        for(Alert a : alerts){
+            out.writeLong(a.getKey()); out.writeUTF(a.getSensorId()); out.writeUTF(a.getSensorType());
+            out.writeByte(a.getSeverity().ordinal()); out.writeLong(millis(a.getCreatedAt()));
+            Reading r = a.getReading();
+            out.writeLong(r==null ? Long.MIN_VALUE : millis(r.getTimestamp())); out.writeDouble(r==null ? Double.NaN : r.getValue());
+            out.writeByte(a.getStatus().ordinal());
+            out.writeUTF(a.getAcknowledgedBy()==null ? "" : a.getAcknowledgedBy());
+            out.writeLong(a.getAcknowledgedAt()==null ? Long.MIN_VALUE : millis(a.getAcknowledgedAt()));
+            out.writeUTF(a.getIncidentId()==null ? "" : a.getIncidentId());
+            out.writeByte(a.getType().ordinal());
+            out.writeUTF(a.getRuleId()==null ? "" : a.getRuleId());
+        }
+        List<MaintenanceTicket> tickets = svc.getTickets();
+        out.writeInt(tickets.size());
+        for(MaintenanceTicket t : tickets){
+            out.writeLong(t.getKey()); out.writeUTF(t.getAlertId()); out.writeUTF(t.getDescription());
+            out.writeLong(millis(t.getCreatedAt())); out.writeByte(t.getStatus().ordinal());
+            out.writeUTF(t.getAssignedTechId()==null ? "" : t.getAssignedTechId());
+            out.writeInt(t.getActionLogs().size());
+            for(String line : t.getActionLogs()) out.writeUTF(line);
+            out.writeUTF(t.getIncidentId()==null ? "" : t.getIncidentId());
+        }
+        Map<Sensor, Map<Threshold, Alert>> open = svc.openBreaches();
+        int n = 0;
+        for(Map<Threshold, Alert> m : open.values()) n += m.size();
+        out.writeInt(n);
+        for(Map<Threshold, Alert> m : open.values()){
+            for(Map.Entry<Threshold, Alert> e : m.entrySet()){ out.writeUTF(e.getKey().getId()); out.writeUTF(e.getValue().getId()); }
+        }
+        List<Alert> outages = new ArrayList<>();
+        for(Device d : devices) for(Sensor s : d.getSensors()) if(s.isOffline()) outages.add(s.heartbeat().offline);
+        out.writeInt(outages.size());
+        for(Alert a : outages) out.writeUTF(a.getId());
+        List<RuleEngine.Binding> matches = svc.ruleMatches();
+        out.writeInt(matches.size());
+        for(RuleEngine.Binding b : matches) out.writeUTF(b.open.getId());
+        return sensors;
+    }
+
+    /**
+     * Per sensor: its key, downsampled tiers, the compressed blocks as they are in memory, then
+     * the remaining full-resolution samples up to its cut, each oldest first.
+     */
+    private static void writeHistory(DataOutputStream out, TimeSeriesStore history, List<Sensor> sensors, long[] cuts) throws IOException {
+        out.writeInt(sensors.size());
+        HistoryWriter w = new HistoryWriter(out);
+        for(int i=0;i<cuts.length;i++){
+            out.writeLong(sensors.get(i).getKey());
+            out.writeByte(history.getTiers().size());
+            history.export(sensors.get(i).getId(), cuts[i], w);
+            if(w.error!=null) throw w.error;
+        }
+    }
+
+    /** Streams an exported series; visitors can't throw, so the first write error is kept for the caller. */
+    private static final class HistoryWriter implements TimeSeriesStore.HistoryVisitor {
+        private final DataOutputStream out;
+        IOException error;
+
+        HistoryWriter(DataOutputStream out){ this.out = out; }
+
+        @Override public void tier(long resolutionMillis, int buckets){
+            try { out.writeLong(resolutionMillis); out.writeInt(buckets); } catch(IOException ex){ if(error==null) error = ex; }
+        }
+        @Override public void accept(long start, long n, double min, double max, double sum){
+            try { out.writeLong(start); out.writeLong(n); out.writeDouble(min); out.writeDouble(max); out.writeDouble(sum); }
+            catch(IOException ex){ if(error==null) error = ex; }
+        }
+        @Override public void blocks(int count){
+            try { out.writeInt(count); } catch(IOException ex){ if(error==null) error = ex; }
+        }
+        @Override public void block(GorillaBlock b){
+            try { b.write(out); } catch(IOException ex){ if(error==null) error = ex; }
+        }
+        @Override public void samples(long count){
+            try { out.writeLong(count); } catch(IOException ex){ if(error==null) error = ex; }
+        }
+        @Override public void accept(long t, double v){
+            try { out.writeLong(t); out.writeDouble(v); } catch(IOException ex){ if(error==null) error = ex; }
+        }
+    }
+
+    private long readSnapshot(Path file, MonitoringService svc, Map<Long, Sensor> sensorsByKey) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1<<16))){
+            if(in.readInt()!=SNAPSHOT_MAGIC) throw new IOException("Not a snapshot: "+file);
+            int version = in.readInt();
+            if(version<1 || version>SNAPSHOT_VERSION) throw new IOException("Unsupported snapshot version "+version);
+            long offset = in.readLong();
+            TimeSeriesStore history = svc.getHistory();
+            for(int i=in.readInt(); i>0; i--){
+                Device d = svc.addDevice(restored(new Device(in.readLong(), in.readUTF(), in.readUTF())));
+                for(int j=in.readInt(); j>0; j--){
+                    Sensor s = svc.addSensor(d, restored(new Sensor(in.readLong(), in.readUTF(), in.readUTF())));
+                    sensorsByKey.put(s.getKey(), s);
+                    if(in.readBoolean()){
+                        long ms = in.readLong();
+                        s.record(ms, in.readDouble());
+                    }
+                    if(version>=5){
+                        long interval = in.readLong();
+                        AlertSeverity sev = AlertSeverity.values()[in.readByte()];
+                        if(interval>0) svc.setHeartbeat(s, Duration.ofMillis(interval), sev);
+                    }
+                    if(version<7) readHistory(in, version, history, s.getId());
+                }
+            }
+            for(int i=in.readInt(); i>0; i--){
+                if(version==1){ // plain fields, before window thresholds
+                    long key = in.readLong();
+                    String deviceId = in.readUTF(), type = in.readUTF();
+                    double min = in.readDouble(), max = in.readDouble();
+                    AlertSeverity sev = AlertSeverity.values()[in.readByte()];
+                    svc.addThreshold(restored(new Threshold(key, deviceId, type, Double.isNaN(min) ? null : min, Double.isNaN(max) ? null : max, sev, in.readDouble())));
+                    continue;
+                }
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                svc.addThreshold(restored(getThreshold(ByteBuffer.wrap(bytes))));
+            }
+            for(int i=version>=6 ? in.readInt() : 0; i>0; i--){
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                svc.addRule(restored(getRule(ByteBuffer.wrap(bytes))));
+            }
+            for(int i=in.readInt(); i>0; i--) svc.addTechnician(restored(new Technician(in.readLong(), in.readUTF(), in.readUTF())));
+            for(int i=version>=4 ? in.readInt() : 0; i>0; i--){
+                long key = in.readLong();
+                CorrelationPolicy.Scope scope = CorrelationPolicy.Scope.values()[in.readByte()];
+                Incident inc = restored(new Incident(key, scope, in.readUTF(), time(in.readLong())));
+                AlertStatus status = AlertStatus.values()[in.readByte()];
+                String by = in.readUTF();
+                long ackAt = in.readLong();
+                inc.restoreSuppressed(in.readLong());
+                if(status!=AlertStatus.NEW) inc.acknowledge(by.isEmpty() ? null : by, ackAt==Long.MIN_VALUE ? null : time(ackAt));
+                if(status==AlertStatus.RESOLVED) inc.resolve();
+                svc.restoreIncident(inc);
+            }
+            for(int i=in.readInt(); i>0; i--){
+                long key = in.readLong();
+                Sensor s = svc.getSensor(in.readUTF());
+                String type = in.readUTF();
+                AlertSeverity sev = AlertSeverity.values()[in.readByte()];
+                LocalDateTime created = time(in.readLong());
+                long readAt = in.readLong();
+                double value = in.readDouble();
+                AlertStatus status = AlertStatus.values()[in.readByte()];
+                String by = in.readUTF();
+                long ackAt = in.readLong();
+                String incidentId = version>=4 ? in.readUTF() : "";
+                AlertType kind = version>=5 ? AlertType.values()[in.readByte()] : AlertType.THRESHOLD;
+                String ruleId = version>=6 ? in.readUTF() : "";
+                if(s==null) continue;
+                Alert a = restored(alert(key, kind, s, readAt, value, type, sev, created));
+                if(!ruleId.isEmpty()) a.linkRule(ruleId);
+                if(!incidentId.isEmpty()) a.linkIncident(incidentId);
+                if(status!=AlertStatus.NEW) a.acknowledge(by.isEmpty() ? null : by, ackAt==Long.MIN_VALUE ? null : time(ackAt));
+                if(status==AlertStatus.RESOLVED) a.resolve();
+                svc.restoreAlert(a, null);
+            }
+            for(int i=in.readInt(); i>0; i--){
+                long key = in.readLong();
+                Alert a = svc.getAlert(in.readUTF());
+                String desc = in.readUTF();
+                LocalDateTime created = time(in.readLong());
+                TicketStatus status = TicketStatus.values()[in.readByte()];
+                String tech = in.readUTF();
+                List<String> lines = new ArrayList<>();
+                for(int j=in.readInt(); j>0; j--) lines.add(in.readUTF());
+                String incidentId = version>=4 ? in.readUTF() : "";
+                if(a==null) continue;
+                MaintenanceTicket t = restored(new MaintenanceTicket(key, a, incidentId.isEmpty() ? null : incidentId, desc, created));
+                lines.forEach(t::restoreAction);
+                if(!tech.isEmpty()) t.restoreAssignedTechId(tech);
+                if(status==TicketStatus.CLOSED) t.close();
+                svc.restoreTicket(t);
+            }
+            for(int i=in.readInt(); i>0; i--){
+                Threshold t = svc.getThreshold(in.readUTF());
+                Alert a = svc.getAlert(in.readUTF());
+                if(t!=null && a!=null) svc.restoreAlert(a, t);
+            }
+            for(int i=version>=5 ? in.readInt() : 0; i>0; i--){
+                Alert a = svc.getAlert(in.readUTF());
+                if(a!=null) svc.restoreOffline(a);
+            }
+            for(int i=version>=6 ? in.readInt() : 0; i>0; i--){
+                Alert a = svc.getAlert(in.readUTF());
+                if(a!=null) svc.restoreRuleMatch(a);
+            }
+            for(int i=version>=7 ? in.readInt() : 0; i>0; i--){
+                Sensor s = sensorsByKey.get(in.readLong());
+                if(s==null) throw new IOException("History of unknown sensor in "+file);
+                readHistory(in, version, history, s.getId());
+            }
+            return offset;
+        }
+    }
+
+    /** Restores a sensor's tiers (from version 3), compressed blocks (from version 8) and full-resolution samples. */
+    private static void readHistory(DataInputStream in, int version, TimeSeriesStore history, String sensorId) throws IOException {
+        if(version>=3) readTiers(in, history, sensorId);
+        for(int k=version>=8 ? in.readInt() : 0; k>0; k--) history.restoreBlock(sensorId, GorillaBlock.read(in));
+        for(long k=in.readLong(); k>0; k--) history.append(sensorId, in.readLong(), in.readDouble());
+    }
+
+    /** Restores stored buckets into the tier of the same resolution; tiers no longer configured are skipped. */
+    private static void readTiers(DataInputStream in, TimeSeriesStore history, String sensorId) throws IOException {
+        List<DownsampleTier> tiers = history.getTiers();
+        for(int k=in.readUnsignedByte(); k>0; k--){
+            long resolution = in.readLong();
+            int tier = -1;
+            for(int i=0;i<tiers.size();i++) if(tiers.get(i).getResolutionMillis()==resolution) tier = i;
+            for(int b=in.readInt(); b>0; b--){
+                long start = in.readLong(), n = in.readLong();
+                double min = in.readDouble(), max = in.readDouble(), sum = in.readDouble();
+                if(tier>=0) history.restoreBucket(sensorId, tier, start, n, min, max, sum);
+            }
+        }
+    }
+
+    private Path latestSnapshot() throws IOException {
+        List<Path> all = snapshots();
+        return all.isEmpty() ? null : all.get(all.size()-1);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try(Stream<Path> files = Files.list(dir)){
+            List<Path> out = new ArrayList<>();
+            files.filter(p -> {
+                String n = p.getFileName().toString();
+                return n.startsWith(SNAPSHOT_PREFIX) && n.endsWith(SNAPSHOT_SUFFIX);
+            }).forEach(out::add);
+            Collections.sort(out); // zero-padded offsets sort chronologically
+            return out;
+        }
+    }
+
+    /* ===== Encoding helpers ===== */
+
+    private static <T extends Entity> T restored(T e){
+        Entity.getIdGenerator().reserve(e.getKey());
+        return e;
+    }
+
+    private void putThreshold(ByteBuffer b, Threshold t){
+        b.putLong(t.getKey()); putString(b, t.getDeviceId()); putString(b, t.getSensorType());
+        b.putDouble(t.getMinValue()==null ? Double.NaN : t.getMinValue());
+        b.putDouble(t.getMaxValue()==null ? Double.NaN : t.getMaxValue());
+        b.put((byte)t.getSeverity().ordinal()); b.putDouble(t.getHysteresis());
+        if(t instanceof WindowThreshold){
+            WindowThreshold w = (WindowThreshold)t;
+            b.put((byte)1); b.put((byte)w.getMetric().ordinal());
+            b.put((byte)(w.getWindow().isTumbling() ? 1 : 0)); b.putLong(w.getWindow().getLengthMillis()); b.putInt(w.getWindow().getBuckets());
+        } else {
+            b.put((byte)0);
+        }
+    }
+
+    private Threshold getThreshold(ByteBuffer in){
+        long key = in.getLong();
+        String deviceId = getString(in), type = getString(in);
+        double min = in.getDouble(), max = in.getDouble();
+        AlertSeverity sev = AlertSeverity.values()[in.get()];
+        double hysteresis = in.getDouble();
+        Double lo = Double.isNaN(min) ? null : min, hi = Double.isNaN(max) ? null : max;
+        if(!in.hasRemaining() || in.get()==0) return new Threshold(key, deviceId, type, lo, hi, sev, hysteresis); // no window byte in older journals
+        WindowMetric metric = WindowMetric.values()[in.get()];
+        boolean tumbling = in.get()==1;
+        Duration length = Duration.ofMillis(in.getLong());
+        int buckets = in.getInt();
+        WindowSpec spec = tumbling ? WindowSpec.tumbling(length) : WindowSpec.sliding(length, buckets);
+        return new WindowThreshold(key, deviceId, type, metric, spec, lo, hi, sev, hysteresis);
+    }
+
+    private void putRule(ByteBuffer b, Rule r){
+        b.putLong(r.getKey()); putString(b, r.getName()); b.put((byte)r.getScope().ordinal()); putString(b, r.getScopeKey());
+        b.put((byte)r.getSeverity().ordinal()); putString(b, r.getExpression());
+    }
+
+    private Rule getRule(ByteBuffer in){
+        long key = in.getLong();
+        String name = getString(in);
+        Rule.Scope scope = Rule.Scope.values()[in.get()];
+        String scopeKey = getString(in);
+        AlertSeverity sev = AlertSeverity.values()[in.get()];
+        return new Rule(key, name, scope, scopeKey, getString(in), sev);
+    }
+
+    private void putAlert(ByteBuffer b, Alert a){
+        b.putLong(a.getKey()); putString(b, a.getSensorId()); putString(b, a.getSensorType());
+        b.put((byte)a.getSeverity().ordinal()); b.putLong(millis(a.getCreatedAt()));
+        Reading r = a.getReading(); // none for a sensor that went offline before ever reporting
+        b.putLong(r==null ? Long.MIN_VALUE : millis(r.getTimestamp())); b.putDouble(r==null ? Double.NaN : r.getValue());
+    }
+
+    /** @return null if the alert's sensor is unknown */
+    private Alert getAlert(ByteBuffer in, MonitoringService svc, AlertType kind){
+        long key = in.getLong();
+        String sensorId = getString(in), type = getString(in);
+        AlertSeverity sev = AlertSeverity.values()[in.get()];
+        LocalDateTime created = time(in.getLong());
+        long readAt = in.getLong();
+        double value = in.getDouble();
+        Sensor s = svc.getSensor(sensorId);
+        if(s==null) return null;
+        return restored(alert(key, kind, s, readAt, value, type, sev, created));
+    }
+
+    private Alert alert(long key, AlertType kind, Sensor s, long readAt, double value, String type, AlertSeverity sev, LocalDateTime created){
+        Reading r = readAt==Long.MIN_VALUE ? null : new Reading(s.getDeviceId(), s.getId(), time(readAt), value);
+        return new Alert(key, kind, s.getDeviceId(), s.getId(), type, r, sev, created);
+    }
+
+    private static void putString(ByteBuffer b, String s){
+        byte[] bytes = (s==null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > 0xFFFF) throw new IllegalArgumentException("String too long for journal");
+        b.putShort((short)bytes.length);
+        b.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in){
+        int len = Short.toUnsignedInt(in.getShort());
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long millis(LocalDateTime t){ return t.atZone(zone).toInstant().toEpochMilli(); }
+    private LocalDateTime time(long ms){ return LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), zone); }
+}
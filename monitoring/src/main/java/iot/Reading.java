@@ -9,6 +9,11 @@ public class Reading extends Entity {
     private final double value;
 
     public Reading(String deviceId, String sensorId, LocalDateTime timestamp, double value){
+        this(nextKey(), deviceId, sensorId, timestamp, value);
+    }
+
+    Reading(long key, String deviceId, String sensorId, LocalDateTime timestamp, double value){
+        super(key);
         if(deviceId==null||deviceId.isBlank()) throw new IllegalArgumentException("deviceId required");
         if(sensorId==null||sensorId.isBlank()) throw new IllegalArgumentException("sensorId required");
         if(timestamp==null) throw new IllegalArgumentException("timestamp required");
@@ -0,0 +1,16 @@
+package iot;
+
+/**
+ * Destination for readings produced outside the console (network server, replays).
+ * Implemented by {@link IngestionPipeline} and {@link ShardedEngine}.
+ */
+public interface ReadingSink {
+    /** @return the registered sensor, or null if unknown */
+    Sensor findSensor(String sensorId);
+
+    /** Publishes a reading, blocking while the sink is full. */
+    void publish(Sensor s, long epochMillis, double value);
+
+    /** @return false if the sink is full */
+    boolean tryPublish(Sensor s, long epochMillis, double value);
+}
@@ -0,0 +1,69 @@
+package iot;
+
+/**
+ * A condition over the latest values of several sensor types of one device, e.g.
+ * {@code TEMPERATURE > 80 AND PRESSURE < 2}, checked on every device in its scope: a single
+ * device, every device at a location, or the whole fleet. The expression is parsed and
+ * compiled once (see {@link RuleExpression}). A rule raises one {@link AlertType#RULE}
+ * alert per device when its condition becomes true, and re-arms once it is false again.
+ */
+public class Rule extends Entity {
+    /** Which devices a rule is checked on. */
+    public enum Scope { DEVICE, LOCATION, FLEET }
+
+    private final String name;
+    private final Scope scope;
+    private final String scopeKey;             // device id or location; "" for the fleet
+    private final RuleExpression condition;
+    private final AlertSeverity severity;
+
+    Rule(long key, String name, Scope scope, String scopeKey, String expression, AlertSeverity severity){
+        super(key);
+        if(name==null || name.isBlank()) throw new IllegalArgumentException("Rule name required");
+        if(scope==null) throw new IllegalArgumentException("scope required");
+        if(scope!=Scope.FLEET && (scopeKey==null || scopeKey.isBlank())) throw new IllegalArgumentException(scope.name().toLowerCase()+" required");
+        this.name = name.trim();
+        this.scope = scope;
+        this.scopeKey = scope==Scope.FLEET ? "" : scopeKey.trim();
+        this.condition = RuleExpression.parse(expression);
+        this.severity = severity==null ? AlertSeverity.MEDIUM : severity;
+    }
+
+    /** Checked on one device only. */
+    public static Rule onDevice(String deviceId, String name, String expression, AlertSeverity severity){
+        return new Rule(nextKey(), name, Scope.DEVICE, deviceId, expression, severity);
+    }
+
+    /** Checked on each device whose location equals {@code location} when it is registered. */
+    public static Rule atLocation(String location, String name, String expression, AlertSeverity severity){
+        return new Rule(nextKey(), name, Scope.LOCATION, location, expression, severity);
+    }
+
+    /** Checked on every device. */
+    public static Rule onFleet(String name, String expression, AlertSeverity severity){
+        return new Rule(nextKey(), name, Scope.FLEET, "", expression, severity);
+    }
+
+    public String getName(){ return name; }
+    public Scope getScope(){ return scope; }
+    /** The device id or location the rule is scoped to; empty for {@link Scope#FLEET}. */
+    public String getScopeKey(){ return scopeKey; }
+    /** The expression as written. */
+    public String getExpression(){ return condition.toString(); }
+    public AlertSeverity getSeverity(){ return severity; }
+
+    RuleExpression condition(){ return condition; }
+
+    boolean appliesTo(Device d){
+        switch(scope){
+            case DEVICE: return scopeKey.equals(d.getId());
+            case LOCATION: return scopeKey.equals(d.getLocation());
+            default: return true;
+        }
+    }
+
+    @Override public String toString(){
+        return getId()+" | "+name+" | "+(scope==Scope.FLEET ? "fleet" : scope.name().toLowerCase()+"="+scopeKey)+
+               " | "+condition+" -> "+severity;
+    }
+}
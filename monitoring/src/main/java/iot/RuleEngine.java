@@ -0,0 +1,109 @@
+package iot;
+
+import java.util.*;
+
+/**
+ * Rules bound to the devices they apply to. Binding resolves each slot of a rule's
+ * expression to the device's sensors of that type once, and registers the binding on
+ * those sensors, so a reading re-evaluates only the rules that read its sensor: sensors
+ * no rule depends on pay nothing, however many rules there are. Bindings follow devices
+ * and sensors as they are registered; a device's location never changes afterwards, so
+ * location-scoped bindings made then stay valid. Guarded by the service lock.
+ */
+final class RuleEngine {
+
+    /** A rule applied to one device: that device's sensors per slot, and the open match. */
+    static final class Binding {
+        static final Binding[] NONE = new Binding[0];
+
+        final Rule rule;
+        final Device device;
+        final Sensor[][] sensors;
+        Alert open; // alert of the current match; null while the condition is false
+
+        Binding(Rule rule, Device device){
+            this.rule = rule;
+            this.device = device;
+            this.sensors = new Sensor[rule.condition().slots()][];
+            Arrays.fill(sensors, new Sensor[0]);
+        }
+
+        boolean matches(){ return rule.condition().eval(sensors); }
+    }
+
+    private final Map<String, Rule> rules = new LinkedHashMap<>();
+    private final Map<Rule, List<Binding>> byRule = new HashMap<>();
+    private final Map<String, List<Binding>> byDevice = new HashMap<>();
+
+    /** Binds a new rule to the devices it applies to; returns the bindings. */
+    List<Binding> add(Rule r, Collection<Device> devices){
+        if(rules.containsKey(r.getId())) throw new IllegalArgumentException("Rule already added: "+r.getId());
+        rules.put(r.getId(), r);
+        List<Binding> bound = new ArrayList<>();
+        byRule.put(r, bound);
+        for(Device d : devices) if(r.appliesTo(d)) bind(r, d);
+        return bound;
+    }
+
+    /** Unbinds a rule from its devices; returns the bindings dropped, or null if unknown. */
+    List<Binding> remove(String id){
+        Rule r = rules.remove(id);
+        if(r==null) return null;
+        List<Binding> bound = byRule.remove(r);
+        for(Binding b : bound){
+            for(Sensor[] ss : b.sensors) for(Sensor s : ss) s.removeRule(b);
+            List<Binding> of = byDevice.get(b.device.getId());
+            of.remove(b);
+            if(of.isEmpty()) byDevice.remove(b.device.getId());
+        }
+        return bound;
+    }
+
+    /** Binds the rules in scope of a newly registered device. */
+    void deviceAdded(Device d){
+        for(Rule r : rules.values()) if(r.appliesTo(d)) bind(r, d);
+    }
+
+    /** Adds a newly registered sensor to the bindings of its device that read its type. */
+    void sensorAdded(Device d, Sensor s){
+        List<Binding> of = byDevice.get(d.getId());
+        if(of==null) return;
+        for(Binding b : of) attach(b, s);
+    }
+
+    private void bind(Rule r, Device d){
+        Binding b = new Binding(r, d);
+        for(Sensor s : d.getSensors()) attach(b, s);
+        byRule.get(r).add(b);
+        byDevice.computeIfAbsent(d.getId(), k -> new ArrayList<>()).add(b);
+    }
+
+    private static void attach(Binding b, Sensor s){
+        int slot = b.rule.condition().slotOf(s.getTypeKey());
+        if(slot<0) return;
+        Sensor[] cur = b.sensors[slot];
+        for(Sensor x : cur) if(x==s) return;
+        Sensor[] next = Arrays.copyOf(cur, cur.length+1);
+        next[cur.length] = s;
+        b.sensors[slot] = next;
+        s.addRule(b);
+    }
+
+    Rule get(String id){ return rules.get(id); }
+    Collection<Rule> all(){ return rules.values(); }
+
+    /** The binding of a rule to a device, or null. */
+    Binding binding(String ruleId, String deviceId){
+        List<Binding> of = byDevice.get(deviceId);
+        if(of==null) return null;
+        for(Binding b : of) if(b.rule.getId().equals(ruleId)) return b;
+        return null;
+    }
+
+    /** Every binding with an open match. */
+    List<Binding> matching(){
+        List<Binding> out = new ArrayList<>();
+        for(List<Binding> of : byRule.values()) for(Binding b : of) if(b.open!=null) out.add(b);
+        return out;
+    }
+}
@@ -0,0 +1,327 @@
+package iot;
+
+import java.util.*;
+
+/**
+ * A rule condition, parsed once into a tree of nodes specialized by operator:
+ * <pre>
+ *   expr       := and ( OR and )*
+ *   and        := unary ( AND unary )*
+ *   unary      := NOT unary | '(' expr ')' | comparison
+ *   comparison := TYPE ( &lt; | &lt;= | &gt; | &gt;= | = | == | != ) number
+ * </pre>
+ * Keywords and sensor types are case-insensitive ({@code && || !} work too); a type that is
+ * not a plain word can be double-quoted. Each distinct type is a slot, bound per device to
+ * that device's sensors of the type (see {@link RuleEngine}). A comparison holds when any of
+ * them has a latest value satisfying it.
+ * <p>
+ * Logic is three-valued: a comparison is <em>unknown</em> while none of its sensors has
+ * reported, and stays unknown under NOT, so {@code NOT TEMPERATURE > 80} doesn't hold on a
+ * device whose temperature was never read. AND is false if any term is false, else unknown
+ * if any is unknown; OR is true if any term is true, else unknown if any is unknown. A rule
+ * matches only when its expression is true.
+ * Evaluation reads the sensors' primitive slots, short-circuits and allocates nothing.
+ */
+final class RuleExpression {
+    private final String source;
+    private final String[] typeKeys;
+    private final Node root;
+
+    private RuleExpression(String source, String[] typeKeys, Node root){
+        this.source = source; this.typeKeys = typeKeys; this.root = root;
+    }
+
+    static RuleExpression parse(String source){
+        if(source==null || source.isBlank()) throw new IllegalArgumentException("Rule expression required");
+        Parser p = new Parser(source.trim());
+        Node root = p.or();
+        if(p.more()) throw p.error("unexpected '"+p.rest()+"'");
+        return new RuleExpression(source.trim(), p.types.toArray(new String[0]), root);
+    }
+
+    /** Normalized sensor types the expression reads, indexed by slot. */
+    int slots(){ return typeKeys.length; }
+    String typeKey(int slot){ return typeKeys[slot]; }
+
+    /** Slot of a normalized sensor type, or -1 if the expression doesn't read it. */
+    int slotOf(String typeKey){
+        for(int i=0;i<typeKeys.length;i++) if(typeKeys[i].equals(typeKey)) return i;
+        return -1;
+    }
+
+    /** @param sensors a device's sensors per slot; true only if the expression is true (not unknown) */
+    boolean eval(Sensor[][] sensors){ return root.eval(sensors)==TRUE; }
+
+    @Override public String toString(){ return source; }
+
+    /* ===== Compiled nodes ===== */
+
+    /** Truth values of the three-valued logic. */
+    static final int FALSE = 0, TRUE = 1, UNKNOWN = 2;
+
+    abstract static class Node {
+        /** @return {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN} */
+        abstract int eval(Sensor[][] sensors);
+    }
+
+    private static final class And extends Node {
+        private final Node[] terms;
+        And(Node[] terms){ this.terms = terms; }
+        @Override int eval(Sensor[][] sensors){
+            int r = TRUE;
+            for(Node t : terms){
+                int v = t.eval(sensors);
+                if(v==FALSE) return FALSE;
+                if(v==UNKNOWN) r = UNKNOWN;
+            }
+            return r;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node[] terms;
+        Or(Node[] terms){ this.terms = terms; }
+        @Override int eval(Sensor[][] sensors){
+            int r = FALSE;
+            for(Node t : terms){
+                int v = t.eval(sensors);
+                if(v==TRUE) return TRUE;
+                if(v==UNKNOWN) r = UNKNOWN;
+            }
+            return r;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node term;
+        Not(Node term){ this.term = term; }
+        @Override int eval(Sensor[][] sensors){
+            int v = term.eval(sensors);
+            return v==UNKNOWN ? UNKNOWN : TRUE-v;
+        }
+    }
+
+    /**
+     * A comparison of one slot against a constant; one subclass per operator. Unknown
+     * while no sensor of the slot has a reading.
+     */
+    private abstract static class Compare extends Node {
+        final int slot;
+        final double c;
+        Compare(int slot, double c){ this.slot = slot; this.c = c; }
+    }
+
+    private static final class Above extends Compare {
+        Above(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()>c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    private static final class AtLeast extends Compare {
+        AtLeast(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()>=c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    private static final class Below extends Compare {
+        Below(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()<c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    private static final class AtMost extends Compare {
+        AtMost(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()<=c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    private static final class Equal extends Compare {
+        Equal(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()==c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    private static final class NotEqual extends Compare {
+        NotEqual(int slot, double c){ super(slot, c); }
+        @Override int eval(Sensor[][] sensors){
+            int r = UNKNOWN;
+            for(Sensor s : sensors[slot]){
+                if(!s.hasReading()) continue;
+                if(s.getLastValue()!=c) return TRUE;
+                r = FALSE;
+            }
+            return r;
+        }
+    }
+
+    /* ===== Parsing ===== */
+
+    /** Recursive descent over the grammar above; builds nodes as it goes. */
+    private static final class Parser {
+        private static final String[] OPERATORS = {"<=", ">=", "==", "!=", "<", ">", "="}; // longest first
+
+        private final String src;
+        private int pos;
+        final List<String> types = new ArrayList<>();
+
+        Parser(String src){ this.src = src; }
+
+        Node or(){
+            List<Node> terms = new ArrayList<>();
+            terms.add(and());
+            while(keyword("OR") || symbol("||")) terms.add(and());
+            return terms.size()==1 ? terms.get(0) : new Or(terms.toArray(new Node[0]));
+        }
+
+        Node and(){
+            List<Node> terms = new ArrayList<>();
+            terms.add(unary());
+            while(keyword("AND") || symbol("&&")) terms.add(unary());
+            return terms.size()==1 ? terms.get(0) : new And(terms.toArray(new Node[0]));
+        }
+
+        Node unary(){
+            if(keyword("NOT") || (!lookingAt("!=") && symbol("!"))) return new Not(unary());
+            if(symbol("(")){
+                Node n = or();
+                if(!symbol(")")) throw error("expected ')'");
+                return n;
+            }
+            return comparison();
+        }
+
+        Node comparison(){
+            int slot = slot(Sensor.typeKey(type()));
+            String op = operator();
+            double c = number();
+            switch(op){
+                case ">": return new Above(slot, c);
+                case ">=": return new AtLeast(slot, c);
+                case "<": return new Below(slot, c);
+                case "<=": return new AtMost(slot, c);
+                case "!=": return new NotEqual(slot, c);
+                default: return new Equal(slot, c);
+            }
+        }
+
+        private int slot(String typeKey){
+            int i = types.indexOf(typeKey);
+            if(i>=0) return i;
+            types.add(typeKey);
+            return types.size()-1;
+        }
+
+        private String type(){
+            skipSpaces();
+            if(symbol("\"")){
+                int end = src.indexOf('"', pos);
+                if(end<0) throw error("unterminated quoted type");
+                String t = src.substring(pos, end);
+                pos = end+1;
+                if(t.isBlank()) throw error("empty sensor type");
+                return t;
+            }
+            int start = pos;
+            while(pos<src.length() && isWordChar(src.charAt(pos))) pos++;
+            String t = src.substring(start, pos);
+            if(t.isEmpty()) throw error(more() ? "expected a sensor type at '"+rest()+"'" : "expected a sensor type");
+            if(t.equalsIgnoreCase("AND") || t.equalsIgnoreCase("OR") || t.equalsIgnoreCase("NOT")){
+                pos = start;
+                throw error("expected a sensor type, found "+t);
+            }
+            return t;
+        }
+
+        private String operator(){
+            for(String op : OPERATORS){
+                if(symbol(op)) return op.equals("==") ? "=" : op;
+            }
+            throw error("expected a comparison operator");
+        }
+
+        private double number(){
+            skipSpaces();
+            int start = pos;
+            if(pos<src.length() && (src.charAt(pos)=='-' || src.charAt(pos)=='+')) pos++;
+            while(pos<src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos)=='.')) pos++;
+            if(pos<src.length() && (src.charAt(pos)=='e' || src.charAt(pos)=='E')){
+                pos++;
+                if(pos<src.length() && (src.charAt(pos)=='-' || src.charAt(pos)=='+')) pos++;
+                while(pos<src.length() && Character.isDigit(src.charAt(pos))) pos++;
+            }
+            try {
+                double v = Double.parseDouble(src.substring(start, pos));
+                if(Double.isInfinite(v)) throw new NumberFormatException();
+                return v;
+            } catch(NumberFormatException ex){
+                pos = start;
+                throw error("expected a number");
+            }
+        }
+
+        /** Consumes a case-insensitive keyword that is not the prefix of a longer word. */
+        private boolean keyword(String kw){
+            skipSpaces();
+            int end = pos+kw.length();
+            if(!src.regionMatches(true, pos, kw, 0, kw.length())) return false;
+            if(end<src.length() && isWordChar(src.charAt(end))) return false;
+            pos = end;
+            return true;
+        }
+
+        private boolean symbol(String s){
+            if(!lookingAt(s)) return false;
+            pos += s.length();
+            return true;
+        }
+
+        private boolean lookingAt(String s){
+            skipSpaces();
+            return src.startsWith(s, pos);
+        }
+
+        private static boolean isWordChar(char c){ return Character.isLetterOrDigit(c) || c=='_'; }
+        private void skipSpaces(){ while(pos<src.length() && Character.isWhitespace(src.charAt(pos))) pos++; }
+        boolean more(){ skipSpaces(); return pos<src.length(); }
+        String rest(){ return src.substring(pos); }
+
+        IllegalArgumentException error(String msg){
+            return new IllegalArgumentException("Invalid rule expression at column "+(pos+1)+": "+msg+" in \""+src+"\"");
+        }
+    }
+}
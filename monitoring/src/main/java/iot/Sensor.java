@@ -0,0 +1,151 @@
+package iot;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A sensor and its latest reading. The reading is kept as a primitive (time, value) slot
+ * overwritten on every ingest, so recording it allocates nothing; the {@link Reading} and
+ * {@link LocalDateTime} views are built on first request (an alert, a dashboard) and
+ * cached until the next reading. Guarded by the owning service's lock.
+ */
+public class Sensor extends Entity {
+    private static final long NO_READING = Long.MIN_VALUE;
+
+    private final String type;           // e.g., TEMPERATURE, HUMIDITY
+    private final String unit;           // e.g., °C, %
+    private final String typeKey;        // normalized type for threshold lookup
+    private String deviceId;             // owning device, set when attached
+    private long lastMillis = NO_READING;
+    private double lastValue;
+    private Reading lastReading;         // view of the slot above, built lazily
+    private WindowAggregate[] windows = new WindowAggregate[0]; // maintained for window thresholds
+    private volatile boolean priority;   // has a HIGH or CRITICAL threshold or rule
+    private Heartbeat heartbeat;         // expected reporting interval, if monitored
+    private RuleEngine.Binding[] rules = RuleEngine.Binding.NONE; // rules that read this sensor
+
+    public Sensor(String type, String unit){
+        this(nextKey(), type, unit);
+    }
+
+    Sensor(long key, String type, String unit){
+        super(key);
+        if(type==null || type.isBlank()) throw new IllegalArgumentException("Sensor type required");
+        this.type = type.trim();
+        this.unit = (unit==null) ? "" : unit.trim();
+        this.typeKey = typeKey(this.type);
+    }
+
+    /** Normalizes a sensor type so lookups can use plain equals instead of equalsIgnoreCase. */
+    static String typeKey(String type){ return type.trim().toUpperCase(Locale.ROOT); }
+
+    public String getType(){ return type; }
+    public String getTypeKey(){ return typeKey; }
+    public String getUnit(){ return unit; }
+
+    public String getDeviceId(){ return deviceId; }
+    void attach(String deviceId){
+        if(this.deviceId!=null && !this.deviceId.equals(deviceId)) throw new IllegalStateException("Sensor already attached to "+this.deviceId);
+        this.deviceId = deviceId;
+    }
+
+    /** True while the sensor has a HIGH or CRITICAL threshold or rule; its readings are evaluated first under load. */
+    public boolean isPriority(){ return priority; }
+    void setPriority(boolean priority){ this.priority = priority; }
+
+    /** Expected reporting interval, or null if the sensor isn't heartbeat-monitored. */
+    public Duration getHeartbeatInterval(){ return heartbeat==null ? null : Duration.ofMillis(heartbeat.intervalMillis); }
+    /** True while the sensor has missed its heartbeat deadline and not reported since. */
+    public boolean isOffline(){ return heartbeat!=null && heartbeat.offline!=null; }
+    Heartbeat heartbeat(){ return heartbeat; }
+    void setHeartbeat(Heartbeat h){ this.heartbeat = h; }
+
+    /** Bindings of the rules that read this sensor; shared, callers must not modify it. */
+    RuleEngine.Binding[] rules(){ return rules; }
+
+    void addRule(RuleEngine.Binding b){
+        RuleEngine.Binding[] next = Arrays.copyOf(rules, rules.length+1);
+        next[rules.length] = b;
+        rules = next;
+    }
+
+    void removeRule(RuleEngine.Binding b){
+        for(int i=0;i<rules.length;i++){
+            if(rules[i]!=b) continue;
+            RuleEngine.Binding[] next = new RuleEngine.Binding[rules.length-1];
+            System.arraycopy(rules, 0, next, 0, i);
+            System.arraycopy(rules, i+1, next, i, rules.length-i-1);
+            rules = next;
+            return;
+        }
+    }
+
+    public boolean hasReading(){ return lastMillis!=NO_READING; }
+    /** Epoch millis of the latest reading; meaningful only if {@link #hasReading()}. */
+    public long getLastMillis(){ return lastMillis; }
+    public double getLastValue(){ return lastValue; }
+
+    /** Time of the latest reading in the system zone, or null if none. */
+    public LocalDateTime getLastSeen(){
+        if(lastMillis==NO_READING) return null;
+        Reading r = lastReading;
+        return r!=null ? r.getTimestamp() : LocalDateTime.ofInstant(Instant.ofEpochMilli(lastMillis), ZoneId.systemDefault());
+    }
+
+    /** The latest reading, or null if none. */
+    public Reading getLastReading(){
+        if(lastMillis==NO_READING) return null;
+        Reading r = lastReading;
+        if(r==null){
+            r = new Reading(deviceId, getId(), LocalDateTime.ofInstant(Instant.ofEpochMilli(lastMillis), ZoneId.systemDefault()), lastValue);
+            lastReading = r;
+        }
+        return r;
+    }
+
+    /** Overwrites the latest reading; allocation-free. */
+    void record(long epochMillis, double value){
+        this.lastMillis = epochMillis;
+        this.lastValue = value;
+        this.lastReading = null;
+    }
+
+    /** Aggregate for a window spec, or null if no window threshold needs one. */
+    public WindowAggregate getWindow(WindowSpec spec){
+        for(WindowAggregate w : windows) if(w.getSpec().equals(spec)) return w;
+        return null;
+    }
+
+    /** Starts maintaining a window (samples before this call are not included). */
+    WindowAggregate ensureWindow(WindowSpec spec){
+        WindowAggregate w = getWindow(spec);
+        if(w!=null) return w;
+        w = new WindowAggregate(spec);
+        WindowAggregate[] next = Arrays.copyOf(windows, windows.length+1);
+        next[windows.length] = w;
+        windows = next;
+        return w;
+    }
+
+    /** Stops maintaining a window; a later {@link #ensureWindow} starts it empty. */
+    void dropWindow(WindowSpec spec){
+        for(int i=0;i<windows.length;i++){
+            if(!windows[i].getSpec().equals(spec)) continue;
+            WindowAggregate[] next = new WindowAggregate[windows.length-1];
+            System.arraycopy(windows, 0, next, 0, i);
+            System.arraycopy(windows, i+1, next, i, next.length-i);
+            windows = next;
+            return;
+        }
+    }
+
+    void recordWindows(long epochMillis, double value){
+        for(WindowAggregate w : windows) w.add(epochMillis, value);
+    }
+
+    @Override public String toString(){ return getId()+" | "+type+" ("+unit+")"; }
+}
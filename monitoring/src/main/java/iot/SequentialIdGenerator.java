@@ -0,0 +1,17 @@
+package iot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counter; deterministic across runs, useful for tests and replays.
+ */
+public class SequentialIdGenerator implements IdGenerator {
+    private final AtomicLong next;
+
+    public SequentialIdGenerator(){ this(1); }
+    public SequentialIdGenerator(long start){ this.next = new AtomicLong(start); }
+
+    @Override public long nextId(){ return next.getAndIncrement(); }
+
+    @Override public void reserve(long usedId){ next.accumulateAndGet(usedId+1, Math::max); }
+}
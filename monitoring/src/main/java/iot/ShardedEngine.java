@@ -0,0 +1,311 @@
+package iot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Partitions devices across N independent shards by hash of device id.
+ * Each shard is its own {@link MonitoringService} (devices, sensors, thresholds, alerts,
+ * tickets) fed by its own {@link IngestionPipeline}, whose consumer thread is the only
+ * writer of readings for that shard. Readings are routed to the owning shard, so hot
+ * paths never share state or contend across shards; per-shard locks are uncontended
+ * except for occasional control/dashboard calls.
+ * <p>
+ * Reads are consistent per shard (see {@link #read(int, Function)}); cross-shard lists
+ * are the concatenation of per-shard snapshots.
+ */
+public class ShardedEngine implements ReadingSink, AutoCloseable {
+    private final MonitoringService[] shards;
+    private final IngestionPipeline[] pipelines;
+    private final Map<String, Sensor> sensors = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
+
+    /** One shard per available core. */
+    public ShardedEngine(){ this(Runtime.getRuntime().availableProcessors()); }
+
+    public ShardedEngine(int shardCount){ this(shardCount, 1<<16, 1024, Duration.ofMillis(1)); }
+
+    public ShardedEngine(int shardCount, int ringCapacity, int batchSize, Duration flushLatency){
+        this(shardCount, ringCapacity, batchSize, flushLatency, OverloadPolicy.BLOCK);
+    }
+
+    /** @param policy what each shard's pipeline does when it falls behind */
+    public ShardedEngine(int shardCount, int ringCapacity, int batchSize, Duration flushLatency, OverloadPolicy policy){
+        this(shardCount, ringCapacity, batchSize, flushLatency, policy, TimeSeriesStore::new);
+    }
+
+    /** @param history creates each shard's reading history; its retention dominates heap use in large fleets */
+    public ShardedEngine(int shardCount, int ringCapacity, int batchSize, Duration flushLatency, OverloadPolicy policy,
+                         Supplier<TimeSeriesStore> history){
+        if(shardCount<1) throw new IllegalArgumentException("shardCount must be >= 1");
+        this.shards = new MonitoringService[shardCount];
+        this.pipelines = new IngestionPipeline[shardCount];
+        for(int i=0;i<shardCount;i++){
+            shards[i] = new MonitoringService(history.get(), metrics);
+            pipelines[i] = new IngestionPipeline(shards[i], ringCapacity, batchSize, flushLatency, "shard-"+i, policy);
+        }
+    }
+
+    public int getShardCount(){ return shards.length; }
+
+    /** Metrics shared by all shards. */
+    public Metrics getMetrics(){ return metrics; }
+
+    /** Shard index that owns a device. */
+    public int shardOf(String deviceId){
+        int h = deviceId.hashCode();
+        return Math.floorMod(h ^ (h>>>16), shards.length);
+    }
+
+    public MonitoringService shard(int index){ return shards[index]; }
+    private MonitoringService owner(String deviceId){ return shards[shardOf(deviceId)]; }
+
+    /* ===== Control ===== */
+    public Device addDevice(Device d){
+        if(d==null) throw new IllegalArgumentException("Device null");
+        return owner(d.getId()).addDevice(d);
+    }
+
+    public Sensor addSensor(Device d, Sensor s){
+        owner(d.getId()).addSensor(d, s);
+        sensors.put(s.getId(), s);
+        return s;
+    }
+
+    public Threshold addThreshold(Threshold t){
+        if(t==null) throw new IllegalArgumentException("Threshold null");
+        return owner(t.getDeviceId()).addThreshold(t);
+    }
+
+    public Threshold removeThreshold(String id){
+        for(MonitoringService s : shards){
+            Threshold t = s.removeThreshold(id);
+            if(t!=null) return t;
+        }
+        return null;
+    }
+
+    /**
+     * A device-scoped rule goes to the device's shard; location and fleet rules are added to
+     * every shard (rules are immutable, so the shards share the object), each checking it on
+     * its own devices.
+     */
+    public Rule addRule(Rule r){
+        if(r==null) throw new IllegalArgumentException("Rule null");
+        if(r.getScope()==Rule.Scope.DEVICE) return owner(r.getScopeKey()).addRule(r);
+        for(MonitoringService s : shards) s.addRule(r);
+        return r;
+    }
+
+    public Rule removeRule(String id){
+        Rule removed = null;
+        for(MonitoringService s : shards){
+            Rule r = s.removeRule(id);
+            if(r!=null) removed = r;
+        }
+        return removed;
+    }
+
+    public List<Rule> getRules(){
+        Map<String, Rule> all = new LinkedHashMap<>();
+        for(MonitoringService s : shards) for(Rule r : s.getRules()) all.putIfAbsent(r.getId(), r);
+        return new ArrayList<>(all.values());
+    }
+
+    /** See {@link MonitoringService#setHeartbeat(Sensor, Duration, AlertSeverity)}. */
+    public void setHeartbeat(Sensor s, Duration interval, AlertSeverity severity){
+        if(s==null || s.getDeviceId()==null) throw new IllegalArgumentException("Sensor must be attached to a device");
+        owner(s.getDeviceId()).setHeartbeat(s, interval, severity);
+    }
+
+    /** Registers a listener on every shard; it is called from shard consumer threads. */
+    public void onAlert(Consumer<Alert> listener){
+        for(MonitoringService s : shards) s.onAlert(listener);
+    }
+
+    /** Registers an incident listener on every shard; see {@link MonitoringService#onIncident}. */
+    public void onIncident(Consumer<Incident> listener){
+        for(MonitoringService s : shards) s.onIncident(listener);
+    }
+
+    /**
+     * Sets the correlation policy of every shard. Incidents never span shards, so with
+     * {@link CorrelationPolicy.Scope#LOCATION} a location whose devices live on several
+     * shards gets one incident per shard.
+     */
+    public void setCorrelationPolicy(CorrelationPolicy policy){
+        for(MonitoringService s : shards) s.setCorrelationPolicy(policy);
+    }
+
+    /* ===== Readings ===== */
+    @Override public Sensor findSensor(String sensorId){ return sensors.get(sensorId); }
+
+    @Override public void publish(Sensor s, long epochMillis, double value){
+        pipelines[shardOf(s.getDeviceId())].publish(s, epochMillis, value);
+    }
+
+    public void publish(String sensorId, long epochMillis, double value){
+        Sensor s = sensors.get(sensorId);
+        if(s==null) throw new IllegalArgumentException("Unknown sensor "+sensorId);
+        publish(s, epochMillis, value);
+    }
+
+    /** @return false if the owning shard's lane is full (only when blocking) */
+    @Override public boolean tryPublish(Sensor s, long epochMillis, double value){
+        return pipelines[shardOf(s.getDeviceId())].tryPublish(s, epochMillis, value);
+    }
+
+    /** Waits until every shard has processed the readings published before this call. */
+    public void flush(){
+        for(IngestionPipeline p : pipelines) p.flush();
+    }
+
+    public long getProcessedCount(){
+        long n = 0;
+        for(IngestionPipeline p : pipelines) n += p.getProcessedCount();
+        return n;
+    }
+
+    public long getShedCount(){
+        long n = 0;
+        for(IngestionPipeline p : pipelines) n += p.getShedCount();
+        return n;
+    }
+
+    public long getConflatedCount(){
+        long n = 0;
+        for(IngestionPipeline p : pipelines) n += p.getConflatedCount();
+        return n;
+    }
+
+    public long getFailedCount(){
+        long n = 0;
+        for(IngestionPipeline p : pipelines) n += p.getFailedCount();
+        return n;
+    }
+
+    public long getBacklog(){
+        long n = 0;
+        for(IngestionPipeline p : pipelines) n += p.getBacklog();
+        return n;
+    }
+
+    /* ===== Alerts & tickets (routed by owning device) ===== */
+    public List<Alert> generateAlerts(){
+        List<Alert> out = new ArrayList<>();
+        for(MonitoringService s : shards) out.addAll(s.generateAlerts());
+        return out;
+    }
+
+    /** Raises OFFLINE alerts on every shard; see {@link MonitoringService#checkHeartbeats()}. */
+    public List<Alert> checkHeartbeats(){
+        List<Alert> out = new ArrayList<>();
+        for(MonitoringService s : shards) out.addAll(s.checkHeartbeats());
+        return out;
+    }
+
+    public int getOfflineSensorCount(){
+        int n = 0;
+        for(MonitoringService s : shards) n += s.getOfflineSensorCount();
+        return n;
+    }
+
+    public void acknowledge(Alert a, String by){ owner(a.getDeviceId()).acknowledge(a, by); }
+    public MaintenanceTicket createTicket(Alert a, String description){ return owner(a.getDeviceId()).createTicket(a, description); }
+    public void addAction(MaintenanceTicket t, String action, Technician by){ owner(t.getDeviceId()).addAction(t, action, by); }
+    public void closeTicket(MaintenanceTicket t){ owner(t.getDeviceId()).closeTicket(t); }
+    public void acknowledge(Incident i, String by){ ownerOf(i).acknowledge(i, by); }
+    public MaintenanceTicket createTicket(Incident i, String description){ return ownerOf(i).createTicket(i, description); }
+
+    private MonitoringService ownerOf(Incident i){
+        for(MonitoringService s : shards) if(s.getIncident(i.getId())==i) return s;
+        throw new IllegalArgumentException("Unknown incident "+i.getId());
+    }
+
+    /* ===== Queries ===== */
+
+    /** Runs {@code view} against one shard under its lock (a consistent per-shard view). */
+    public <T> T read(int shard, Function<MonitoringService, T> view){ return shards[shard].read(view); }
+
+    public Device getDevice(String id){ return owner(id).getDevice(id); }
+    public Sensor getSensor(String id){ return sensors.get(id); }
+
+    public Alert getAlert(String id){
+        for(MonitoringService s : shards){
+            Alert a = s.getAlert(id);
+            if(a!=null) return a;
+        }
+        return null;
+    }
+
+    public MaintenanceTicket getTicket(String id){
+        for(MonitoringService s : shards){
+            MaintenanceTicket t = s.getTicket(id);
+            if(t!=null) return t;
+        }
+        return null;
+    }
+
+    public Incident getIncident(String id){
+        for(MonitoringService s : shards){
+            Incident i = s.getIncident(id);
+            if(i!=null) return i;
+        }
+        return null;
+    }
+
+    public List<Device> getDevices(){ return collect(MonitoringService::getDevices); }
+    public List<Alert> getAlerts(){ return collect(MonitoringService::getAlerts); }
+    public List<MaintenanceTicket> getTickets(){ return collect(MonitoringService::getTickets); }
+
+    /** Newest-first alert page across shards; see {@link MonitoringService#queryAlerts}. */
+    public Page<Alert> queryAlerts(Set<AlertStatus> statuses, AlertSeverity severity, String deviceId,
+                                   LocalDateTime from, LocalDateTime to, String cursor, int limit){
+        if(deviceId!=null) return owner(deviceId).queryAlerts(statuses, severity, deviceId, from, to, cursor, limit);
+        TimeIndex.Pos before = cursor==null ? null : resolveCursor(s -> s.alertPos(cursor), cursor);
+        List<Page<Alert>> pages = new ArrayList<>();
+        for(MonitoringService s : shards) pages.add(s.alertPage(statuses, severity, null, from, to, before, limit));
+        return TimeIndex.merge(pages, Alert::getCreatedAt, limit);
+    }
+
+    /** Newest-first ticket page across shards; see {@link MonitoringService#queryTickets}. */
+    public Page<MaintenanceTicket> queryTickets(TicketStatus status, String deviceId, String alertId, String cursor, int limit){
+        if(deviceId!=null) return owner(deviceId).queryTickets(status, deviceId, alertId, cursor, limit);
+        TimeIndex.Pos before = cursor==null ? null : resolveCursor(s -> s.ticketPos(cursor), cursor);
+        List<Page<MaintenanceTicket>> pages = new ArrayList<>();
+        for(MonitoringService s : shards) pages.add(s.ticketPage(status, null, alertId, before, limit));
+        return TimeIndex.merge(pages, MaintenanceTicket::getCreatedAt, limit);
+    }
+
+    /** Newest-first incident page across shards; see {@link MonitoringService#queryIncidents}. */
+    public Page<Incident> queryIncidents(Set<AlertStatus> statuses, String cursor, int limit){
+        TimeIndex.Pos before = cursor==null ? null : resolveCursor(s -> s.incidentPos(cursor), cursor);
+        List<Page<Incident>> pages = new ArrayList<>();
+        for(MonitoringService s : shards) pages.add(s.incidentPage(statuses, before, limit));
+        return TimeIndex.merge(pages, Incident::getOpenedAt, limit);
+    }
+
+    private TimeIndex.Pos resolveCursor(Function<MonitoringService, TimeIndex.Pos> lookup, String cursor){
+        for(MonitoringService s : shards){
+            TimeIndex.Pos p = lookup.apply(s);
+            if(p!=null) return p;
+        }
+        throw new IllegalArgumentException("Unknown cursor: "+cursor);
+    }
+
+    private <T> List<T> collect(Function<MonitoringService, List<T>> perShard){
+        List<T> out = new ArrayList<>();
+        for(MonitoringService s : shards) out.addAll(perShard.apply(s));
+        return out;
+    }
+
+    /** Drains every shard's pipeline and stops its consumer. */
+    @Override public void close(){
+        for(IngestionPipeline p : pipelines) p.close();
+    }
+}
@@ -0,0 +1,75 @@
+package iot;
+
+import java.lang.ref.Cleaner;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake-style 64-bit ids: 41 bits of milliseconds since 2024-01-01, 10 bits of
+ * worker id and 12 bits of sequence. Each thread leases its own worker id and keeps
+ * its own clock/sequence, so generation never contends and ids are monotonic per thread.
+ * When a thread exhausts the sequence within a millisecond it borrows the next
+ * millisecond instead of spinning.
+ * <p>
+ * A worker id is leased together with its clock/sequence state and returned once its
+ * thread has ended and been collected, so the next thread to take it continues where
+ * the old one stopped and can't repeat its ids. Once 1024 live threads hold every worker
+ * id, further threads fail to generate rather than share one.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+    static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_SEQUENCE = (1L<<SEQUENCE_BITS)-1;
+    private static final int MAX_WORKER = (1<<WORKER_BITS)-1;
+
+    private static final Cleaner THREAD_EXIT = Cleaner.create();
+
+    private final LongSupplier clock;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final Queue<State> released = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(this::lease);
+
+    private static final class State {
+        final long worker;
+        long lastMillis = -1;
+        long sequence;
+        State(int worker){ this.worker = worker; }
+    }
+
+    public SnowflakeIdGenerator(){ this(System::currentTimeMillis); }
+
+    /** @param clock wall-clock epoch millis; a clock that steps back never makes ids go back */
+    SnowflakeIdGenerator(LongSupplier clock){ this.clock = clock; }
+
+    /** A released worker's state, else a fresh worker id; it comes back when the calling thread is collected. */
+    private State lease(){
+        State s = released.poll();
+        if(s==null){
+            int w = nextWorker.getAndUpdate(n -> n>MAX_WORKER ? n : n+1);
+            if(w>MAX_WORKER) throw new IllegalStateException("All "+(MAX_WORKER+1)+" worker ids are held by live threads");
+            s = new State(w);
+        }
+        State leased = s;
+        THREAD_EXIT.register(Thread.currentThread(), () -> released.add(leased));
+        return leased;
+    }
+
+    @Override public long nextId(){
+        State s = state.get();
+        long now = clock.getAsLong()-EPOCH_MILLIS;
+        if(now>s.lastMillis){
+            s.lastMillis = now;
+            s.sequence = 0;
+        } else if(++s.sequence > MAX_SEQUENCE){
+            s.lastMillis++;
+            s.sequence = 0;
+        }
+        return (s.lastMillis<<(WORKER_BITS+SEQUENCE_BITS)) | (s.worker<<SEQUENCE_BITS) | s.sequence;
+    }
+
+    /** Creation time encoded in an id, as epoch millis. */
+    public static long timestampOf(long id){ return (id>>>(WORKER_BITS+SEQUENCE_BITS))+EPOCH_MILLIS; }
+}
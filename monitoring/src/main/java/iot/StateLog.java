@@ -0,0 +1,28 @@
+package iot;
+
+/**
+ * Receives every state change made through {@link MonitoringService}, in order,
+ * while the service lock is held. Used for journaling; all methods default to no-ops.
+ */
+public interface StateLog {
+    StateLog NONE = new StateLog(){};
+
+    default void deviceAdded(Device d){}
+    default void sensorAdded(Sensor s){}
+    default void thresholdAdded(Threshold t){}
+    default void thresholdRemoved(Threshold t){}
+    default void ruleAdded(Rule r){}
+    default void ruleRemoved(Rule r){}
+    default void heartbeatChanged(Sensor s){}
+    default void technicianAdded(Technician t){}
+    default void readingRecorded(Sensor s, long epochMillis, double value){}
+    default void alertRaised(Alert a, Threshold cause){}
+    default void incidentOpened(Incident i){}
+    default void alertSuppressed(Incident i){}
+    default void incidentAcknowledged(Incident i){}
+    default void alertAcknowledged(Alert a){}
+    default void alertResolved(Alert a){}
+    default void ticketCreated(MaintenanceTicket t){}
+    default void ticketAction(MaintenanceTicket t, String logLine){}
+    default void ticketClosed(MaintenanceTicket t){}
+}
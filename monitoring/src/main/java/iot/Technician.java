@@ -8,6 +8,11 @@ public class Technician extends Entity {
     private final String contact;
 
     public Technician(String name, String contact){
+        this(nextKey(), name, contact);
+    }
+
+    Technician(long key, String name, String contact){
+        super(key);
         if(name==null || name.isBlank()) throw new IllegalArgumentException("Technician name required");
         this.name = name.trim();
         this.contact = contact==null ? "" : contact.trim();
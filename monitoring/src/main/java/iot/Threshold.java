@@ -0,0 +1,73 @@
+package iot;
+
+/**
+ * Threshold for a sensor type on a device.
+ * Supports simple upper/lower bounds. If a bound is null, it's not applied.
+ * An optional hysteresis band keeps a breach open until the value is back inside
+ * the bounds by at least that margin, so values hovering at a bound don't flap.
+ */
+public class Threshold extends Entity {
+    private final String deviceId;
+    private final String sensorType;
+    private final Double minValue; // nullable
+    private final Double maxValue; // nullable
+    private final AlertSeverity severity;
+    private final double hysteresis;
+    // precompiled primitive bounds; absent bounds become +/- infinity
+    private final double lo;
+    private final double hi;
+    private final String typeKey;
+
+    public Threshold(String deviceId, String sensorType, Double minValue, Double maxValue, AlertSeverity severity){
+        this(deviceId, sensorType, minValue, maxValue, severity, 0);
+    }
+
+    public Threshold(String deviceId, String sensorType, Double minValue, Double maxValue, AlertSeverity severity, double hysteresis){
+        this(nextKey(), deviceId, sensorType, minValue, maxValue, severity, hysteresis);
+    }
+
+    Threshold(long key, String deviceId, String sensorType, Double minValue, Double maxValue, AlertSeverity severity, double hysteresis){
+        super(key);
+        if(deviceId==null||deviceId.isBlank()) throw new IllegalArgumentException("deviceId required");
+        if(sensorType==null||sensorType.isBlank()) throw new IllegalArgumentException("sensorType required");
+        if(minValue!=null && maxValue!=null && minValue>maxValue) throw new IllegalArgumentException("min>max");
+        if(!(hysteresis>=0)) throw new IllegalArgumentException("hysteresis must be >= 0");
+        this.deviceId=deviceId; this.sensorType=sensorType; this.minValue=minValue; this.maxValue=maxValue;
+        this.severity = severity==null? AlertSeverity.MEDIUM: severity;
+        this.lo = minValue==null? Double.NEGATIVE_INFINITY: minValue;
+        this.hi = maxValue==null? Double.POSITIVE_INFINITY: maxValue;
+        this.typeKey = Sensor.typeKey(sensorType);
+        this.hysteresis = hysteresis;
+    }
+
+    public String getDeviceId(){ return deviceId; }
+    public String getSensorType(){ return sensorType; }
+    public Double getMinValue(){ return minValue; }
+    public Double getMaxValue(){ return maxValue; }
+    public AlertSeverity getSeverity(){ return severity; }
+    public double getHysteresis(){ return hysteresis; }
+
+    /** Normalized sensor type used as index key (see {@link Sensor#getTypeKey()}). */
+    public String getTypeKey(){ return typeKey; }
+
+    /**
+     * Value the bounds are checked against for a new reading: the reading itself here;
+     * {@link WindowThreshold} substitutes a windowed aggregate.
+     */
+    double measure(Sensor s, double value, long epochMillis){ return value; }
+
+    public boolean isBreached(double value){
+        return value < lo || value > hi;
+    }
+
+    /** True once a previously breached value is back inside the bounds by the hysteresis margin. */
+    public boolean isCleared(double value){
+        return value >= lo+hysteresis && value <= hi-hysteresis;
+    }
+
+    @Override public String toString(){
+        return getId()+" | "+deviceId+" / "+sensorType+" ["+
+               (minValue==null? "-":minValue)+","+(maxValue==null? "-":maxValue)+"]"+
+               (hysteresis>0? " ±"+hysteresis: "")+" -> "+severity;
+    }
+}
@@ -0,0 +1,55 @@
+package iot;
+
+import java.util.*;
+
+/**
+ * Index of thresholds keyed by (deviceId, normalized sensor type).
+ * Lookups return a shared array so checking a reading allocates nothing;
+ * the array is copied on add/remove, which are rare compared to readings.
+ */
+public class ThresholdIndex {
+    private static final Threshold[] NONE = new Threshold[0];
+
+    private final Map<String, Map<String, Threshold[]>> byDevice = new HashMap<>();
+
+    public void add(Threshold t){
+        if(t==null) throw new IllegalArgumentException("Threshold null");
+        Map<String, Threshold[]> byType = byDevice.computeIfAbsent(t.getDeviceId(), k -> new HashMap<>());
+        Threshold[] cur = byType.getOrDefault(t.getTypeKey(), NONE);
+        Threshold[] next = Arrays.copyOf(cur, cur.length+1);
+        next[cur.length] = t;
+        byType.put(t.getTypeKey(), next);
+    }
+
+    public boolean remove(Threshold t){
+        if(t==null) return false;
+        Map<String, Threshold[]> byType = byDevice.get(t.getDeviceId());
+        if(byType==null) return false;
+        Threshold[] cur = byType.get(t.getTypeKey());
+        if(cur==null) return false;
+        for(int i=0;i<cur.length;i++){
+            if(cur[i]!=t) continue;
+            if(cur.length==1){
+                byType.remove(t.getTypeKey());
+                if(byType.isEmpty()) byDevice.remove(t.getDeviceId());
+            } else {
+                Threshold[] next = new Threshold[cur.length-1];
+                System.arraycopy(cur, 0, next, 0, i);
+                System.arraycopy(cur, i+1, next, i, cur.length-i-1);
+                byType.put(t.getTypeKey(), next);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Thresholds for a sensor type on a device; never null. Callers must not modify the array. */
+    public Threshold[] lookup(String deviceId, String typeKey){
+        Map<String, Threshold[]> byType = byDevice.get(deviceId);
+        if(byType==null) return NONE;
+        Threshold[] ts = byType.get(typeKey);
+        return ts==null ? NONE : ts;
+    }
+
+    public Threshold[] lookup(String deviceId, Sensor s){ return lookup(deviceId, s.getTypeKey()); }
+}
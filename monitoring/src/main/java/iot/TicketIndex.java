@@ -0,0 +1,39 @@
+package iot;
+
+import java.util.Set;
+
+/**
+ * Secondary indexes over tickets by status, device and alert, all in creation order.
+ * Status changes must go through {@link #statusChanged}; guarded by the service lock.
+ */
+final class TicketIndex {
+    private final TimeIndex<TicketStatus, MaintenanceTicket> byStatus = new TimeIndex<>(MaintenanceTicket::getCreatedAt);
+    private final TimeIndex<String, MaintenanceTicket> byDevice = new TimeIndex<>(MaintenanceTicket::getCreatedAt);
+    private final TimeIndex<String, MaintenanceTicket> byAlert = new TimeIndex<>(MaintenanceTicket::getCreatedAt);
+
+    void add(MaintenanceTicket t){
+        byStatus.add(t.getStatus(), t);
+        byDevice.add(t.getDeviceId(), t);
+        byAlert.add(t.getAlertId(), t);
+    }
+
+    void statusChanged(MaintenanceTicket t, TicketStatus before){ byStatus.move(before, t.getStatus(), t); }
+
+    int count(TicketStatus status){ return byStatus.size(status); }
+
+    TimeIndex.Pos pos(MaintenanceTicket t){ return byStatus.pos(t); }
+
+    /** Null criteria match everything; see {@link MonitoringService#queryTickets}. */
+    Page<MaintenanceTicket> query(TicketStatus status, String deviceId, String alertId, TimeIndex.Pos before, int limit){
+        if(alertId!=null){
+            return byAlert.page(Set.of(alertId), before, null, null,
+                    t -> (status==null || t.getStatus()==status) && (deviceId==null || deviceId.equals(t.getDeviceId())), limit);
+        }
+        int byStatusCost = status==null ? Integer.MAX_VALUE : byStatus.size(status);
+        if(deviceId!=null && byDevice.size(deviceId)<=byStatusCost){
+            return byDevice.page(Set.of(deviceId), before, null, null,
+                    t -> status==null || t.getStatus()==status, limit);
+        }
+        return byStatus.page(status==null ? null : Set.of(status), before, null, null, t -> true, limit);
+    }
+}
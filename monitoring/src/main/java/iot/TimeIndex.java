@@ -0,0 +1,124 @@
+package iot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Entities grouped by a secondary key (status, device, ...), each group ordered by creation
+ * time and then entity key. Pages are read newest first straight off the sorted groups,
+ * so a query costs its page size plus skipped non-matches, not the size of the history.
+ * Not thread-safe; owners guard it with their own lock.
+ */
+final class TimeIndex<K, T extends Entity> {
+
+    /** Position of an entity in creation order; also the resume point of a page cursor. */
+    static final class Pos implements Comparable<Pos> {
+        final LocalDateTime at;
+        final long key;
+
+        Pos(LocalDateTime at, long key){ this.at = at; this.key = key; }
+
+        @Override public int compareTo(Pos o){
+            int c = at.compareTo(o.at);
+            return c!=0 ? c : Long.compare(key, o.key);
+        }
+    }
+
+    private final Function<T, LocalDateTime> createdAt;
+    private final Map<K, NavigableMap<Pos, T>> groups = new HashMap<>();
+
+    TimeIndex(Function<T, LocalDateTime> createdAt){ this.createdAt = createdAt; }
+
+    Pos pos(T e){ return new Pos(createdAt.apply(e), e.getKey()); }
+
+    void add(K k, T e){
+        if(k!=null) groups.computeIfAbsent(k, x -> new TreeMap<>()).put(pos(e), e);
+    }
+
+    void remove(K k, T e){
+        NavigableMap<Pos, T> g = k==null ? null : groups.get(k);
+        if(g!=null && g.remove(pos(e))!=null && g.isEmpty()) groups.remove(k);
+    }
+
+    void move(K from, K to, T e){
+        if(Objects.equals(from, to)) return;
+        remove(from, e);
+        add(to, e);
+    }
+
+    int size(K k){
+        NavigableMap<Pos, T> g = groups.get(k);
+        return g==null ? 0 : g.size();
+    }
+
+    /** Number of entities in the given groups; null means every group. */
+    int size(Collection<K> keys){
+        if(keys==null){
+            int n = 0;
+            for(NavigableMap<Pos, T> g : groups.values()) n += g.size();
+            return n;
+        }
+        int n = 0;
+        for(K k : keys) n += size(k);
+        return n;
+    }
+
+    /**
+     * Reads one page, newest first, from the union of the given groups (null means every
+     * group): entries older than {@code before}, created within [{@code from}, {@code to}]
+     * and accepted by {@code filter}. Null bounds are open.
+     */
+    Page<T> page(Collection<K> keys, Pos before, LocalDateTime from, LocalDateTime to,
+                 Predicate<T> filter, int limit){
+        if(limit<1) throw new IllegalArgumentException("limit must be >= 1");
+        Collection<NavigableMap<Pos, T>> sources;
+        if(keys==null){
+            sources = groups.values();
+        } else {
+            sources = new ArrayList<>(keys.size());
+            for(K k : keys){
+                NavigableMap<Pos, T> g = groups.get(k);
+                if(g!=null) sources.add(g);
+            }
+        }
+        List<T> out = new ArrayList<>();
+        for(NavigableMap<Pos, T> g : sources){
+            NavigableMap<Pos, T> view = g;
+            if(before!=null) view = view.headMap(before, false);
+            if(to!=null) view = view.headMap(new Pos(to, Long.MAX_VALUE), true);
+            if(from!=null) view = view.tailMap(new Pos(from, Long.MIN_VALUE), true);
+            // limit+1 per group: the union's newest limit+1 are among them
+            int taken = 0;
+            for(T e : view.descendingMap().values()){
+                if(!filter.test(e)) continue;
+                out.add(e);
+                if(++taken>limit) break;
+            }
+        }
+        if(sources.size()>1) out.sort(Comparator.comparing(this::pos).reversed());
+        if(out.size()<=limit) return new Page<>(out, null);
+        out = new ArrayList<>(out.subList(0, limit));
+        return new Page<>(out, out.get(limit-1).getId());
+    }
+
+    /**
+     * Merges newest-first pages read with the same bounds from disjoint partitions
+     * (e.g. engine shards) into one page of at most {@code limit} items.
+     */
+    static <T extends Entity> Page<T> merge(List<Page<T>> pages, Function<T, LocalDateTime> createdAt, int limit){
+        List<T> out = new ArrayList<>();
+        boolean more = false;
+        for(Page<T> p : pages){
+            out.addAll(p.getItems());
+            more |= p.hasMore();
+        }
+        out.sort(Comparator.comparing((T e) -> new Pos(createdAt.apply(e), e.getKey())).reversed());
+        if(out.size()>limit){
+            more = true;
+            out = new ArrayList<>(out.subList(0, limit));
+        }
+        return new Page<>(out, more && !out.isEmpty() ? out.get(out.size()-1).getId() : null);
+    }
+}
@@ -0,0 +1,389 @@
+package iot;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-sensor reading history kept in primitive columns instead of {@link Reading} objects,
+ * in three tiers:
+ * <ol>
+ * <li>the newest samples in a raw segment (a {@code long[]} of epoch-millis and a
+ *     {@code double[]} of values) of {@code segmentCapacity} samples, which starts small,
+ *     doubles as it fills and shrinks back once sealed, so idle sensors hold little;</li>
+ * <li>each filled segment compressed into an immutable {@link GorillaBlock} (a couple of
+ *     bytes per sample for regular, slow-moving series), up to {@code maxSegments}
+ *     segments at full resolution in total;</li>
+ * <li>older samples rolled up into {@link DownsampleTier} buckets (count/min/max/sum),
+ *     each tier evicting into the next, coarser one.</li>
+ * </ol>
+ * Samples must arrive in non-decreasing time order per sensor; older samples are dropped.
+ */
+public class TimeSeriesStore {
+
+    /** Receives samples from a range query without materializing objects. */
+    @FunctionalInterface
+    public interface SampleVisitor { void accept(long epochMillis, double value); }
+
+    /** Receives downsampled buckets; the average is {@code sum/count}. */
+    @FunctionalInterface
+    public interface AggregateVisitor { void accept(long bucketStart, long count, double min, double max, double sum); }
+
+    /** 1-minute buckets for a day, then 1-hour buckets for 90 days. */
+    public static final List<DownsampleTier> DEFAULT_TIERS = List.of(
+            DownsampleTier.of(Duration.ofMinutes(1), Duration.ofDays(1)),
+            DownsampleTier.of(Duration.ofHours(1), Duration.ofDays(90)));
+
+    private final int segmentCapacity;
+    private final int maxSegments;
+    private final DownsampleTier[] tiers;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /** 1024-sample segments, 32 per sensor at full resolution, then {@link #DEFAULT_TIERS}. */
+    public TimeSeriesStore(){ this(1024, 32); }
+
+    public TimeSeriesStore(int segmentCapacity, int maxSegments){ this(segmentCapacity, maxSegments, DEFAULT_TIERS); }
+
+    /** @param tiers downsampling tiers from finest to coarsest; each resolution a multiple of the previous */
+    public TimeSeriesStore(int segmentCapacity, int maxSegments, List<DownsampleTier> tiers){
+        if(segmentCapacity<1) throw new IllegalArgumentException("segmentCapacity must be >= 1");
+        if(maxSegments<1) throw new IllegalArgumentException("maxSegments must be >= 1");
+        for(int i=1;i<tiers.size();i++){
+            if(tiers.get(i).getResolutionMillis() % tiers.get(i-1).getResolutionMillis()!=0){
+                throw new IllegalArgumentException("tier resolutions must be multiples of the previous tier's");
+            }
+        }
+        this.segmentCapacity = segmentCapacity;
+        this.maxSegments = maxSegments;
+        this.tiers = tiers.toArray(new DownsampleTier[0]);
+    }
+
+    /** @return false if the sample was older than the sensor's latest sample and was dropped */
+    public boolean append(String sensorId, long epochMillis, double value){
+        return series(sensorId).append(epochMillis, value);
+    }
+
+    private Series series(String sensorId){
+        Series s = series.get(sensorId);
+        if(s==null) s = series.computeIfAbsent(sensorId, k -> new Series(segmentCapacity, maxSegments-1, tiers));
+        return s;
+    }
+
+    /**
+     * Visits full-resolution samples with {@code from <= time <= to} in time order,
+     * decompressing blocks as it goes.
+     * @return number of samples visited
+     */
+    public int readings(String sensorId, long from, long to, SampleVisitor visitor){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.scan(from, to, visitor);
+    }
+
+    /**
+     * Visits buckets of {@code resolution} (one of the configured tiers) overlapping
+     * [{@code from}, {@code to}] in time order. Recent data still held at a finer
+     * resolution is rolled up on the fly; data only kept in coarser tiers is not visited.
+     * @return number of buckets visited
+     */
+    public int aggregates(String sensorId, Duration resolution, long from, long to, AggregateVisitor visitor){
+        int tier = -1;
+        for(int i=0;i<tiers.length;i++) if(tiers[i].getResolutionMillis()==resolution.toMillis()) tier = i;
+        if(tier<0) throw new IllegalArgumentException("No downsampling tier at "+resolution);
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.aggregate(tier, from, to, visitor);
+    }
+
+    /** Number of full-resolution samples currently retained for a sensor. */
+    public long size(String sensorId){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.size();
+    }
+
+    /** Approximate heap held by a sensor's raw segment, compressed blocks and rollups. */
+    public long memoryBytes(String sensorId){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.memoryBytes();
+    }
+
+    /** Approximate bytes per full-resolution sample held in compressed blocks. */
+    public double compressedBytesPerSample(String sensorId){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.compressedBytesPerSample();
+    }
+
+    public long getDropped(String sensorId){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.dropped();
+    }
+
+    public void remove(String sensorId){ series.remove(sensorId); }
+
+    public int getSegmentCapacity(){ return segmentCapacity; }
+    public int getMaxSegments(){ return maxSegments; }
+    public List<DownsampleTier> getTiers(){ return List.of(tiers); }
+
+    /**
+     * Receives one sensor's history for a snapshot: each tier finest first, then the
+     * compressed blocks as they are, then the remaining samples, all oldest first.
+     */
+    interface HistoryVisitor extends AggregateVisitor, SampleVisitor {
+        /** Precedes the {@code buckets} buckets of a tier. */
+        void tier(long resolutionMillis, int buckets);
+        /** Precedes the {@code count} blocks. */
+        void blocks(int count);
+        void block(GorillaBlock b);
+        /** Precedes the {@code count} full-resolution samples. */
+        void samples(long count);
+    }
+
+    /**
+     * Samples ever appended for a sensor. Taken while appends are held off (e.g. under the
+     * service lock), it marks a cut that {@link #export} can later write up to while appends go on.
+     */
+    long appended(String sensorId){
+        Series s = series.get(sensorId);
+        return s==null ? 0 : s.appended();
+    }
+
+    /**
+     * Visits a sensor's rollups and the full-resolution samples among the first {@code cut}
+     * it was ever given (see {@link #appended}), holding only that sensor's lock.
+     */
+    void export(String sensorId, long cut, HistoryVisitor visitor){
+        Series s = series.get(sensorId);
+        if(s!=null){ s.export(cut, visitor); return; }
+        for(DownsampleTier t : tiers) visitor.tier(t.getResolutionMillis(), 0);
+        visitor.blocks(0);
+        visitor.samples(0);
+    }
+
+    /**
+     * Restores a compressed block (snapshot recovery) after the sensor's buckets and before
+     * its raw samples, without decoding it; blocks must come in time order.
+     */
+    void restoreBlock(String sensorId, GorillaBlock b){
+        series(sensorId).restore(b);
+    }
+
+    /** Restores a stored bucket into a tier (snapshot recovery); buckets must come in time order. */
+    void restoreBucket(String sensorId, int tier, long start, long count, double min, double max, double sum){
+        Series s = series(sensorId);
+        synchronized(s){ s.tiers[tier].add(start, count, min, max, sum); }
+    }
+
+    /** One sensor's tiers; see the class comment. */
+    private static final class Series {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int segCap;
+        private long[] times;
+        private double[] values;
+        private int n;                       // samples in the raw segment
+        private final int maxBlocks;
+        private final ArrayDeque<GorillaBlock> blocks = new ArrayDeque<>();
+        private long blockSamples, blockBytes;
+        private final DownsampleRing[] tiers;
+        private long lastTime = Long.MIN_VALUE;
+        private long dropped, appended;
+
+        Series(int segCap, int maxBlocks, DownsampleTier[] specs){
+            this.segCap = segCap;
+            this.times = new long[Math.min(segCap, INITIAL_CAPACITY)];
+            this.values = new double[times.length];
+            this.maxBlocks = maxBlocks;
+            this.tiers = new DownsampleRing[specs.length];
+            for(int i=specs.length-1;i>=0;i--) tiers[i] = new DownsampleRing(specs[i], i+1<specs.length ? tiers[i+1] : null);
+        }
+
+        synchronized boolean append(long t, double v){
+            if(t<lastTime){ dropped++; return false; }
+            if(n==times.length) grow();
+            times[n] = t;
+            values[n] = v;
+            lastTime = t;
+            appended++;
+            if(++n==segCap) seal();
+            return true;
+        }
+
+        /** Doubles the raw segment's columns, up to the segment capacity. */
+        private void grow(){
+            int cap = (int)Math.min(segCap, times.length*2L);
+            times = Arrays.copyOf(times, cap);
+            values = Arrays.copyOf(values, cap);
+        }
+
+        /**
+         * Moves the full raw segment into a compressed block and shrinks the columns back,
+         * so a sensor only holds a full segment while it is filling one.
+         */
+        private void seal(){
+            if(maxBlocks==0){
+                for(int i=0;i<n;i++) rollup(times[i], values[i]);
+            } else {
+                addBlock(GorillaBlock.encode(times, values, n));
+            }
+            n = 0;
+            if(times.length>INITIAL_CAPACITY){
+                times = new long[INITIAL_CAPACITY];
+                values = new double[INITIAL_CAPACITY];
+            }
+        }
+
+        /** Appends a block, evicting the oldest block into the rollups. */
+        private void addBlock(GorillaBlock b){
+            blocks.addLast(b);
+            blockSamples += b.getCount();
+            blockBytes += b.sizeBytes();
+            if(blocks.size()>maxBlocks){
+                GorillaBlock old = blocks.removeFirst();
+                blockSamples -= old.getCount();
+                blockBytes -= old.sizeBytes();
+                GorillaBlock.Cursor c = old.cursor();
+                while(c.next()) rollup(c.time(), c.value());
+            }
+        }
+
+        synchronized void restore(GorillaBlock b){
+            if(n>0 || b.getFirstTime()<lastTime) throw new IllegalStateException("Blocks must be restored in order, before raw samples");
+            appended += b.getCount();
+            lastTime = b.getLastTime();
+            if(maxBlocks==0){
+                GorillaBlock.Cursor c = b.cursor();
+                while(c.next()) rollup(c.time(), c.value());
+            } else {
+                addBlock(b);
+            }
+        }
+
+        private void rollup(long t, double v){
+            if(tiers.length>0) tiers[0].add(t, 1, v, v, v);
+        }
+
+        synchronized int scan(long from, long to, SampleVisitor visitor){
+            if(from>to) return 0;
+            int visited = 0;
+            for(GorillaBlock b : blocks){
+                if(b.getLastTime()<from) continue;
+                if(b.getFirstTime()>to) return visited;
+                GorillaBlock.Cursor c = b.cursor();
+                while(c.next()){
+                    long t = c.time();
+                    if(t<from) continue;
+                    if(t>to) return visited;
+                    visitor.accept(t, c.value());
+                    visited++;
+                }
+            }
+            for(int i=lowerBound(from); i<n; i++){
+                if(times[i]>to) break;
+                visitor.accept(times[i], values[i]);
+                visited++;
+            }
+            return visited;
+        }
+
+        /** First raw index whose time is >= from. */
+        private int lowerBound(long from){
+            int lo = 0, hi = n;
+            while(lo<hi){
+                int mid = (lo+hi)>>>1;
+                if(times[mid]<from) lo = mid+1; else hi = mid;
+            }
+            return lo;
+        }
+
+        synchronized int aggregate(int tier, long from, long to, AggregateVisitor visitor){
+            Folder f = new Folder(tiers[tier], visitor);
+            // oldest data sits in the coarsest tier: walk from the requested tier towards raw
+            tiers[tier].visit(from, to, f);
+            for(int i=tier-1;i>=0;i--) tiers[i].visit(from, to, f);
+            long lo = tiers[tier].align(from);
+            for(GorillaBlock b : blocks){
+                if(b.getLastTime()<lo || b.getFirstTime()>to) continue;
+                GorillaBlock.Cursor c = b.cursor();
+                while(c.next()) f.sample(c.time(), c.value(), lo, to);
+            }
+            for(int i=0;i<n;i++) f.sample(times[i], values[i], lo, to);
+            return f.finish();
+        }
+
+        synchronized long appended(){ return appended; }
+
+        synchronized void export(long cut, HistoryVisitor visitor){
+            for(DownsampleRing r : tiers){
+                visitor.tier(r.resolution(), r.size());
+                r.visit(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+            }
+            long retained = blockSamples+n;
+            long left = Math.max(0, Math.min(retained, cut-(appended-retained))); // retained samples before the cut
+            int whole = 0; // leading blocks entirely before the cut, kept compressed
+            for(GorillaBlock b : blocks){
+                if(b.getCount()>left) break;
+                left -= b.getCount();
+                whole++;
+            }
+            visitor.blocks(whole);
+            Iterator<GorillaBlock> it = blocks.iterator();
+            for(int k=0;k<whole;k++) visitor.block(it.next());
+            visitor.samples(left);
+            if(left>0 && it.hasNext()){ // a block sealed after the cut: only its samples before it
+                GorillaBlock.Cursor c = it.next().cursor();
+                while(left>0 && c.next()){ visitor.accept(c.time(), c.value()); left--; }
+            }
+            for(int k=0;left>0;k++,left--) visitor.accept(times[k], values[k]);
+        }
+
+        synchronized long size(){ return blockSamples + n; }
+        synchronized long dropped(){ return dropped; }
+
+        synchronized long memoryBytes(){
+            long bytes = times.length*16L + blockBytes;
+            for(DownsampleRing r : tiers) bytes += r.size()*40L;
+            return bytes;
+        }
+
+        synchronized double compressedBytesPerSample(){ return blockSamples==0 ? 0 : (double)blockBytes/blockSamples; }
+    }
+
+    /** Rolls samples and finer buckets up into consecutive buckets of one tier's resolution. */
+    private static final class Folder implements AggregateVisitor {
+        private final DownsampleRing target;
+        private final AggregateVisitor out;
+        private long start = Long.MIN_VALUE, count;
+        private double min, max, sum;
+        private int emitted;
+
+        Folder(DownsampleRing target, AggregateVisitor out){ this.target = target; this.out = out; }
+
+        void sample(long t, double v, long from, long to){
+            if(t>=from && t<=to) accept(t, 1, v, v, v);
+        }
+
+        @Override public void accept(long t, long n, double lo, double hi, double total){
+            long b = target.align(t);
+            if(count>0 && b<=start){
+                count += n;
+                if(lo<min) min = lo;
+                if(hi>max) max = hi;
+                sum += total;
+                return;
+            }
+            finishBucket();
+            start = b; count = n; min = lo; max = hi; sum = total;
+        }
+
+        private void finishBucket(){
+            if(count==0) return;
+            out.accept(start, count, min, max, sum);
+            emitted++;
+            count = 0;
+        }
+
+        int finish(){ finishBucket(); return emitted; }
+    }
+}
@@ -0,0 +1,113 @@
+package iot;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck): {@value #LEVELS} levels of
+ * {@value #SLOTS} slots, each level's slot spanning a full rotation of the level below.
+ * With a 100 ms tick the levels cover 25.6 s, 1.8 h, 19 days and 13 years. Timers are
+ * intrusive list nodes, so scheduling, cancelling and firing are O(1) and allocation-free;
+ * timers in a higher level cascade down as the wheel reaches their slot. Firing is
+ * tick-granular: a timer fires on the first {@link #advance} at or past its deadline tick.
+ * Not thread-safe.
+ */
+final class TimerWheel {
+    private static final int BITS = 8, SLOTS = 1<<BITS, MASK = SLOTS-1, LEVELS = 4;
+
+    /** A schedulable node; extend it to carry the timer's payload. */
+    static class Timer {
+        private Timer prev, next;
+        private long tick;
+
+        boolean isScheduled(){ return prev!=null; }
+    }
+
+    private final long tickMillis;
+    private final Timer[] heads = new Timer[LEVELS*SLOTS]; // one sentinel per slot, level-major
+    private long now; // ticks elapsed up to and including the last advance
+    private int size;
+
+    TimerWheel(long tickMillis, long startMillis){
+        if(tickMillis<1) throw new IllegalArgumentException("tickMillis must be positive");
+        this.tickMillis = tickMillis;
+        this.now = startMillis/tickMillis;
+        for(int i=0;i<heads.length;i++){
+            Timer h = new Timer();
+            h.prev = h.next = h;
+            heads[i] = h;
+        }
+    }
+
+    int size(){ return size; }
+    long getTickMillis(){ return tickMillis; }
+
+    /** (Re)schedules a timer to fire at {@code deadlineMillis}; past deadlines fire on the next tick. */
+    void schedule(Timer t, long deadlineMillis){
+        if(t.isScheduled()) unlink(t);
+        else size++;
+        long tick = Math.floorDiv(deadlineMillis+tickMillis-1, tickMillis);
+        t.tick = Math.max(tick, now+1);
+        place(t);
+    }
+
+    void cancel(Timer t){
+        if(!t.isScheduled()) return;
+        unlink(t);
+        size--;
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis}, handing every timer whose deadline tick has
+     * been reached to {@code expired} (which may reschedule it). Cost is one step per
+     * elapsed tick while timers are pending, plus the timers fired or cascaded.
+     */
+    void advance(long nowMillis, Consumer<Timer> expired){
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        while(now<target){
+            if(size==0){ now = target; return; }
+            now++;
+            for(int level=LEVELS-1;level>0;level--){
+                if((now & ((1L<<(BITS*level))-1))==0) cascade(level);
+            }
+            Timer head = heads[(int)(now & MASK)];
+            while(head.next!=head){
+                Timer t = head.next;
+                unlink(t);
+                size--;
+                expired.accept(t);
+            }
+        }
+    }
+
+    /** Re-places the timers of the current slot of {@code level} into lower levels. */
+    private void cascade(int level){
+        Timer head = heads[level*SLOTS + (int)((now >>> (BITS*level)) & MASK)];
+        Timer t = head.next;
+        head.prev = head.next = head;
+        while(t!=head){
+            Timer next = t.next;
+            place(t);
+            t = next;
+        }
+    }
+
+    /** Links a timer into the lowest level whose rotation still reaches its tick. */
+    private void place(Timer t){
+        int level = 0;
+        while(level<LEVELS-1 && (t.tick >>> (BITS*level)) - (now >>> (BITS*level)) >= SLOTS) level++;
+        long slotTick = t.tick >>> (BITS*level);
+        long maxTick = (now >>> (BITS*level)) + SLOTS-1;
+        if(slotTick>maxTick) slotTick = maxTick; // beyond the top level: park in its last slot, it cascades again
+        Timer head = heads[level*SLOTS + (int)(slotTick & MASK)];
+        t.prev = head.prev;
+        t.next = head;
+        head.prev.next = t;
+        head.prev = t;
+    }
+
+    private static void unlink(Timer t){
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = t.next = null;
+    }
+}
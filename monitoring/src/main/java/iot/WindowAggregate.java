@@ -0,0 +1,89 @@
+package iot;
+
+import java.util.Arrays;
+
+/**
+ * Incremental count/min/max/mean/variance/rate over a {@link WindowSpec}.
+ * Samples are folded into a small ring of time buckets (Welford mean/M2 per bucket,
+ * merged with Chan's formula on query), so an update is O(1) and nothing per-sample
+ * is stored; a query is O(buckets). Out-of-order samples land in their own bucket
+ * if it is still in the ring and are dropped otherwise.
+ */
+public class WindowAggregate {
+    private final WindowSpec spec;
+    private final long bucketMillis;
+    private final int ring; // sliding: buckets; tumbling: current + last completed
+    private final long[] epoch, count, firstT, lastT;
+    private final double[] mean, m2, min, max, firstV, lastV;
+
+    public WindowAggregate(WindowSpec spec){
+        this.spec = spec;
+        this.ring = spec.isTumbling() ? 2 : spec.getBuckets();
+        this.bucketMillis = spec.getBucketMillis();
+        this.epoch = new long[ring]; this.count = new long[ring];
+        this.firstT = new long[ring]; this.lastT = new long[ring];
+        this.mean = new double[ring]; this.m2 = new double[ring];
+        this.min = new double[ring]; this.max = new double[ring];
+        this.firstV = new double[ring]; this.lastV = new double[ring];
+        Arrays.fill(epoch, Long.MIN_VALUE);
+    }
+
+    public WindowSpec getSpec(){ return spec; }
+
+    public void add(long epochMillis, double value){
+        if(Double.isNaN(value)) return;
+        long e = Math.floorDiv(epochMillis, bucketMillis);
+        int i = (int)Math.floorMod(e, (long)ring);
+        if(epoch[i]!=e){
+            if(epoch[i]>e) return; // bucket already reused by a newer window
+            epoch[i] = e; count[i] = 0; mean[i] = 0; m2[i] = 0;
+            min[i] = Double.POSITIVE_INFINITY; max[i] = Double.NEGATIVE_INFINITY;
+            firstT[i] = Long.MAX_VALUE; lastT[i] = Long.MIN_VALUE;
+        }
+        long n = ++count[i];
+        double d = value-mean[i];
+        mean[i] += d/n;
+        m2[i] += d*(value-mean[i]);
+        if(value<min[i]) min[i] = value;
+        if(value>max[i]) max[i] = value;
+        if(epochMillis<firstT[i]){ firstT[i] = epochMillis; firstV[i] = value; }
+        if(epochMillis>=lastT[i]){ lastT[i] = epochMillis; lastV[i] = value; }
+    }
+
+    /**
+     * Aggregate as of {@code nowMillis}: the trailing window for sliding specs, the last
+     * completed window for tumbling ones.
+     * @return NaN when the window holds no samples (or fewer than 2 for VARIANCE/RATE)
+     */
+    public double metric(WindowMetric m, long nowMillis){
+        long nowEpoch = Math.floorDiv(nowMillis, bucketMillis);
+        long lo = spec.isTumbling() ? nowEpoch-1 : nowEpoch-ring+1;
+        long hi = spec.isTumbling() ? nowEpoch-1 : nowEpoch;
+        long n = 0;
+        double mu = 0, q = 0, mn = Double.POSITIVE_INFINITY, mx = Double.NEGATIVE_INFINITY;
+        long fT = Long.MAX_VALUE, lT = Long.MIN_VALUE;
+        double fV = Double.NaN, lV = Double.NaN;
+        for(int i=0;i<ring;i++){
+            if(epoch[i]<lo || epoch[i]>hi || count[i]==0) continue;
+            long nb = count[i];
+            double delta = mean[i]-mu;
+            long total = n+nb;
+            q += m2[i] + delta*delta*((double)n*nb/total);
+            mu += delta*nb/total;
+            n = total;
+            if(min[i]<mn) mn = min[i];
+            if(max[i]>mx) mx = max[i];
+            if(firstT[i]<fT){ fT = firstT[i]; fV = firstV[i]; }
+            if(lastT[i]>lT){ lT = lastT[i]; lV = lastV[i]; }
+        }
+        switch(m){
+            case COUNT: return n;
+            case MIN: return n==0 ? Double.NaN : mn;
+            case MAX: return n==0 ? Double.NaN : mx;
+            case MEAN: return n==0 ? Double.NaN : mu;
+            case VARIANCE: return n<2 ? Double.NaN : q/(n-1);
+            case RATE: return n<2 || lT==fT ? Double.NaN : (lV-fV)*1000.0/(lT-fT);
+            default: throw new IllegalArgumentException("metric "+m);
+        }
+    }
+}
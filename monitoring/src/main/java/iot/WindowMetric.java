@@ -0,0 +1,4 @@
+package iot;
+
+/** Aggregate a {@link WindowThreshold} is checked against. RATE is value change per second. */
+public enum WindowMetric { COUNT, MIN, MAX, MEAN, VARIANCE, RATE }
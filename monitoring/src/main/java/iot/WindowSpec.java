@@ -0,0 +1,42 @@
+package iot;
+
+import java.time.Duration;
+
+/**
+ * Shape of a per-sensor aggregation window.
+ * Sliding windows cover the last {@code length} in {@code buckets} steps (granularity
+ * length/buckets, rounded up to whole milliseconds, so the window never covers less than
+ * {@code length}); tumbling windows report the last completed, aligned window.
+ */
+public final class WindowSpec {
+    private final boolean tumbling;
+    private final long lengthMillis;
+    private final int buckets;
+
+    private WindowSpec(boolean tumbling, long lengthMillis, int buckets){
+        if(lengthMillis<1) throw new IllegalArgumentException("window length must be positive");
+        if(buckets<1 || buckets>lengthMillis) throw new IllegalArgumentException("buckets must be in [1, lengthMillis]");
+        this.tumbling = tumbling; this.lengthMillis = lengthMillis; this.buckets = buckets;
+    }
+
+    public static WindowSpec sliding(Duration length, int buckets){ return new WindowSpec(false, length.toMillis(), buckets); }
+    public static WindowSpec sliding(Duration length){ return sliding(length, 12); }
+    public static WindowSpec tumbling(Duration length){ return new WindowSpec(true, length.toMillis(), 1); }
+
+    public boolean isTumbling(){ return tumbling; }
+    public long getLengthMillis(){ return lengthMillis; }
+    public int getBuckets(){ return buckets; }
+    /** Width of one bucket: the length divided by the buckets, rounded up. */
+    public long getBucketMillis(){ return (lengthMillis+buckets-1)/buckets; }
+
+    @Override public boolean equals(Object o){
+        if(!(o instanceof WindowSpec)) return false;
+        WindowSpec w = (WindowSpec)o;
+        return tumbling==w.tumbling && lengthMillis==w.lengthMillis && buckets==w.buckets;
+    }
+    @Override public int hashCode(){ return Long.hashCode(lengthMillis)*31 + buckets*2 + (tumbling?1:0); }
+
+    @Override public String toString(){
+        return (tumbling? "tumbling ": "sliding ")+Duration.ofMillis(lengthMillis)+(tumbling? "": "/"+buckets);
+    }
+}
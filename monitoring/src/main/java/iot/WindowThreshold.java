@@ -0,0 +1,43 @@
+package iot;
+
+/**
+ * Threshold checked against a windowed aggregate of the sensor rather than the single
+ * latest value, e.g. "mean over 5 min > 80" or "rate of change > 0.5/s".
+ * The aggregate is maintained incrementally per sensor (see {@link WindowAggregate}).
+ * It is not persisted: after recovery the window holds only the readings replayed from
+ * the journal tail and fills up again as new ones arrive.
+ */
+public class WindowThreshold extends Threshold {
+    private final WindowMetric metric;
+    private final WindowSpec window;
+
+    public WindowThreshold(String deviceId, String sensorType, WindowMetric metric, WindowSpec window,
+                           Double minValue, Double maxValue, AlertSeverity severity){
+        this(deviceId, sensorType, metric, window, minValue, maxValue, severity, 0);
+    }
+
+    public WindowThreshold(String deviceId, String sensorType, WindowMetric metric, WindowSpec window,
+                           Double minValue, Double maxValue, AlertSeverity severity, double hysteresis){
+        this(nextKey(), deviceId, sensorType, metric, window, minValue, maxValue, severity, hysteresis);
+    }
+
+    WindowThreshold(long key, String deviceId, String sensorType, WindowMetric metric, WindowSpec window,
+                    Double minValue, Double maxValue, AlertSeverity severity, double hysteresis){
+        super(key, deviceId, sensorType, minValue, maxValue, severity, hysteresis);
+        if(metric==null) throw new IllegalArgumentException("metric required");
+        if(window==null) throw new IllegalArgumentException("window required");
+        this.metric = metric;
+        this.window = window;
+    }
+
+    public WindowMetric getMetric(){ return metric; }
+    public WindowSpec getWindow(){ return window; }
+
+    /** The window aggregate; NaN (never breached, never cleared) until the window has data. */
+    @Override double measure(Sensor s, double value, long epochMillis){
+        WindowAggregate w = s.getWindow(window);
+        return w==null ? Double.NaN : w.metric(metric, epochMillis);
+    }
+
+    @Override public String toString(){ return super.toString()+" on "+metric+" over "+window; }
+}
@@ -0,0 +1,95 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BulkReplayTest {
+
+    @TempDir Path dir;
+
+    private static final long T0 = 1_714_564_800_000L; // 2024-05-01T12:00Z
+    private static final long STEP = 10_000; // breaches of a sensor come 500 s apart, past the duplicate interval
+
+    private final MonitoringService live = new MonitoringService();
+    private final Device press = live.addDevice(new Device("press", "line-1"));
+    private final Sensor temp = live.addSensor(press, new Sensor("TEMP", "C"));
+    private final Sensor pressure = live.addSensor(press, new Sensor("PRESSURE", "bar"));
+
+    BulkReplayTest(){
+        live.setCorrelationPolicy(CorrelationPolicy.NONE);
+        live.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH));
+        live.addThreshold(new Threshold(press.getId(), "PRESSURE", 2.0, null, AlertSeverity.MEDIUM));
+    }
+
+    /** 400 readings alternating between the sensors, each crossing its bound every 25 readings. */
+    private void writeBoth(Path csv, Path bin, long from) throws IOException {
+        try(Writer w = Files.newBufferedWriter(csv); BulkReplay.BinaryWriter b = new BulkReplay.BinaryWriter(bin)){
+            for(int i=0;i<400;i++){
+                Sensor s = i%2==0 ? temp : pressure;
+                double v = s==temp ? (i%50<4 ? 85.5 : 60.25) : (i%50<4 ? 1.5 : 3.75);
+                long at = from+i*STEP;
+                w.write(press.getId()+","+s.getId()+","+at+","+v+"\n");
+                b.write(s.getId(), at, v);
+            }
+        }
+    }
+
+    private static List<String> describe(BulkReplay.Result r){
+        List<String> out = new ArrayList<>();
+        for(Alert a : r.getAlerts()) out.add(a.getSensorId()+"@"+a.getReading().getTimestamp()+"="+a.getReading().getValue());
+        return out;
+    }
+
+    @Test
+    void csvAndBinaryFilesRaiseTheSameAlertsWhereverChunksSplit() throws IOException {
+        Path csv = dir.resolve("readings.csv"), bin = dir.resolve("readings.bin");
+        writeBoth(csv, bin, T0);
+
+        BulkReplay.Result whole = BulkReplay.dryRun(live, live.getThresholds(), 1, 1<<20).replay(csv);
+        assertEquals(400, whole.getReadings());
+        assertEquals(16, whole.getAlerts().size(), "one per breach of each sensor");
+        // 61 bytes cut lines mid-way; 50 bytes round up to two binary records
+        for(int chunk : new int[]{61, 50, 4096}){
+            for(Path file : List.of(csv, bin)){
+                BulkReplay.Result r = BulkReplay.dryRun(live, live.getThresholds(), 3, chunk).replay(file);
+                assertEquals(400, r.getReadings(), file+" in "+chunk+" byte chunks");
+                assertEquals(0, r.getMalformed());
+                assertEquals(describe(whole), describe(r), file+" in "+chunk+" byte chunks");
+            }
+        }
+        assertFalse(temp.hasReading(), "dry runs leave the live sensors alone");
+        assertTrue(live.getAlerts().isEmpty());
+    }
+
+    @Test
+    void aLiveReplaySkipsReadingsOlderThanTheSensorsLatest() throws IOException {
+        Path csv = dir.resolve("readings.csv"), bin = dir.resolve("readings.bin");
+        writeBoth(csv, bin, T0);
+        long latest = T0+200*STEP; // half way through the file
+        live.ingest(temp, LocalDateTime.ofInstant(Instant.ofEpochMilli(latest), ZoneId.systemDefault()), 70);
+        live.ingest(pressure, LocalDateTime.ofInstant(Instant.ofEpochMilli(latest), ZoneId.systemDefault()), 3);
+
+        BulkReplay.Result r = new BulkReplay(live, 2, 64).replay(bin);
+        assertEquals(400, r.getReadings());
+        assertEquals(200, r.getStale(), "everything before the latest readings");
+        assertEquals(T0+398*STEP, temp.getLastMillis());
+        assertEquals(T0+399*STEP, pressure.getLastMillis());
+        assertEquals(1+100, live.getHistory().size(temp.getId()));
+        assertEquals(8, r.getAlerts().size(), "only the newer half is evaluated");
+
+        BulkReplay.Result again = new BulkReplay(live, 2, 64).replay(csv);
+        assertEquals(398, again.getStale(), "all but the readings at the latest timestamps");
+        assertEquals(T0+398*STEP, temp.getLastMillis());
+    }
+}
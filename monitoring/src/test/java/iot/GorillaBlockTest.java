@@ -0,0 +1,106 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class GorillaBlockTest {
+
+    /** Encodes and decodes the samples, comparing timestamps and raw value bits. */
+    private static GorillaBlock roundTrip(long[] times, double[] values){
+        GorillaBlock b = GorillaBlock.encode(times, values, times.length);
+        assertEquals(times.length, b.getCount());
+        assertEquals(times[0], b.getFirstTime());
+        assertEquals(times[times.length-1], b.getLastTime());
+        GorillaBlock.Cursor c = b.cursor();
+        for(int i=0;i<times.length;i++){
+            assertTrue(c.next(), "missing sample "+i);
+            assertEquals(times[i], c.time(), "time of sample "+i);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(c.value()), "value of sample "+i);
+        }
+        assertFalse(c.next());
+        return b;
+    }
+
+    @Test
+    void randomValuesAtJitteredIntervalsRoundTrip(){
+        Random rnd = new Random(42);
+        int n = 5_000;
+        long[] times = new long[n];
+        double[] values = new double[n];
+        long t = 1_700_000_000_000L;
+        for(int i=0;i<n;i++){
+            t += 1_000 + rnd.nextInt(3_000) - 1_500;
+            times[i] = t;
+            values[i] = rnd.nextGaussian()*1e6;
+        }
+        roundTrip(times, values);
+    }
+
+    @Test
+    void specialValuesRoundTripBitForBit(){
+        double[] values = {0.0, -0.0, Double.NaN, Double.longBitsToDouble(0x7ff8dead_beef0001L), Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MAX_VALUE, 1.0, 1.0};
+        long[] times = new long[values.length];
+        for(int i=0;i<times.length;i++) times[i] = 1_000L*i;
+        roundTrip(times, values);
+    }
+
+    @Test
+    void everyTimestampCodeWidthRoundTrips(){
+        // deltas chosen so successive delta-of-deltas hit 0, each variable-width code and the 64-bit escape
+        long[] deltas = {10, 10, 73, 10, 300, 10, 2_000, 10, 3_000_000_000L, 10, 10_000_000_000_000L, 0, 0, 1};
+        long[] times = new long[deltas.length+1];
+        double[] values = new double[times.length];
+        times[0] = -5_000;
+        for(int i=0;i<deltas.length;i++){
+            times[i+1] = times[i]+deltas[i];
+            values[i+1] = i;
+        }
+        roundTrip(times, values);
+    }
+
+    @Test
+    void regularRepeatedSamplesCompressWell(){
+        int n = 1024;
+        long[] times = new long[n];
+        double[] values = new double[n];
+        for(int i=0;i<n;i++){ times[i] = 60_000L*i; values[i] = 21.5; }
+        GorillaBlock b = roundTrip(times, values);
+        assertTrue(b.sizeBytes() < n, "expected about 2 bits per sample, got "+b.sizeBytes()+" bytes");
+    }
+
+    @Test
+    void theEncodedFormIsWrittenAndReadAsItIs() throws IOException {
+        long[] times = {10, 20, 35, 35, 1_000_000};
+        double[] values = {1.5, 1.5, -2, Double.NaN, 1e300};
+        GorillaBlock b = GorillaBlock.encode(times, values, times.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        b.write(new DataOutputStream(bytes));
+        GorillaBlock back = GorillaBlock.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(b.sizeBytes(), back.sizeBytes());
+        GorillaBlock.Cursor c = back.cursor();
+        for(int i=0;i<times.length;i++){
+            assertTrue(c.next());
+            assertEquals(times[i], c.time());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(c.value()));
+        }
+        assertFalse(c.next());
+
+        byte[] corrupt = bytes.toByteArray();
+        corrupt[3] = 0; // count 0
+        assertThrows(IOException.class, () -> GorillaBlock.read(new DataInputStream(new ByteArrayInputStream(corrupt))));
+    }
+
+    @Test
+    void aSingleSampleRoundTripsAndAnEmptyBlockIsRejected(){
+        roundTrip(new long[]{123}, new double[]{Math.PI});
+        assertThrows(IllegalArgumentException.class, () -> GorillaBlock.encode(new long[0], new double[0], 0));
+    }
+}
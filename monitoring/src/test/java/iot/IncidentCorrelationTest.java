@@ -0,0 +1,88 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IncidentCorrelationTest {
+
+    private final MonitoringService service = new MonitoringService();
+    private final LocalDateTime t0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private Sensor hotSensor(String name, String location){
+        Device d = service.addDevice(new Device(name, location));
+        service.addThreshold(new Threshold(d.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH));
+        return service.addSensor(d, new Sensor("TEMP", "C"));
+    }
+
+    /** Enters breach at {@code at} after a clearing reading just before it. */
+    private void breach(Sensor s, LocalDateTime at){
+        service.ingest(s, at.minusSeconds(1), 20);
+        service.ingest(s, at, 90);
+    }
+
+    @Test
+    void alertsWithinTheWindowJoinOneIncidentAndAQuietGapOpensAnother(){
+        service.setCorrelationPolicy(CorrelationPolicy.byDevice(Duration.ofMinutes(10), Duration.ZERO));
+        Sensor s = hotSensor("press", "line-1");
+        breach(s, t0);
+        breach(s, t0.plusMinutes(9));
+        breach(s, t0.plusMinutes(18)); // 9 minutes after the previous member, not the first
+        assertEquals(1, service.getIncidents().size());
+        assertEquals(3, service.getIncidents().get(0).getAlertCount());
+
+        breach(s, t0.plusMinutes(29));
+        assertEquals(2, service.getIncidents().size(), "an 11 minute gap expires the window");
+        assertEquals(4, service.getAlerts().size());
+    }
+
+    @Test
+    void aRepeatedBreachWithinTheDuplicateIntervalIsSuppressed(){
+        service.setCorrelationPolicy(CorrelationPolicy.byDevice(Duration.ofMinutes(10), Duration.ofMinutes(5)));
+        Sensor s = hotSensor("press", "line-1");
+        breach(s, t0);
+        breach(s, t0.plusMinutes(2));
+        breach(s, t0.plusMinutes(4).plusSeconds(59));
+        assertEquals(1, service.getAlerts().size());
+        Incident i = service.getIncidents().get(0);
+        assertEquals(2, i.getSuppressed());
+        assertEquals(1, service.getOpenBreachCount(), "the breach is held by the alert it duplicates");
+
+        breach(s, t0.plusMinutes(5));
+        assertEquals(2, service.getAlerts().size(), "five minutes after the first alert a new one is raised");
+        assertEquals(2, i.getSuppressed());
+    }
+
+    @Test
+    void aResolvedAlertIsNotDuplicated(){
+        service.setCorrelationPolicy(CorrelationPolicy.byDevice(Duration.ofMinutes(10), Duration.ofMinutes(5)));
+        Sensor s = hotSensor("press", "line-1");
+        breach(s, t0);
+        service.resolve(service.getAlerts().get(0));
+        breach(s, t0.plusMinutes(1));
+        assertEquals(2, service.getAlerts().size());
+    }
+
+    @Test
+    void aLocationStormKeepsASampleOfDevicesButAcknowledgesEveryMember(){
+        service.setCorrelationPolicy(CorrelationPolicy.byLocation(Duration.ofMinutes(10), Duration.ofMinutes(5)));
+        List<Sensor> sensors = new ArrayList<>();
+        for(int d=0;d<Incident.SAMPLE_DEVICES+3;d++) sensors.add(hotSensor("press-"+d, "hall-2"));
+        for(int d=0;d<sensors.size();d++) breach(sensors.get(d), t0.plusSeconds(10*d));
+        breach(sensors.get(sensors.size()-1), t0.plusMinutes(7));
+
+        assertEquals(1, service.getIncidents().size());
+        Incident i = service.getIncidents().get(0);
+        assertEquals(Incident.SAMPLE_DEVICES+4, i.getAlertCount());
+        assertEquals(Incident.SAMPLE_DEVICES, i.getSampleDeviceIds().size());
+        assertEquals(sensors.get(0).getDeviceId(), i.getSampleDeviceIds().get(0));
+        assertEquals(4, i.getOtherDeviceAlerts());
+
+        service.acknowledge(i, "ana");
+        for(Alert a : service.getAlerts()) assertEquals(AlertStatus.ACKNOWLEDGED, a.getStatus(), "member "+a.getDeviceId());
+    }
+}
@@ -0,0 +1,199 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class IngestionPipelineTest {
+
+    private final MonitoringService service = new MonitoringService();
+    private final Device device = service.addDevice(new Device("press", "line-1"));
+
+    private Sensor sensor(String type){ return service.addSensor(device, new Sensor(type, "u")); }
+
+    /** Holds the consumer inside the gate sensor's first reading until released; logs the values recorded after it. */
+    private static final class Gate implements StateLog {
+        final Sensor sensor;
+        final CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+        final List<Double> recorded = new ArrayList<>(); // consumer thread only until released
+
+        Gate(Sensor sensor){ this.sensor = sensor; }
+
+        @Override public void readingRecorded(Sensor s, long epochMillis, double value){
+            if(s!=sensor){ recorded.add(value); return; }
+            entered.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Publishes the gate reading and waits until the consumer is stuck on it. */
+        void hold(IngestionPipeline pipeline) throws InterruptedException {
+            pipeline.publish(sensor, 1, 0);
+            assertTrue(entered.await(5, TimeUnit.SECONDS), "consumer never reached the gate");
+        }
+    }
+
+    private Gate stalled(IngestionPipeline pipeline) throws InterruptedException {
+        Gate gate = new Gate(sensor("GATE"));
+        service.setStateLog(gate);
+        gate.hold(pipeline);
+        return gate;
+    }
+
+    @Test
+    void producersWrappingASmallRingLoseNothingAndKeepTheirOrder() throws Exception {
+        IngestionPipeline pipeline = new IngestionPipeline(service, 64, 16, Duration.ofMillis(1));
+        int producers = 4, perProducer = 20_000;
+        Sensor[] sensors = new Sensor[producers];
+        for(int p=0;p<producers;p++) sensors[p] = sensor("T"+p);
+        List<Thread> threads = new ArrayList<>();
+        for(int p=0;p<producers;p++){
+            Sensor s = sensors[p];
+            threads.add(new Thread(() -> { for(int i=0;i<perProducer;i++) pipeline.publish(s, 1_000+i, i); }));
+        }
+        threads.forEach(Thread::start);
+        for(Thread t : threads) t.join();
+        pipeline.flush();
+
+        assertEquals((long)producers*perProducer, pipeline.getProcessedCount());
+        assertEquals(0, pipeline.getBacklog());
+        for(Sensor s : sensors){
+            assertEquals(perProducer, service.getHistory().size(s.getId()));
+            assertEquals(0, service.getHistory().getDropped(s.getId()), "readings of one producer arrived out of order");
+            assertEquals(perProducer-1, s.getLastValue());
+        }
+        pipeline.close();
+    }
+
+    @Test
+    void aReadingThatFailsIsSkippedAndCountedWhileTheRestOfItsBatchIsRecorded(){
+        Sensor s = sensor("TEMP");
+        service.setStateLog(new StateLog(){
+            @Override public void readingRecorded(Sensor x, long epochMillis, double value){
+                if(value==13) throw new IllegalStateException("disk full");
+            }
+        });
+        IngestionPipeline pipeline = new IngestionPipeline(service, 1024, 256, Duration.ofMillis(5));
+        for(int i=0;i<100;i++) pipeline.publish(s, 1_000+i, i);
+        pipeline.flush();
+
+        assertEquals(99, pipeline.getProcessedCount());
+        assertEquals(1, pipeline.getFailedCount());
+        assertEquals(0, pipeline.getBacklog());
+        assertEquals("disk full", pipeline.getLastFailure().getMessage());
+        assertEquals(99, s.getLastValue());
+        assertEquals(1L, service.getMetrics().getCounters().get("iot_readings_failed_total"));
+        pipeline.close();
+    }
+
+    @Test
+    void closeProcessesEveryReadingAcceptedBeforeIt() throws Exception {
+        for(int round=0;round<20;round++){
+            MonitoringService svc = new MonitoringService();
+            Device d = svc.addDevice(new Device("d", "l"));
+            IngestionPipeline pipeline = new IngestionPipeline(svc, 256, 64, Duration.ofMillis(1));
+            AtomicLong accepted = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for(int p=0;p<3;p++){
+                Sensor s = svc.addSensor(d, new Sensor("T"+p, "u"));
+                threads.add(new Thread(() -> {
+                    try {
+                        for(long i=0;;i++){ pipeline.publish(s, 1_000+i, 1); accepted.incrementAndGet(); }
+                    } catch(IllegalStateException closed){
+                        // expected once close() starts
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            Thread.sleep(2);
+            pipeline.close();
+            for(Thread t : threads) t.join();
+            assertEquals(accepted.get(), pipeline.getProcessedCount(), "round "+round);
+        }
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestReadingsOfEachSensorAndCountsTheRest() throws Exception {
+        Sensor a = sensor("A"), b = sensor("B");
+        IngestionPipeline pipeline = new IngestionPipeline(service, 64, 16, Duration.ofMillis(1), "test", OverloadPolicy.dropOldest(3));
+        Gate gate = stalled(pipeline);
+        for(int i=0;i<10;i++){
+            assertTrue(pipeline.tryPublish(a, 1_000+i, i), "shedding never refuses a reading");
+            pipeline.publish(b, 1_000+i, 100+i);
+        }
+        assertEquals(7, pipeline.getBacklog(), "the gate reading plus sensors x depth");
+        gate.release.countDown();
+        pipeline.flush();
+
+        assertEquals(14, pipeline.getShedCount());
+        assertEquals(0, pipeline.getConflatedCount());
+        assertEquals(7, pipeline.getProcessedCount(), "the gate reading plus three per sensor");
+        assertEquals(List.of(7.0, 8.0, 9.0, 107.0, 108.0, 109.0), gate.recorded);
+        assertEquals(14L, service.getMetrics().getCounters().get("iot_readings_shed_total"));
+        pipeline.close();
+    }
+
+    @Test
+    void conflateKeepsOnlyTheLatestReadingOfEachSensor() throws Exception {
+        Sensor a = sensor("A"), b = sensor("B");
+        IngestionPipeline pipeline = new IngestionPipeline(service, 64, 16, Duration.ofMillis(1), "test", OverloadPolicy.CONFLATE);
+        Gate gate = stalled(pipeline);
+        for(int i=0;i<10;i++){
+            pipeline.publish(a, 1_000+i, i);
+            if(i<3) pipeline.publish(b, 1_000+i, 100+i);
+        }
+        gate.release.countDown();
+        pipeline.flush();
+
+        assertEquals(11, pipeline.getConflatedCount());
+        assertEquals(0, pipeline.getShedCount());
+        assertEquals(List.of(9.0, 102.0), gate.recorded);
+        assertEquals(9, a.getLastValue());
+        assertEquals(0, pipeline.getBacklog());
+        pipeline.close();
+    }
+
+    @Test
+    void priorityReadingsAreEvaluatedAheadOfTheBacklog() throws Exception {
+        Sensor slow = sensor("HUMIDITY"), urgent = sensor("PRESSURE");
+        service.addThreshold(new Threshold(device.getId(), "PRESSURE", null, 1_000.0, AlertSeverity.CRITICAL));
+        assertTrue(urgent.isPriority());
+        assertFalse(slow.isPriority());
+        IngestionPipeline pipeline = new IngestionPipeline(service, 256, 256, Duration.ofMillis(1));
+        Gate gate = stalled(pipeline);
+        for(int i=0;i<50;i++) pipeline.publish(slow, 1_000+i, i);
+        for(int i=0;i<5;i++) pipeline.publish(urgent, 1_000+i, 500+i);
+        gate.release.countDown();
+        pipeline.flush();
+
+        assertEquals(55, gate.recorded.size());
+        assertEquals(List.of(500.0, 501.0, 502.0, 503.0, 504.0), gate.recorded.subList(0, 5));
+        assertEquals(0.0, gate.recorded.get(5));
+        pipeline.close();
+    }
+
+    @Test
+    void publishingAfterCloseIsRejected(){
+        Sensor s = sensor("TEMP");
+        IngestionPipeline pipeline = new IngestionPipeline(service);
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.publish(s, 1_000, 1));
+        assertThrows(IllegalStateException.class, () -> pipeline.tryPublish(s, 1_000, 1));
+    }
+
+    @Test
+    void unknownSensorIdsAreRejected(){
+        IngestionPipeline pipeline = new IngestionPipeline(service);
+        assertThrows(IllegalArgumentException.class, () -> pipeline.publish("nope", 1_000, 1));
+        pipeline.close();
+    }
+}
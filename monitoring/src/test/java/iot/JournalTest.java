@@ -0,0 +1,118 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+    private static final int SEGMENT = 4096;
+
+    @TempDir Path dir;
+
+    private Journal open() throws IOException { return new Journal(dir, SEGMENT, Duration.ofMillis(10)); }
+
+    private static ByteBuffer payload(long v){ return ByteBuffer.allocate(8).putLong(0, v); }
+
+    /** Values of every replayed record at or after {@code from}, checking each record's type. */
+    private List<Long> replay(long from) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try(Journal j = open()){
+            j.replay(from, (type, in) -> {
+                assertEquals(7, type);
+                out.add(in.getLong());
+            });
+        }
+        return out;
+    }
+
+    /** Overwrites bytes of the (first) segment file at a segment-relative position. */
+    private void corrupt(long position, byte[] bytes) throws IOException {
+        try(FileChannel ch = FileChannel.open(dir.resolve(String.format("%020d.wal", 0)), StandardOpenOption.WRITE)){
+            ch.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    @Test
+    void replaysRecordsAcrossSegmentsFromAnyOffset() throws IOException {
+        long[] starts = new long[1000];
+        try(Journal j = open()){
+            for(int i=0;i<starts.length;i++){
+                starts[i] = j.position();
+                j.append((byte)7, payload(i));
+            }
+        }
+        try(Stream<Path> files = Files.list(dir)){
+            assertTrue(files.count()>1, "records should span several segments");
+        }
+        List<Long> all = replay(0);
+        assertEquals(1000, all.size());
+        for(int i=0;i<all.size();i++) assertEquals(i, all.get(i));
+        assertEquals(List.of(998L, 999L), replay(starts[998]));
+    }
+
+    @Test
+    void aTornRecordEndsReplayAndIsOverwrittenByTheNextAppend() throws IOException {
+        long tornAt;
+        try(Journal j = open()){
+            j.append((byte)7, payload(1));
+            j.append((byte)7, payload(2));
+            tornAt = j.position();
+            j.append((byte)7, payload(3));
+        }
+        corrupt(tornAt+5, new byte[]{(byte)0xFF}); // first payload byte: checksum no longer matches
+        assertEquals(List.of(1L, 2L), replay(0));
+
+        try(Journal j = open()){
+            assertEquals(tornAt, j.position(), "append resumes at the torn record");
+            j.append((byte)7, payload(4));
+        }
+        assertEquals(List.of(1L, 2L, 4L), replay(0));
+    }
+
+    @Test
+    void aRecordWhoseLengthLandedButNotItsBodyIsIgnored() throws IOException {
+        long tornAt;
+        try(Journal j = open()){
+            j.append((byte)7, payload(1));
+            tornAt = j.position();
+            j.append((byte)7, payload(2));
+        }
+        corrupt(tornAt+4, new byte[13]); // type, payload and checksum never reached disk
+        assertEquals(List.of(1L), replay(0));
+    }
+
+    @Test
+    void truncationDropsCoveredSegmentsButKeepsTheLastOne() throws IOException {
+        long cut;
+        try(Journal j = open()){
+            for(int i=0;i<500;i++) j.append((byte)7, payload(i));
+            cut = j.position();
+            j.truncateBefore(cut);
+            j.append((byte)7, payload(500));
+        }
+        List<Long> rest = replay(cut);
+        assertEquals(List.of(500L), rest);
+        try(Stream<Path> files = Files.list(dir)){
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void appendsAfterCloseAreRejected() throws IOException {
+        Journal j = open();
+        j.close();
+        assertThrows(IllegalStateException.class, () -> j.append((byte)7, payload(1)));
+        assertNull(j.getSyncFailure());
+    }
+}
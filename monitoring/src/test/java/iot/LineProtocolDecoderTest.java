@@ -0,0 +1,126 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LineProtocolDecoderTest {
+
+    private final MonitoringService service = new MonitoringService();
+    private final Device device = service.addDevice(new Device("press", "line-1"));
+    private final Sensor temp = service.addSensor(device, new Sensor("TEMP", "C"));
+    private final List<Object[]> published = new ArrayList<>();
+    private final LineProtocolDecoder decoder = new LineProtocolDecoder(new ReadingSink(){
+        @Override public Sensor findSensor(String sensorId){ return service.getSensor(sensorId); }
+        @Override public void publish(Sensor s, long epochMillis, double value){ published.add(new Object[]{s, epochMillis, value}); }
+        @Override public boolean tryPublish(Sensor s, long epochMillis, double value){ publish(s, epochMillis, value); return true; }
+    });
+
+    private static ByteBuffer ascii(String s){ return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII)); }
+
+    private String line(String value){ return device.getId()+","+temp.getId()+",1000,"+value+"\n"; }
+
+    private static double parse(String s){ return LineProtocolDecoder.parseDouble(ascii(s), 0, s.length()); }
+
+    @Test
+    void theFastDecimalPathAgreesWithParseDouble(){
+        Random rnd = new Random(7);
+        for(int i=0;i<100_000;i++){
+            int digits = 1+rnd.nextInt(15);
+            StringBuilder sb = new StringBuilder(rnd.nextBoolean() ? "-" : "");
+            for(int d=0;d<digits;d++) sb.append((char)('0'+rnd.nextInt(10)));
+            int dot = rnd.nextInt(digits+1);
+            if(dot<digits) sb.insert(sb.length()-digits+dot, '.');
+            String s = sb.toString();
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(parse(s)), s);
+        }
+        assertEquals(0.5, parse(".5"));
+        assertEquals(1.0, parse("1."));
+        assertEquals(7.0, parse("+7"));
+    }
+
+    @Test
+    void longMantissasAndExponentsFallBackToParseDouble(){
+        for(String s : new String[]{"0.1234567890123456789", "12345678901234567", "9007199254740993", "1e3", "-2.5E-7", "1e308"}){
+            assertEquals(Double.parseDouble(s), parse(s), s);
+        }
+        for(String s : new String[]{"", "-", ".", "1.2.3", "abc", "1,5", "NaN"}){
+            assertTrue(Double.isNaN(parse(s)), s);
+        }
+    }
+
+    @Test
+    void validLinesArePublishedAndMalformedOnesCounted(){
+        ByteBuffer buf = ascii(line("21.5")+"\r\n"+line("22")
+                + device.getId()+","+temp.getId()+",,23\n"         // empty time: now
+                + "garbage\n"
+                + device.getId()+","+temp.getId()+",1000\n"        // missing value
+                + device.getId()+","+temp.getId()+",12x,1\n"       // bad time
+                + "other,"+temp.getId()+",1000,1\n"                 // wrong device for the sensor
+                + line("hot")
+                + ",,,\n");
+        decoder.decode(buf);
+
+        assertFalse(buf.hasRemaining());
+        assertEquals(3, decoder.getReadings());
+        assertEquals(6, decoder.getMalformed());
+        assertEquals(0, decoder.getUnknownSensors());
+        assertEquals(21.5, published.get(0)[2]);
+        assertEquals(1000L, published.get(0)[1]);
+        assertEquals(22.0, published.get(1)[2]);
+        assertTrue((long)published.get(2)[1] > 1000L);
+    }
+
+    @Test
+    void unknownSensorsAreCountedSeparately(){
+        decoder.decode(ascii(device.getId()+",nope,1000,1\n"+line("1")));
+        assertEquals(1, decoder.getUnknownSensors());
+        assertEquals(1, decoder.getReadings());
+        assertEquals(0, decoder.getMalformed());
+    }
+
+    @Test
+    void aLineSplitAcrossReadsIsDecodedOnceComplete(){
+        String input = line("1.25")+line("2.5");
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        for(int cut=1; cut<input.length(); cut++){ // feed the input in two pieces, split at every byte
+            published.clear();
+            buf.clear();
+            buf.put(input.substring(0, cut).getBytes(StandardCharsets.US_ASCII)).flip();
+            decoder.decode(buf);
+            buf.compact();
+            buf.put(input.substring(cut).getBytes(StandardCharsets.US_ASCII)).flip();
+            decoder.decode(buf);
+            assertFalse(buf.hasRemaining(), "cut at "+cut);
+            assertEquals(2, published.size(), "cut at "+cut);
+            assertEquals(1.25, published.get(0)[2]);
+            assertEquals(2.5, published.get(1)[2]);
+        }
+        assertEquals(0, decoder.getMalformed());
+    }
+
+    @Test
+    void aLineLongerThanTheBufferIsDroppedOnce(){
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put("0123456789abcdef".getBytes(StandardCharsets.US_ASCII)).flip();
+        decoder.decode(buf);
+        assertEquals(1, decoder.getMalformed());
+        buf.compact();
+        buf.put("ghij\n".getBytes(StandardCharsets.US_ASCII)).flip();
+        decoder.decode(buf); // the rest of the same line
+        assertEquals(1, decoder.getMalformed());
+        assertEquals(0, decoder.getReadings());
+    }
+
+    @Test
+    void decodeAllTakesALastLineWithoutABreak(){
+        String in = line("1")+line("2");
+        decoder.decodeAll(ascii(in.substring(0, in.length()-1)));
+        assertEquals(2, decoder.getReadings());
+    }
+}
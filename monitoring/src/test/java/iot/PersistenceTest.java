@@ -0,0 +1,185 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PersistenceTest {
+
+    @TempDir Path dir;
+
+    private Persistence open() throws IOException { return new Persistence(dir, 1<<16, Duration.ofMillis(10)); }
+
+    /** A service rebuilt from {@link #dir}, detached again so it can be used after the journal closes. */
+    private MonitoringService recover() throws IOException {
+        MonitoringService svc = new MonitoringService();
+        try(Persistence p = open()){
+            assertTrue(p.recover(svc));
+        }
+        svc.setStateLog(null);
+        return svc;
+    }
+
+    private List<String> snapshotFiles() throws IOException {
+        try(Stream<Path> files = Files.list(dir)){
+            return files.map(f -> f.getFileName().toString()).filter(n -> n.startsWith("snapshot-")).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void stateSurvivesASnapshotPlusTheJournalTail() throws IOException {
+        MonitoringService svc = new MonitoringService();
+        Device press; Sensor temp; Threshold hot; WindowThreshold avg; Rule rule; Alert alert; MaintenanceTicket ticket;
+        try(Persistence p = open()){
+            assertFalse(p.recover(svc));
+            press = svc.addDevice(new Device("press", "line-1"));
+            temp = svc.addSensor(press, new Sensor("TEMP", "C"));
+            hot = svc.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH, 2));
+            avg = (WindowThreshold)svc.addThreshold(new WindowThreshold(press.getId(), "TEMP", WindowMetric.MEAN,
+                    WindowSpec.sliding(Duration.ofMinutes(5), 10), null, 500.0, AlertSeverity.LOW));
+            rule = svc.addRule(Rule.onDevice(press.getId(), "hot and slack", "TEMP > 90 AND PRESSURE < 2", AlertSeverity.CRITICAL));
+            Technician tech = svc.addTechnician(new Technician("Ana", "ana@example.com"));
+            LocalDateTime t0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+            for(int i=0;i<10;i++) svc.ingest(temp, t0.plusSeconds(i), 20+i);
+            svc.ingest(temp, t0.plusSeconds(10), 95);
+            alert = svc.getAlerts().get(0);
+            svc.acknowledge(alert, "ana");
+            ticket = svc.createTicket(alert, "check the cooler");
+            svc.addAction(ticket, "replaced fan", tech);
+            p.snapshot();
+
+            svc.ingest(temp, t0.plusSeconds(11), 97); // journal tail after the snapshot
+            svc.addDevice(new Device("pump", "line-2"));
+        }
+        assertEquals(1, snapshotFiles().size(), "older snapshots and the tmp file are removed: "+snapshotFiles());
+
+        MonitoringService back = recover();
+        assertEquals(2, back.getDevices().size());
+        Sensor s = back.getSensor(temp.getId());
+        assertEquals(97, s.getLastValue());
+        assertEquals(12, back.getHistory().size(temp.getId()));
+
+        Threshold t = back.getThreshold(hot.getId());
+        assertNull(t.getMinValue());
+        assertEquals(80.0, t.getMaxValue());
+        assertEquals(2, t.getHysteresis());
+        WindowThreshold w = (WindowThreshold)back.getThreshold(avg.getId());
+        assertEquals(WindowMetric.MEAN, w.getMetric());
+        assertEquals(avg.getWindow(), w.getWindow());
+        assertEquals(rule.getExpression(), back.getRule(rule.getId()).getExpression());
+
+        Alert a = back.getAlert(alert.getId());
+        assertEquals(AlertStatus.ACKNOWLEDGED, a.getStatus());
+        assertEquals("ana", a.getAcknowledgedBy());
+        MaintenanceTicket k = back.getTicket(ticket.getId());
+        assertEquals(ticket.getActionLogs(), k.getActionLogs());
+        assertEquals(1, back.getOpenBreachCount());
+    }
+
+    @Test
+    void compressedHistoryBlocksSurviveASnapshot() throws IOException {
+        MonitoringService svc = new MonitoringService(new TimeSeriesStore(8, 4));
+        Sensor s;
+        try(Persistence p = open()){
+            p.recover(svc);
+            s = svc.addSensor(svc.addDevice(new Device("press", "line-1")), new Sensor("TEMP", "C"));
+            LocalDateTime t0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+            for(int i=0;i<35;i++) svc.ingest(s, t0.plusSeconds(i), i*0.5);
+            p.snapshot();
+        }
+        MonitoringService back = new MonitoringService(new TimeSeriesStore(8, 4));
+        try(Persistence p = open()){
+            assertTrue(p.recover(back));
+        }
+        List<Double> values = new java.util.ArrayList<>();
+        back.readings(s.getId(), Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> values.add(v));
+        assertEquals(27, values.size(), "three blocks and the raw tail; the oldest block was rolled up");
+        assertEquals(4.0, values.get(0));
+        assertEquals(17.0, values.get(26));
+        assertEquals(svc.getHistory().compressedBytesPerSample(s.getId()), back.getHistory().compressedBytesPerSample(s.getId()));
+    }
+
+    @Test
+    void aVersion1SnapshotIsStillReadable() throws IOException {
+        long deviceKey = Entity.nextKey(), sensorKey = Entity.nextKey(), thresholdKey = Entity.nextKey(), techKey = Entity.nextKey();
+        IdGenerator ids = Entity.getIdGenerator();
+        try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(dir.resolve(String.format("snapshot-%020d.bin", 0))))){
+            out.writeInt(0x494f5453); out.writeInt(1); out.writeLong(0);
+            out.writeInt(1);
+            out.writeLong(deviceKey); out.writeUTF("press"); out.writeUTF("line-1");
+            out.writeInt(1);
+            out.writeLong(sensorKey); out.writeUTF("TEMP"); out.writeUTF("C");
+            out.writeBoolean(true); out.writeLong(2_000); out.writeDouble(42);
+            out.writeLong(2);
+            out.writeLong(1_000); out.writeDouble(41);
+            out.writeLong(2_000); out.writeDouble(42);
+            out.writeInt(1); // thresholds as plain fields
+            out.writeLong(thresholdKey); out.writeUTF(ids.format(deviceKey)); out.writeUTF("TEMP");
+            out.writeDouble(Double.NaN); out.writeDouble(80); out.writeByte(AlertSeverity.HIGH.ordinal()); out.writeDouble(1.5);
+            out.writeInt(1);
+            out.writeLong(techKey); out.writeUTF("Ana"); out.writeUTF("ana@example.com");
+            out.writeInt(0); // alerts
+            out.writeInt(0); // tickets
+            out.writeInt(0); // open breaches
+        }
+        MonitoringService svc = recover();
+
+        Sensor s = svc.getSensor(ids.format(sensorKey));
+        assertEquals(42, s.getLastValue());
+        assertEquals(2, svc.getHistory().size(s.getId()));
+        Threshold t = svc.getThreshold(ids.format(thresholdKey));
+        assertFalse(t instanceof WindowThreshold);
+        assertNull(t.getMinValue());
+        assertEquals(80.0, t.getMaxValue());
+        assertEquals(1.5, t.getHysteresis());
+        assertEquals("Ana", svc.getTechnician(ids.format(techKey)).getName());
+    }
+
+    @Test
+    void aThresholdJournaledBeforeWindowThresholdsIsStillReadable() throws IOException {
+        long deviceKey = Entity.nextKey(), sensorKey = Entity.nextKey(), thresholdKey = Entity.nextKey();
+        IdGenerator ids = Entity.getIdGenerator();
+        try(Journal j = new Journal(dir.resolve("journal"), 4096, Duration.ofMillis(10))){
+            ByteBuffer b = ByteBuffer.allocate(256);
+            b.putLong(deviceKey); putString(b, "press"); putString(b, "line-1");
+            j.append((byte)1, b.flip());
+            b.clear(); b.putLong(sensorKey); putString(b, ids.format(deviceKey)); putString(b, "TEMP"); putString(b, "C");
+            j.append((byte)2, b.flip());
+            b.clear(); b.putLong(thresholdKey); putString(b, ids.format(deviceKey)); putString(b, "TEMP");
+            b.putDouble(Double.NaN); b.putDouble(80); b.put((byte)AlertSeverity.HIGH.ordinal()); b.putDouble(0); // no window byte
+            j.append((byte)3, b.flip());
+        }
+        MonitoringService svc = recover();
+
+        Threshold t = svc.getThreshold(ids.format(thresholdKey));
+        assertFalse(t instanceof WindowThreshold);
+        assertEquals(80.0, t.getMaxValue());
+        svc.ingest(svc.getSensor(ids.format(sensorKey)), LocalDateTime.now(), 95);
+        assertEquals(1, svc.getAlerts().size());
+    }
+
+    @Test
+    void snapshotsNeedAnAttachedService() throws IOException {
+        try(Persistence p = open()){
+            assertThrows(IllegalStateException.class, p::snapshot);
+        }
+    }
+
+    private static void putString(ByteBuffer b, String s){
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        b.putShort((short)bytes.length);
+        b.put(bytes);
+    }
+}
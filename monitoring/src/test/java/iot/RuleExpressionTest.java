@@ -0,0 +1,131 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class RuleExpressionTest {
+
+    /**
+     * Whether {@code source} is true for a device with one sensor per type it reads, holding
+     * the given latest values; types missing from {@code readings} have never reported.
+     */
+    private static boolean holds(String source, Map<String, Double> readings){
+        RuleExpression e = RuleExpression.parse(source);
+        Sensor[][] slots = new Sensor[e.slots()][];
+        for(int i=0;i<slots.length;i++){
+            Sensor s = new Sensor(e.typeKey(i), "u");
+            slots[i] = new Sensor[]{s};
+            for(Map.Entry<String, Double> r : readings.entrySet()){
+                if(Sensor.typeKey(r.getKey()).equals(e.typeKey(i))) s.record(1_000, r.getValue());
+            }
+        }
+        return e.eval(slots);
+    }
+
+    private static String error(String source){
+        return assertThrows(IllegalArgumentException.class, () -> RuleExpression.parse(source)).getMessage();
+    }
+
+    @Test
+    void andBindsTighterThanOrAndParenthesesOverrideIt(){
+        Map<String, Double> r = Map.of("A", 1.0, "B", 0.0, "C", 1.0);
+        assertTrue(holds("A > 0 OR B > 0 AND C > 0", r));    // A OR (B AND C)
+        assertFalse(holds("(A > 0 OR B > 0) AND C < 0", r));
+        assertTrue(holds("NOT B > 0 AND A > 0", r));          // (NOT B) AND A
+        assertFalse(holds("NOT (B > 0 OR A > 0)", r));
+    }
+
+    @Test
+    void everyOperatorComparesTheLatestValue(){
+        Map<String, Double> r = Map.of("T", 80.0);
+        assertTrue(holds("T >= 80", r));
+        assertFalse(holds("T > 80", r));
+        assertTrue(holds("T <= 80", r));
+        assertFalse(holds("T < 80", r));
+        assertTrue(holds("T = 80", r));
+        assertTrue(holds("T == 8e1", r));
+        assertFalse(holds("T != 80", r));
+        assertTrue(holds("T > -1.5E+2", r));
+    }
+
+    @Test
+    void keywordsAndTypesAreCaseInsensitiveAndSymbolsWork(){
+        Map<String, Double> r = Map.of("temperature", 90.0, "Pressure", 1.0, "flow rate", 3.0);
+        assertTrue(holds("Temperature > 80 and pressure < 2", r));
+        assertTrue(holds("TEMPERATURE > 80 && !PRESSURE > 2 || FLOW > 0", r));
+        assertTrue(holds("\"Flow Rate\" = 3", r));
+        assertTrue(holds("NOT(PRESSURE>2)", r), "keywords need no surrounding space before a parenthesis");
+        RuleExpression e = RuleExpression.parse("temp > 1 OR TEMP < 0");
+        assertEquals(1, e.slots(), "one slot per distinct type");
+        assertEquals(0, e.slotOf("TEMP"));
+        assertEquals(-1, e.slotOf("HUMIDITY"));
+        assertEquals("temp > 1 OR TEMP < 0", e.toString());
+    }
+
+    @Test
+    void logicIsThreeValuedWhileASensorHasNotReported(){
+        Map<String, Double> onlyA = Map.of("A", 1.0);
+        assertFalse(holds("B > 0", onlyA));
+        assertFalse(holds("NOT B > 0", onlyA), "NOT of unknown is unknown, not true");
+        assertFalse(holds("NOT NOT B > 0", onlyA));
+        assertFalse(holds("A > 0 AND NOT B > 0", onlyA));
+        assertTrue(holds("A > 0 OR B > 0", onlyA), "true OR unknown is true");
+        assertFalse(holds("NOT (A < 0 AND B > 0)", Map.of()), "false AND unknown is false only once A has reported");
+        assertTrue(holds("NOT (A < 0 AND B > 0)", onlyA));
+        assertFalse(holds("NOT (A > 0 OR B > 0)", onlyA));
+    }
+
+    @Test
+    void aComparisonHoldsWhenAnySensorOfItsTypeSatisfiesIt(){
+        RuleExpression e = RuleExpression.parse("T > 50");
+        Sensor cold = new Sensor("T", "u"), hot = new Sensor("T", "u"), silent = new Sensor("T", "u");
+        cold.record(1, 10);
+        hot.record(1, 60);
+        assertTrue(e.eval(new Sensor[][]{{silent, cold, hot}}));
+        assertFalse(e.eval(new Sensor[][]{{silent, cold}}));
+        assertFalse(e.eval(new Sensor[][]{{}}), "a device without the type never matches");
+    }
+
+    @Test
+    void malformedExpressionsAreRejectedWithTheColumn(){
+        assertEquals("Rule expression required", error("  "));
+        assertTrue(error("T >").contains("column 4: expected a number"), error("T >"));
+        assertTrue(error("T 5").contains("expected a comparison operator"));
+        assertTrue(error("(T > 5").contains("expected ')'"));
+        assertTrue(error("T > 5 X").contains("unexpected 'X'"));
+        assertTrue(error("AND > 5").contains("expected a sensor type, found AND"));
+        assertTrue(error("\"T > 5").contains("unterminated quoted type"));
+        assertTrue(error("\" \" > 5").contains("empty sensor type"));
+        assertTrue(error("T > 1e999").contains("expected a number"));
+        assertTrue(error("T > 5 AND").contains("expected a sensor type"));
+    }
+
+    @Test
+    void aDeviceRuleRaisesOneAlertPerMatch(){
+        MonitoringService service = new MonitoringService();
+        Device d = service.addDevice(new Device("boiler", "plant"));
+        Sensor temp = service.addSensor(d, new Sensor("TEMPERATURE", "C"));
+        Sensor pressure = service.addSensor(d, new Sensor("PRESSURE", "bar"));
+        service.addRule(Rule.onDevice(d.getId(), "hot and slack", "TEMPERATURE > 80 AND NOT PRESSURE >= 2", AlertSeverity.HIGH));
+        LocalDateTime now = LocalDateTime.now();
+
+        service.ingest(temp, now, 90);
+        assertEquals(0, service.getAlerts().size(), "pressure never reported, so NOT PRESSURE >= 2 is unknown");
+        service.ingest(pressure, now, 1.5);
+        assertEquals(1, service.getAlerts().size());
+        Alert a = service.getAlerts().get(0);
+        assertEquals(AlertType.RULE, a.getType());
+        assertEquals(AlertSeverity.HIGH, a.getSeverity());
+        service.ingest(temp, now.plusSeconds(1), 95);
+        assertEquals(1, service.getAlerts().size(), "still the same match");
+        assertEquals(1, service.getRuleMatchCount());
+
+        service.ingest(pressure, now.plusSeconds(2), 2.5);
+        assertEquals(0, service.getRuleMatchCount());
+        service.ingest(pressure, now.plusSeconds(3), 1.0);
+        assertEquals(2, service.getAlerts().size(), "a new match after the rule was false again");
+    }
+}
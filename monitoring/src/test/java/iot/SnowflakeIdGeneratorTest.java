@@ -0,0 +1,125 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long T = SnowflakeIdGenerator.EPOCH_MILLIS+1_000_000;
+
+    private static long workerOf(long id){ return (id>>>12) & 1023; }
+    private static long sequenceOf(long id){ return id & 4095; }
+
+    /** Runs {@code task} on a new thread and waits for it. */
+    private static void onThread(Runnable task) throws InterruptedException {
+        Thread t = new Thread(task);
+        t.start();
+        t.join();
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws InterruptedException {
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator();
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for(int i=0;i<8;i++){
+            threads.add(new Thread(() -> {
+                long last = Long.MIN_VALUE;
+                for(int n=0;n<50_000;n++){
+                    long id = ids.nextId();
+                    assertTrue(id>last, "monotonic per thread");
+                    last = id;
+                    seen.add(id);
+                }
+            }));
+        }
+        for(Thread t : threads) t.start();
+        for(Thread t : threads) t.join();
+        assertEquals(8*50_000, seen.size());
+    }
+
+    @Test
+    void aClockSteppingBackNeverRepeatsOrReordersIds(){
+        AtomicLong now = new AtomicLong(T);
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator(now::get);
+        long first = ids.nextId();
+        now.set(T-5_000);
+        long second = ids.nextId(), third = ids.nextId();
+        assertTrue(first<second && second<third);
+        assertEquals(T, SnowflakeIdGenerator.timestampOf(third), "the regressed clock is ignored until it catches up");
+
+        now.set(T+1);
+        long fourth = ids.nextId();
+        assertEquals(T+1, SnowflakeIdGenerator.timestampOf(fourth));
+        assertEquals(0, sequenceOf(fourth));
+    }
+
+    @Test
+    void anExhaustedSequenceBorrowsTheNextMillisecond(){
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator(() -> T);
+        long last = 0;
+        for(int i=0;i<4096;i++) last = ids.nextId();
+        assertEquals(4095, sequenceOf(last));
+        long borrowed = ids.nextId();
+        assertTrue(borrowed>last);
+        assertEquals(T+1, SnowflakeIdGenerator.timestampOf(borrowed));
+        assertEquals(0, sequenceOf(borrowed));
+    }
+
+    @Test
+    void aCollectedThreadsWorkerIdIsReusedWhereItStopped() throws InterruptedException {
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator(() -> T);
+        AtomicLong firstThreadsLast = new AtomicLong();
+        onThread(() -> { for(int i=0;i<10;i++) firstThreadsLast.set(ids.nextId()); });
+        assertEquals(0, workerOf(firstThreadsLast.get()));
+
+        AtomicLong reused = new AtomicLong(-1);
+        for(int attempt=0;attempt<200 && reused.get()<0;attempt++){
+            System.gc();
+            Thread.sleep(20);
+            onThread(() -> {
+                long id = ids.nextId();
+                if(workerOf(id)==0) reused.set(id);
+            });
+        }
+        assertTrue(reused.get()>=0, "the dead thread's worker id came back");
+        assertTrue(reused.get()>firstThreadsLast.get(), "it continues after the ids its old owner issued");
+        assertEquals(10, sequenceOf(reused.get()));
+    }
+
+    @Test
+    void generationFailsOnceEveryWorkerIdIsHeldByALiveThread() throws InterruptedException {
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator();
+        CountDownLatch leased = new CountDownLatch(1024), release = new CountDownLatch(1);
+        List<Thread> holders = new ArrayList<>();
+        for(int i=0;i<1024;i++){
+            Thread t = new Thread(() -> {
+                ids.nextId();
+                leased.countDown();
+                try { release.await(); } catch(InterruptedException e){ Thread.currentThread().interrupt(); }
+            });
+            t.setDaemon(true);
+            holders.add(t);
+            t.start();
+        }
+        try {
+            leased.await();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            onThread(() -> {
+                try { ids.nextId(); } catch(Throwable e){ failure.set(e); }
+            });
+            assertInstanceOf(IllegalStateException.class, failure.get());
+        } finally {
+            release.countDown();
+            for(Thread t : holders) t.join();
+        }
+    }
+}
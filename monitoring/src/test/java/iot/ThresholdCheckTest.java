@@ -0,0 +1,92 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ThresholdCheckTest {
+
+    private final MonitoringService service = new MonitoringService();
+    private final Device press = service.addDevice(new Device("press", "line-1"));
+    private final Sensor temp = service.addSensor(press, new Sensor("TEMP", "C"));
+    private final LocalDateTime t0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private int second;
+
+    @BeforeEach
+    void everyAlertStandsAlone(){
+        service.setCorrelationPolicy(CorrelationPolicy.NONE);
+    }
+
+    private void ingest(double value){ service.ingest(temp, t0.plusSeconds(second++), value); }
+
+    @Test
+    void aSustainedBreachRaisesOneAlert(){
+        service.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH));
+        for(int i=0;i<20;i++) ingest(90+i);
+        assertEquals(1, service.getAlerts().size());
+        assertEquals(1, service.getOpenBreachCount());
+
+        ingest(70);
+        assertEquals(0, service.getOpenBreachCount());
+        ingest(95);
+        assertEquals(2, service.getAlerts().size(), "a new breach after clearing raises again");
+    }
+
+    @Test
+    void aBreachReArmsOnlyOnceTheValueLeavesTheHysteresisBand(){
+        service.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH, 5));
+        ingest(85);
+        ingest(79);   // back under the bound but inside the band
+        ingest(85);
+        ingest(75.5); // still inside: the band runs down to 75
+        ingest(85);
+        assertEquals(1, service.getAlerts().size(), "hovering at the bound does not flap");
+        assertEquals(1, service.getOpenBreachCount());
+
+        ingest(75);
+        assertEquals(0, service.getOpenBreachCount());
+        ingest(85);
+        assertEquals(2, service.getAlerts().size());
+    }
+
+    @Test
+    void aLowerBoundUsesTheBandFromBelow(){
+        service.addThreshold(new Threshold(press.getId(), "TEMP", 10.0, null, AlertSeverity.LOW, 2));
+        ingest(5);
+        ingest(11);
+        ingest(5);
+        assertEquals(1, service.getAlerts().size());
+        ingest(12);
+        ingest(5);
+        assertEquals(2, service.getAlerts().size());
+    }
+
+    @Test
+    void aResolvedAlertLetsTheOngoingBreachRaiseAgain(){
+        service.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH));
+        ingest(90);
+        service.resolve(service.getAlerts().get(0));
+        ingest(91);
+        assertEquals(2, service.getAlerts().size());
+    }
+
+    @Test
+    void removingAThresholdClearsItsOpenBreaches(){
+        Threshold hot = service.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH, 5));
+        Threshold cold = service.addThreshold(new Threshold(press.getId(), "TEMP", 100.0, null, AlertSeverity.LOW));
+        ingest(90);
+        assertEquals(2, service.getOpenBreachCount());
+
+        service.removeThreshold(hot.getId());
+        assertEquals(1, service.getOpenBreachCount());
+        service.removeThreshold(cold.getId());
+        assertEquals(0, service.getOpenBreachCount());
+
+        Threshold again = service.addThreshold(new Threshold(press.getId(), "TEMP", null, 80.0, AlertSeverity.HIGH, 5));
+        ingest(90);
+        assertEquals(3, service.getAlerts().size(), "a re-added threshold starts without the old breach");
+        assertNotEquals(hot.getId(), again.getId());
+    }
+}
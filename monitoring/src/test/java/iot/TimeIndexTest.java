@@ -0,0 +1,135 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class TimeIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private long nextKey = 1_000;
+
+    private Alert alert(String deviceId, LocalDateTime at){
+        return new Alert(nextKey++, new Reading(deviceId, "s-"+deviceId, at, 90), "TEMP", AlertSeverity.HIGH, at);
+    }
+
+    /** Follows cursors from the first page to the last, resolving each through {@code index}. */
+    private static List<Alert> readAll(AlertIndex index, Set<AlertStatus> statuses, List<Alert> known, int limit){
+        List<Alert> out = new ArrayList<>();
+        TimeIndex.Pos before = null;
+        while(true){
+            Page<Alert> p = index.query(statuses, null, null, null, null, before, limit);
+            assertTrue(p.getItems().size()<=limit);
+            out.addAll(p.getItems());
+            if(!p.hasMore()) return out;
+            String cursor = p.getNextCursor();
+            before = index.pos(known.stream().filter(a -> a.getId().equals(cursor)).findFirst().orElseThrow());
+        }
+    }
+
+    @Test
+    void itemsSharingACreationTimeArePagedByKeyWithoutGapsOrRepeats(){
+        AlertIndex index = new AlertIndex();
+        List<Alert> all = new ArrayList<>();
+        for(int i=0;i<7;i++){ Alert a = alert("d1", T0); all.add(a); index.add(a); }
+
+        List<Alert> read = readAll(index, null, all, 2);
+        List<Alert> expected = new ArrayList<>(all);
+        Collections.reverse(expected);
+        assertEquals(expected, read, "same timestamp: newest key first, each exactly once");
+    }
+
+    @Test
+    void theLastPageHasNoCursorEvenWhenItIsExactlyFull(){
+        TimeIndex<String, Alert> index = new TimeIndex<>(Alert::getCreatedAt);
+        for(int i=0;i<4;i++) index.add("d1", alert("d1", T0.plusSeconds(i)));
+
+        Page<Alert> p = index.page(null, null, null, null, a -> true, 4);
+        assertEquals(4, p.getItems().size());
+        assertFalse(p.hasMore(), "the limit+1 probe found nothing after the fourth item");
+
+        p = index.page(null, null, null, null, a -> true, 3);
+        assertEquals(3, p.getItems().size());
+        assertEquals(p.getItems().get(2).getId(), p.getNextCursor());
+        Page<Alert> rest = index.page(null, index.pos(p.getItems().get(2)), null, null, a -> true, 3);
+        assertEquals(1, rest.getItems().size());
+        assertFalse(rest.hasMore());
+    }
+
+    @Test
+    void aCursorWhoseItemLeftTheIndexStillResumesAfterIt(){
+        AlertIndex index = new AlertIndex();
+        List<Alert> all = new ArrayList<>();
+        for(int i=0;i<6;i++){ Alert a = alert("d1", T0.plusSeconds(i)); all.add(a); index.add(a); }
+        Set<AlertStatus> unacknowledged = EnumSet.of(AlertStatus.NEW);
+
+        Page<Alert> first = index.query(unacknowledged, null, null, null, null, null, 2);
+        assertEquals(List.of(all.get(5), all.get(4)), first.getItems());
+        Alert cursor = all.get(4);
+        cursor.acknowledge("ana");
+        index.statusChanged(cursor, AlertStatus.NEW); // gone from the NEW group between pages
+
+        Page<Alert> second = index.query(unacknowledged, null, null, null, null, index.pos(cursor), 2);
+        assertEquals(List.of(all.get(3), all.get(2)), second.getItems());
+    }
+
+    @Test
+    void ticketsPageByDeviceAndSkipClosedOnesLeftBehind(){
+        TicketIndex index = new TicketIndex();
+        List<MaintenanceTicket> tickets = new ArrayList<>();
+        for(int i=0;i<5;i++){
+            Alert a = alert(i%2==0 ? "d1" : "d2", T0.plusSeconds(i));
+            MaintenanceTicket t = new MaintenanceTicket(nextKey++, a, "check", T0.plusSeconds(i));
+            tickets.add(t); index.add(t);
+        }
+        Page<MaintenanceTicket> p = index.query(null, "d1", null, null, 2);
+        assertEquals(List.of(tickets.get(4), tickets.get(2)), p.getItems());
+        MaintenanceTicket last = tickets.get(2);
+        last.addAction("replaced fan", new Technician("Ana", "ana@example.com"));
+        last.close();
+        index.statusChanged(last, TicketStatus.OPEN);
+
+        p = index.query(TicketStatus.OPEN, "d1", null, index.pos(last), 2);
+        assertEquals(List.of(tickets.get(0)), p.getItems());
+        assertFalse(p.hasMore());
+        assertEquals(4, index.count(TicketStatus.OPEN));
+    }
+
+    @Test
+    void mergedShardPagesKeepGlobalNewestFirstOrder(){
+        List<TimeIndex<String, Alert>> shards = List.of(new TimeIndex<>(Alert::getCreatedAt), new TimeIndex<>(Alert::getCreatedAt));
+        List<Alert> all = new ArrayList<>();
+        for(int i=0;i<11;i++){
+            // uneven split with shared timestamps across shards
+            Alert a = alert("d"+(i%3), T0.plusSeconds(i/2));
+            all.add(a);
+            shards.get(i%3==0 ? 0 : 1).add(a.getDeviceId(), a);
+        }
+        List<Alert> read = new ArrayList<>();
+        TimeIndex.Pos before = null;
+        int pages = 0;
+        while(true){
+            List<Page<Alert>> perShard = new ArrayList<>();
+            for(TimeIndex<String, Alert> s : shards) perShard.add(s.page(null, before, null, null, a -> true, 3));
+            Page<Alert> p = TimeIndex.merge(perShard, Alert::getCreatedAt, 3);
+            assertTrue(p.getItems().size()<=3);
+            read.addAll(p.getItems());
+            pages++;
+            if(!p.hasMore()) break;
+            Alert cursor = p.getItems().get(p.getItems().size()-1);
+            assertEquals(cursor.getId(), p.getNextCursor());
+            before = shards.get(0).pos(cursor);
+        }
+        List<Alert> expected = new ArrayList<>(all);
+        expected.sort(Comparator.comparing((Alert a) -> shards.get(0).pos(a)).reversed());
+        assertEquals(expected, read);
+        assertEquals(4, pages);
+    }
+}
@@ -0,0 +1,143 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesStoreTest {
+
+    private static List<long[]> scan(TimeSeriesStore store, String id, long from, long to){
+        List<long[]> out = new ArrayList<>();
+        int n = store.readings(id, from, to, (t, v) -> out.add(new long[]{t, (long)v}));
+        assertEquals(out.size(), n);
+        return out;
+    }
+
+    @Test
+    void theRawSegmentStartsSmallAndGrowsAsTheSensorReports(){
+        TimeSeriesStore store = new TimeSeriesStore(1024, 4);
+        store.append("s", 0, 1);
+        long small = store.memoryBytes("s");
+        assertTrue(small < 1024*16/8, "a new sensor should not hold a full segment: "+small);
+        for(int i=1;i<1000;i++) store.append("s", i, i);
+        assertTrue(store.memoryBytes("s") > small);
+        assertEquals(1000, store.size("s"));
+        assertEquals(0, store.compressedBytesPerSample("s"), "nothing sealed before the segment fills");
+    }
+
+    @Test
+    void fullSegmentsAreSealedAndScannedTogetherWithTheRawTail(){
+        TimeSeriesStore store = new TimeSeriesStore(100, 8);
+        for(int i=0;i<350;i++) assertTrue(store.append("s", 1_000L*i, i));
+        assertEquals(350, store.size("s"));
+        assertTrue(store.compressedBytesPerSample("s") > 0);
+
+        List<long[]> all = scan(store, "s", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(350, all.size());
+        for(int i=0;i<all.size();i++){
+            assertEquals(1_000L*i, all.get(i)[0]);
+            assertEquals(i, all.get(i)[1]);
+        }
+        List<long[]> range = scan(store, "s", 99_000, 301_000); // across a block boundary into the raw segment
+        assertEquals(99, range.get(0)[1]);
+        assertEquals(301, range.get(range.size()-1)[1]);
+        assertEquals(203, range.size());
+        assertEquals(0, store.readings("s", 10, 5, (t, v) -> fail()));
+        assertEquals(0, store.readings("unknown", 0, Long.MAX_VALUE, (t, v) -> fail()));
+    }
+
+    @Test
+    void evictedSegmentsRollUpIntoTheDownsampledTiers(){
+        TimeSeriesStore store = new TimeSeriesStore(8, 2, List.of(DownsampleTier.of(Duration.ofMinutes(1), Duration.ofDays(1))));
+        for(int i=0;i<24;i++) store.append("s", 1_000L*i, i);
+        assertEquals(8, store.size("s"), "one block kept at full resolution; the raw segment was just sealed");
+
+        long[] bucket = new long[2];
+        double[] sum = new double[1];
+        int buckets = store.aggregates("s", Duration.ofMinutes(1), 0, 60_000, (start, n, min, max, total) -> {
+            bucket[0] = start; bucket[1] = n; sum[0] = total;
+        });
+        assertEquals(1, buckets);
+        assertEquals(0, bucket[0]);
+        assertEquals(24, bucket[1], "rolled-up and full-resolution samples are folded into one bucket");
+        assertEquals(23*24/2, sum[0]);
+        assertThrows(IllegalArgumentException.class, () -> store.aggregates("s", Duration.ofMinutes(5), 0, 1, (a, b, c, d, e) -> {}));
+    }
+
+    @Test
+    void anExportStopsAtTheCutTakenEarlierWhileAppendsGoOn(){
+        TimeSeriesStore store = new TimeSeriesStore(8, 4);
+        for(int i=0;i<20;i++) store.append("s", 1_000L*i, i);
+        long cut = store.appended("s");
+        for(int i=20;i<30;i++) store.append("s", 1_000L*i, i); // seals a block holding samples on both sides of the cut
+        assertFalse(store.append("s", 0, -1), "dropped samples don't count towards a cut");
+
+        List<Double> exported = new ArrayList<>();
+        long[] declared = {-1, -1};
+        store.export("s", cut, new TimeSeriesStore.HistoryVisitor(){
+            @Override public void tier(long resolutionMillis, int buckets){}
+            @Override public void accept(long start, long n, double min, double max, double sum){}
+            @Override public void blocks(int count){ declared[0] = count; }
+            @Override public void block(GorillaBlock b){
+                GorillaBlock.Cursor c = b.cursor();
+                while(c.next()) exported.add(c.value());
+            }
+            @Override public void samples(long count){ declared[1] = count; }
+            @Override public void accept(long t, double v){ exported.add(v); }
+        });
+        assertEquals(2, declared[0], "blocks sealed before the cut are kept compressed");
+        assertEquals(4, declared[1], "the rest of the cut comes out of the block sealed after it");
+        assertEquals(20, exported.size());
+        for(int i=0;i<20;i++) assertEquals(i, exported.get(i));
+    }
+
+    @Test
+    void restoredBlocksComeBackWithoutReencoding(){
+        TimeSeriesStore store = new TimeSeriesStore(8, 4);
+        long[] times = {1_000, 2_000, 3_000};
+        GorillaBlock b = GorillaBlock.encode(times, new double[]{1, 2, 3}, 3);
+        store.restoreBlock("s", b);
+        store.append("s", 4_000, 4);
+        assertEquals(4, store.size("s"));
+        assertEquals(4, store.appended("s"));
+        assertFalse(store.append("s", 3_500, 0));
+        assertThrows(IllegalStateException.class, () -> store.restoreBlock("s", b), "blocks go before raw samples");
+        List<long[]> all = scan(store, "s", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(4, all.size());
+        assertEquals(3_000, all.get(2)[0]);
+    }
+
+    @Test
+    void sealingShrinksTheRawSegmentBack(){
+        TimeSeriesStore store = new TimeSeriesStore(1024, 4);
+        store.append("s", 0, 0);
+        long fresh = store.memoryBytes("s");
+        for(int i=1;i<1023;i++) store.append("s", i, 0);
+        long filling = store.memoryBytes("s");
+        store.append("s", 1023, 0); // seals
+        long sealed = store.memoryBytes("s");
+        assertTrue(filling >= 1024*16, "a filling segment holds its columns: "+filling);
+        assertTrue(sealed-fresh < 1024, "after the seal only the block and a small segment remain: "+(sealed-fresh));
+    }
+
+    @Test
+    void samplesOlderThanTheLatestAreDroppedAndCounted(){
+        TimeSeriesStore store = new TimeSeriesStore();
+        assertTrue(store.append("s", 2_000, 1));
+        assertTrue(store.append("s", 2_000, 2), "equal timestamps are kept");
+        assertFalse(store.append("s", 1_999, 3));
+        assertEquals(2, store.size("s"));
+        assertEquals(1, store.getDropped("s"));
+    }
+
+    @Test
+    void invalidShapesAreRejected(){
+        assertThrows(IllegalArgumentException.class, () -> new TimeSeriesStore(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new TimeSeriesStore(16, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TimeSeriesStore(16, 4,
+                List.of(DownsampleTier.of(Duration.ofMinutes(2), Duration.ofDays(1)), DownsampleTier.of(Duration.ofMinutes(3), Duration.ofDays(2)))));
+    }
+}
@@ -0,0 +1,115 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+    /** A timer remembering its deadline and when it fired. */
+    private static final class Probe extends TimerWheel.Timer {
+        final long deadline;
+        long firedAt = -1;
+        int fires;
+
+        Probe(long deadline){ this.deadline = deadline; }
+    }
+
+    @Test
+    void timersInEveryLevelFireExactlyOnTheirTick(){
+        long start = 123_456_789;
+        TimerWheel wheel = new TimerWheel(1, start);
+        // deadlines on both sides of each level's rotation: 256, 65,536 and 16,777,216 ticks
+        long[] offsets = {1, 2, 255, 256, 257, 511, 65_535, 65_536, 65_537, 300_000, 16_777_215, 16_777_216, 16_777_300};
+        List<Probe> probes = new ArrayList<>();
+        for(long off : offsets){
+            Probe p = new Probe(start+off);
+            wheel.schedule(p, p.deadline);
+            probes.add(p);
+        }
+        assertEquals(offsets.length, wheel.size());
+        for(long now=start+1; wheel.size()>0; now++){
+            long at = now;
+            wheel.advance(now, t -> { Probe p = (Probe)t; p.firedAt = at; p.fires++; });
+        }
+        for(Probe p : probes){
+            assertEquals(p.deadline, p.firedAt, "timer "+(p.deadline-start)+" ticks out");
+            assertEquals(1, p.fires);
+            assertFalse(p.isScheduled());
+        }
+    }
+
+    @Test
+    void aLongJumpFiresEverythingDueInDeadlineOrder(){
+        TimerWheel wheel = new TimerWheel(10, 0);
+        long[] deadlines = {700_000, 5, 2_600, 90_000, 2_560, 12_345_678};
+        for(long d : deadlines) wheel.schedule(new Probe(d), d);
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(1_000_000, t -> fired.add(((Probe)t).deadline));
+        assertEquals(List.of(5L, 2_560L, 2_600L, 90_000L, 700_000L), fired);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void deadlinesRoundUpToTheNextTick(){
+        TimerWheel wheel = new TimerWheel(100, 0);
+        Probe p = new Probe(150);
+        wheel.schedule(p, p.deadline);
+        wheel.advance(199, t -> fail("fired before its tick"));
+        wheel.advance(200, t -> ((Probe)t).fires++);
+        assertEquals(1, p.fires);
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextTick(){
+        TimerWheel wheel = new TimerWheel(1, 10_000);
+        Probe p = new Probe(5_000);
+        wheel.schedule(p, p.deadline);
+        wheel.advance(10_000, t -> fail("fired without the wheel moving"));
+        wheel.advance(10_001, t -> ((Probe)t).fires++);
+        assertEquals(1, p.fires);
+    }
+
+    @Test
+    void reschedulingMovesATimerAndCancellingRemovesIt(){
+        TimerWheel wheel = new TimerWheel(1, 0);
+        Probe moved = new Probe(50), cancelled = new Probe(60);
+        wheel.schedule(moved, 70_000); // in a higher level first
+        wheel.schedule(moved, moved.deadline);
+        wheel.schedule(cancelled, cancelled.deadline);
+        assertEquals(2, wheel.size());
+        wheel.cancel(cancelled);
+        wheel.cancel(cancelled);
+        assertEquals(1, wheel.size());
+        assertFalse(cancelled.isScheduled());
+
+        for(long now=1; now<=80_000; now++){
+            long at = now;
+            wheel.advance(now, t -> { Probe p = (Probe)t; p.firedAt = at; p.fires++; });
+        }
+        assertEquals(50, moved.firedAt);
+        assertEquals(1, moved.fires);
+        assertEquals(0, cancelled.fires);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void anExpiredTimerMayRescheduleItself(){
+        TimerWheel wheel = new TimerWheel(1, 0);
+        Probe p = new Probe(10);
+        wheel.schedule(p, 10);
+        for(long now=1; now<=1_000; now++){
+            long at = now;
+            wheel.advance(now, t -> { ((Probe)t).fires++; wheel.schedule(t, at+10); });
+        }
+        assertEquals(100, p.fires);
+        assertTrue(p.isScheduled());
+    }
+
+    @Test
+    void theTickMustBePositive(){
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel(0, 0));
+    }
+}
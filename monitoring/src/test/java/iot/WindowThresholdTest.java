@@ -0,0 +1,47 @@
+package iot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+class WindowThresholdTest {
+
+    private final MonitoringService service = new MonitoringService();
+    private final Device device = service.addDevice(new Device("press", "line-1"));
+    private final Sensor temp = service.addSensor(device, new Sensor("TEMP", "C"));
+    private final WindowSpec fiveMinutes = WindowSpec.sliding(Duration.ofMinutes(5), 10);
+
+    private WindowThreshold meanAbove(double max){
+        return new WindowThreshold(device.getId(), "TEMP", WindowMetric.MEAN, fiveMinutes, null, max, AlertSeverity.LOW);
+    }
+
+    @Test
+    void removingTheLastThresholdOnAWindowStopsMaintainingIt(){
+        Threshold a = service.addThreshold(meanAbove(80)), b = service.addThreshold(meanAbove(90));
+        service.ingest(temp, LocalDateTime.now(), 100);
+        WindowAggregate w = temp.getWindow(fiveMinutes);
+        assertNotNull(w);
+
+        service.removeThreshold(a.getId());
+        assertSame(w, temp.getWindow(fiveMinutes), "still read by the other threshold");
+        service.removeThreshold(b.getId());
+        assertNull(temp.getWindow(fiveMinutes));
+
+        service.addThreshold(meanAbove(80));
+        assertEquals(0, temp.getWindow(fiveMinutes).metric(WindowMetric.COUNT, System.currentTimeMillis()),
+                "a re-added window starts empty rather than with stale buckets");
+    }
+
+    @Test
+    void bucketsRoundUpSoTheWindowCoversItsWholeLength(){
+        WindowSpec spec = WindowSpec.sliding(Duration.ofMillis(1_000), 3);
+        assertEquals(334, spec.getBucketMillis());
+        WindowAggregate w = new WindowAggregate(spec);
+        w.add(0, 5);
+        assertEquals(1, w.metric(WindowMetric.COUNT, 999), "a sample 999 ms old is inside a 1 s window");
+        assertEquals(250, WindowSpec.sliding(Duration.ofMillis(1_000), 4).getBucketMillis());
+        assertEquals(60_000, WindowSpec.tumbling(Duration.ofMinutes(1)).getBucketMillis());
+    }
+}